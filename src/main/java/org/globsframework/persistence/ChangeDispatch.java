@@ -0,0 +1,41 @@
+package org.globsframework.persistence;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/*
+ Values shared by the listeners of one change while it is dispatched (its json for instance): they are computed by
+ the first listener and dropped once every listener has been called.
+ */
+public class ChangeDispatch {
+    private static final ThreadLocal<ChangeDispatch> CURRENT = new ThreadLocal<>();
+    private Map<Object, Object> shared;
+
+    static void dispatch(Runnable callListeners) {
+        ChangeDispatch previous = CURRENT.get();
+        CURRENT.set(new ChangeDispatch());
+        try {
+            callListeners.run();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    // the value of key for the change being dispatched, a new value outside of a dispatch.
+    @SuppressWarnings("unchecked")
+    public static <T> T shared(Object key, Supplier<T> value) {
+        ChangeDispatch current = CURRENT.get();
+        if (current == null) {
+            return value.get();
+        }
+        if (current.shared == null) {
+            current.shared = new HashMap<>();
+        }
+        return (T) current.shared.computeIfAbsent(key, k -> value.get());
+    }
+}
@@ -15,6 +15,7 @@ import org.globsframework.utils.collections.MultiMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Reader;
 import java.time.LocalDate;
 import java.time.ZonedDateTime;
 import java.util.*;
@@ -66,8 +67,14 @@ public class GlobMemoryPersistence implements Persistence {
     }
 
     public String pushData(Glob data, MutableGlob[] tags) {
-        String key = this.data.save(data);
+        return indexTags(this.data.save(data), tags);
+    }
+
+    public String pushRawData(Reader data, MutableGlob[] tags) {
+        return indexTags(this.data.saveRaw(data), tags);
+    }
 
+    private String indexTags(String key, MutableGlob[] tags) {
         boolean hasNewField = false;
         for (Glob tag : tags) {
             GlobType type = tag.getType();
@@ -130,6 +137,11 @@ public class GlobMemoryPersistence implements Persistence {
         return data.getData(uuid);
     }
 
+    public String getRawData(Glob tag) {
+        String uuid = tag.get(tag.getType().getKeyFields()[0].asStringField());
+        return data.getRawData(uuid);
+    }
+
     public Listener listen(GlobType type, Constraint constraint, OnChange consumer, GlobType[] additionalWantedTags) {
         ChangeDetector value = new ChangeDetector(type, constraint.visit(new FilterConstraintVisitor(tagFieldToTagInfoField)).filter, consumer, additionalWantedTags);
         changeDetectors.put(type, value);
@@ -7,6 +7,7 @@ import org.globsframework.metamodel.fields.StringField;
 import org.globsframework.metamodel.type.DataType;
 import org.globsframework.model.Glob;
 import org.globsframework.model.MutableGlob;
+import org.globsframework.persistence.wal.UnifiedWriteAheadLog;
 import org.globsframework.sqlstreams.constraints.Constraint;
 import org.globsframework.sqlstreams.constraints.ConstraintVisitor;
 import org.globsframework.sqlstreams.constraints.OperandVisitor;
@@ -17,20 +18,40 @@ import org.globsframework.utils.collections.MultiMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Reader;
 import java.time.LocalDate;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
 public class InMemoryPersistence implements Persistence {
     private static Logger LOGGER = LoggerFactory.getLogger(InMemoryPersistence.class);
     private final RWDataAccess data;
     private final RWTagAccess tagAccess;
+    // when set, the data and the tags of a push are written as one record.
+    private final UnifiedWriteAheadLog log;
     private MapOfMaps<String, GlobType, Glob> tagsByUUID = new ConcurrentMapOfMaps<>();
     private MultiMap<GlobType, ChangeDetector> changeDetectors = new MultiMap<>();
+    // taken in read mode by writers, in write mode only while the tag log is sealed for a checkpoint.
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
 
     public InMemoryPersistence(RWDataAccess data, RWTagAccess tagAccess) {
+        this(data, tagAccess, null);
+    }
+
+    public InMemoryPersistence(UnifiedWriteAheadLog log) {
+        this(log, log.tagAccess(), log);
+    }
+
+    private InMemoryPersistence(RWDataAccess data, RWTagAccess tagAccess, UnifiedWriteAheadLog log) {
         this.data = data;
         this.tagAccess = tagAccess;
+        this.log = log;
 
         tagAccess.listAll((uuid, tags) -> {
             Map<GlobType, Glob> globTypeGlobMap = tagsByUUID.getModifiable(uuid);
@@ -42,18 +63,81 @@ public class InMemoryPersistence implements Persistence {
     }
 
     public String pushData(Glob data, MutableGlob[] tags) {
+        return durable(pushDataAsync(data, tags));
+    }
+
+    public CompletableFuture<String> pushDataAsync(Glob data, MutableGlob[] tags) {
+        if (log != null) {
+            String key = log.nextUUID();
+            String json = GSonUtils.encode(data, true);
+            return updateTags(tags, key, () -> save(key, json, tags));
+        }
         String key = this.data.save(data);
-        updateTags(tags, key);
-        return key;
+        return updateTags(tags, key, () -> tagAccess.append(key, tags));
+    }
+
+    public String pushRawData(Reader data, MutableGlob[] tags) {
+        return durable(pushRawDataAsync(data, tags));
+    }
+
+    public CompletableFuture<String> pushRawDataAsync(Reader data, MutableGlob[] tags) {
+        if (log != null) {
+            String key = log.nextUUID();
+            String json = log.validate(data);
+            return updateTags(tags, key, () -> save(key, json, tags));
+        }
+        String key = this.data.saveRaw(data);
+        return updateTags(tags, key, () -> tagAccess.append(key, tags));
+    }
+
+    private CompletableFuture<Void> save(String key, String json, MutableGlob[] tags) {
+        log.save(key, json, tags);
+        return CompletableFuture.completedFuture(null);
     }
 
-    private void updateTags(MutableGlob[] tags, String key) {
+    // wait for a write to be durable.
+    static String durable(CompletableFuture<String> write) {
+        try {
+            return write.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            String s = "Fail to save tags";
+            LOGGER.error(s, e.getCause());
+            throw new RuntimeException(s, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            String s = "Interrupted while saving tags";
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+    }
+
+    // write is called once the uuid is set in the tags. The tags are visible, and the listeners called, only once the
+    // write is saved: by the thread completing it, so in the order of the tag log.
+    private CompletableFuture<String> updateTags(MutableGlob[] tags, String key, Supplier<CompletableFuture<Void>> write) {
         for (MutableGlob tag : tags) {
             tag.set(getUUIDField(tag), key);
         }
 
-        tagAccess.save(key, tags);
+        checkpointLock.readLock().lock();
+        try {
+            return write.get().handle((done, e) -> {
+                if (e != null) {
+                    String s = "Fail to save tags of " + key;
+                    LOGGER.error(s, e);
+                    throw new CompletionException(new RuntimeException(s, e));
+                }
+                publish(key, tags);
+                return key;
+            });
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
 
+    private void publish(String key, MutableGlob[] tags) {
         for (Glob tag : tags) {
             GlobType type = tag.getType();
             tagsByUUID.put(key, type, tag);
@@ -61,15 +145,24 @@ public class InMemoryPersistence implements Persistence {
 
         for (Glob tag : tags) {
             List<ChangeDetector> changeDetectors = this.changeDetectors.get(tag.getType());
-            for (ChangeDetector changeDetector : changeDetectors) {
-                changeDetector.callChange(tag.getType(), null, tag, tagsByUUID.get(key));
+            if (!changeDetectors.isEmpty()) {
+                ChangeDispatch.dispatch(() -> {
+                    for (ChangeDetector changeDetector : changeDetectors) {
+                        try {
+                            changeDetector.callChange(tag.getType(), null, tag, tagsByUUID.get(key));
+                        } catch (RuntimeException e) {
+                            // the tags are saved: a failing listener does not fail the write.
+                            LOGGER.error("Fail to notify change of " + key, e);
+                        }
+                    }
+                });
             }
         }
     }
 
     public List<Glob> list(GlobType type, Constraint constraint) {
         List<Glob> result = new ArrayList<>();
-        Filter filter = constraint.visit(new FilterConstraintVisitor()).filter;
+        Filter filter = toFilter(constraint);
         for (Map.Entry<String, Map<GlobType, Glob>> stringMapEntry : tagsByUUID.entry()) {
             Map<GlobType, Glob> map = stringMapEntry.getValue();
             if (filter.isEligible(map)) {
@@ -82,14 +175,60 @@ public class InMemoryPersistence implements Persistence {
         return result;
     }
 
+    public Iterator<Glob> iterate(GlobType type, Constraint constraint) {
+        Filter filter = toFilter(constraint);
+        Iterator<Map.Entry<String, Map<GlobType, Glob>>> entries = tagsByUUID.entry().iterator();
+        return new Iterator<>() {
+            Glob next = advance();
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public Glob next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Glob current = next;
+                next = advance();
+                return current;
+            }
+
+            private Glob advance() {
+                while (entries.hasNext()) {
+                    Map<GlobType, Glob> map = entries.next().getValue();
+                    if (filter.isEligible(map)) {
+                        Glob glob = map.get(type);
+                        if (glob != null) {
+                            return glob;
+                        }
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    private static Filter toFilter(Constraint constraint) {
+        return constraint == null ? d -> true : constraint.visit(new FilterConstraintVisitor()).filter;
+    }
+
+    public int loadedCount() {
+        return tagsByUUID.size();
+    }
+
     public Glob getData(Glob tag) {
         String uuid = tag.get(getUUIDField(tag));
         return data.getData(uuid);
     }
 
+    public String getRawData(Glob tag) {
+        String uuid = tag.get(getUUIDField(tag));
+        return data.getRawData(uuid);
+    }
+
     public Listener listen(GlobType type, Constraint constraint, Persistence.OnChange consumer, GlobType[] additionalWantedTags) {
-        ChangeDetector value = new ChangeDetector(type, constraint == null ?
-                d -> true : constraint.visit(new FilterConstraintVisitor()).filter, consumer, additionalWantedTags);
+        ChangeDetector value = new ChangeDetector(type, toFilter(constraint), consumer, additionalWantedTags);
         changeDetectors.put(type, value);
         return new Listener() {
             public void unregister() {
@@ -99,14 +238,17 @@ public class InMemoryPersistence implements Persistence {
     }
 
     public String updateTag(Glob refTag, MutableGlob[] tags) {
+        return durable(updateTagAsync(refTag, tags));
+    }
+
+    public CompletableFuture<String> updateTagAsync(Glob refTag, MutableGlob[] tags) {
         String uuid = refTag.get(getUUIDField(refTag));
         if (uuid == null) {
             String s = "Missing uuid " + GSonUtils.encode(refTag, true);
             LOGGER.error(s);
             throw new RuntimeException(s);
         }
-        updateTags(tags, uuid);
-        return uuid;
+        return updateTags(tags, uuid, () -> tagAccess.append(uuid, tags));
     }
 
     public static StringField getUUIDField(Glob glob) {
@@ -126,6 +268,28 @@ public class InMemoryPersistence implements Persistence {
         return field.asStringField();
     }
 
+    public void checkpoint() {
+        RWTagAccess.Checkpoint checkpoint;
+        checkpointLock.writeLock().lock();
+        try {
+            // sealing completes the writes of the sealed log, so their tags are published before it returns.
+            checkpoint = tagAccess.checkpoint();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+        if (checkpoint != null) {
+            checkpoint.write(listener -> {
+                for (Map.Entry<String, Map<GlobType, Glob>> entry : tagsByUUID.entry()) {
+                    listener.accept(entry.getKey(), new ArrayList<>(entry.getValue().values()).iterator());
+                }
+            });
+        }
+    }
+
+    public void compact() {
+        tagAccess.compact();
+    }
+
     public void shutdown() {
         data.shutdown();
         tagAccess.shutdown();
@@ -6,20 +6,61 @@ import org.globsframework.model.Glob;
 import org.globsframework.model.MutableGlob;
 import org.globsframework.sqlstreams.constraints.Constraint;
 
+import java.io.Reader;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface Persistence {
 
     String pushData(Glob data, MutableGlob[] tags);
 
+    // the data is streamed to the store without being decoded as a Glob.
+    String pushRawData(Reader data, MutableGlob[] tags);
+
     List<Glob> list(GlobType type, Constraint constraint);
 
+    // same as list, the result being built while iterating.
+    default Iterator<Glob> iterate(GlobType type, Constraint constraint) {
+        return list(type, constraint).iterator();
+    }
+
     Glob getData(Glob tag);
 
+    // same as getData but as json, without decoding the stored data if possible.
+    String getRawData(Glob tag);
+
     Listener listen(GlobType type, Constraint constraint, OnChange consumer, GlobType[] additionalWantedTags);
 
     String updateTag(Glob tag, MutableGlob[] globs);
 
+    // the write is applied (visible to list and to the listeners) when these return, the future completes once it
+    // is durable: the caller can wait for it without holding what orders the writes.
+    default CompletableFuture<String> pushDataAsync(Glob data, MutableGlob[] tags) {
+        return CompletableFuture.completedFuture(pushData(data, tags));
+    }
+
+    default CompletableFuture<String> pushRawDataAsync(Reader data, MutableGlob[] tags) {
+        return CompletableFuture.completedFuture(pushRawData(data, tags));
+    }
+
+    default CompletableFuture<String> updateTagAsync(Glob tag, MutableGlob[] globs) {
+        return CompletableFuture.completedFuture(updateTag(tag, globs));
+    }
+
+    // persist a snapshot of the current state to bound the replay at startup.
+    default void checkpoint() {
+    }
+
+    // background maintenance of the storage (tag log compaction).
+    default void compact() {
+    }
+
+    // number of data whose tags are kept in memory.
+    default int loadedCount() {
+        return 0;
+    }
+
     void shutdown();
 
     interface OnChange {
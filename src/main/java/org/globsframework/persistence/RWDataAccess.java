@@ -1,11 +1,34 @@
 package org.globsframework.persistence;
 
+import org.globsframework.json.GSonUtils;
 import org.globsframework.model.Glob;
 
+import java.io.Reader;
+
 public interface RWDataAccess {
     Glob getData(String uuid);
 
+    // the data as json, implementations should return the stored payload without decoding it.
+    default String getRawData(String uuid) {
+        Glob data = getData(uuid);
+        return data == null ? null : GSonUtils.encode(data, true);
+    }
+
     String save(Glob glob); //return UUID
 
+    // save a json encoded glob, checked against its type while it is written; return UUID
+    default String saveRaw(Reader json) {
+        throw new RuntimeException("Raw save not supported by " + getClass().getName());
+    }
+
+    // save json encoded data under a uuid given by the caller, replace the data previously saved under this uuid.
+    default void put(String uuid, String json) {
+        throw new RuntimeException("Put not supported by " + getClass().getName());
+    }
+
+    // make the data saved so far durable.
+    default void sync() {
+    }
+
     void shutdown();
 }
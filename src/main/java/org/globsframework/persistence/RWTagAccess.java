@@ -3,15 +3,45 @@ package org.globsframework.persistence;
 import org.globsframework.model.Glob;
 
 import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
 
 public interface RWTagAccess {
     void save(String uuid, Glob[] tags);
 
+    // queue the tags after the ones saved before, the future completes once they are saved (see save).
+    default CompletableFuture<Void> append(String uuid, Glob[] tags) {
+        save(uuid, tags);
+        return CompletableFuture.completedFuture(null);
+    }
+
     void listAll(TagListener consumer);
 
+    // seal the current log: the returned checkpoint covers every tags saved before this call.
+    // return null if checkpoints are not supported.
+    default Checkpoint checkpoint() {
+        return null;
+    }
+
+    // rewrite the sealed logs to drop superseded tags.
+    default void compact() {
+    }
+
+    // make the tags saved so far durable.
+    default void sync() {
+    }
+
     void shutdown();
 
     interface TagListener {
         void accept(String uuid, Iterator<Glob> tags);
     }
+
+    interface TagSource {
+        void forEach(TagListener listener);
+    }
+
+    interface Checkpoint {
+        // state must contain (at least) the latest tags of every uuid saved before the checkpoint creation.
+        void write(TagSource state);
+    }
 }
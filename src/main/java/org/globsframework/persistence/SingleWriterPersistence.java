@@ -0,0 +1,90 @@
+package org.globsframework.persistence;
+
+import org.globsframework.metamodel.GlobType;
+import org.globsframework.model.Glob;
+import org.globsframework.model.MutableGlob;
+import org.globsframework.sqlstreams.constraints.Constraint;
+
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ The writes of persistence are applied by the thread of writer, the reads by the calling thread. The calling thread
+ then waits for its write to be durable: the writer is never blocked by an fsync, and the writes applied while an
+ fsync is running are made durable together by the next one (group commit).
+ */
+public class SingleWriterPersistence implements Persistence {
+    private final Persistence persistence;
+    private final WriterPartitions.Partition writer;
+
+    public SingleWriterPersistence(Persistence persistence, WriterPartitions.Partition writer) {
+        this.persistence = persistence;
+        this.writer = writer;
+    }
+
+    public String pushData(Glob data, MutableGlob[] tags) {
+        return InMemoryPersistence.durable(pushDataAsync(data, tags));
+    }
+
+    public CompletableFuture<String> pushDataAsync(Glob data, MutableGlob[] tags) {
+        return writer.call(() -> persistence.pushDataAsync(data, tags));
+    }
+
+    public String pushRawData(Reader data, MutableGlob[] tags) {
+        return InMemoryPersistence.durable(pushRawDataAsync(data, tags));
+    }
+
+    public CompletableFuture<String> pushRawDataAsync(Reader data, MutableGlob[] tags) {
+        return writer.call(() -> persistence.pushRawDataAsync(data, tags));
+    }
+
+    public String updateTag(Glob tag, MutableGlob[] globs) {
+        return InMemoryPersistence.durable(updateTagAsync(tag, globs));
+    }
+
+    public CompletableFuture<String> updateTagAsync(Glob tag, MutableGlob[] globs) {
+        return writer.call(() -> persistence.updateTagAsync(tag, globs));
+    }
+
+    public List<Glob> list(GlobType type, Constraint constraint) {
+        return persistence.list(type, constraint);
+    }
+
+    public Iterator<Glob> iterate(GlobType type, Constraint constraint) {
+        return persistence.iterate(type, constraint);
+    }
+
+    public Glob getData(Glob tag) {
+        return persistence.getData(tag);
+    }
+
+    public String getRawData(Glob tag) {
+        return persistence.getRawData(tag);
+    }
+
+    public Listener listen(GlobType type, Constraint constraint, OnChange consumer, GlobType[] additionalWantedTags) {
+        return persistence.listen(type, constraint, consumer, additionalWantedTags);
+    }
+
+    public void checkpoint() {
+        persistence.checkpoint();
+    }
+
+    public void compact() {
+        persistence.compact();
+    }
+
+    public int loadedCount() {
+        return persistence.loadedCount();
+    }
+
+    // after the pending writes.
+    public void shutdown() {
+        writer.call(() -> {
+            persistence.shutdown();
+            return null;
+        });
+    }
+}
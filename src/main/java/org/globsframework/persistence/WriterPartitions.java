@@ -0,0 +1,90 @@
+package org.globsframework.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/*
+ A fixed set of single thread executors: each key (a namespace) is always written by the same thread, so its
+ stores have one writer and their locks are never contended, while the namespaces are spread over the threads.
+ */
+public class WriterPartitions {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriterPartitions.class);
+    private final Partition[] partitions;
+
+    public WriterPartitions(int count) {
+        partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new Partition("writer-" + i);
+        }
+    }
+
+    public Partition get(String key) {
+        return partitions[Math.floorMod(key.hashCode(), partitions.length)];
+    }
+
+    public void shutdown() {
+        for (Partition partition : partitions) {
+            partition.executor.shutdown();
+        }
+        for (Partition partition : partitions) {
+            try {
+                if (!partition.executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    LOGGER.error("Writes still pending in " + partition.name);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public static class Partition {
+        private final String name;
+        private final ExecutorService executor;
+        private volatile Thread thread;
+
+        Partition(String name) {
+            this.name = name;
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                this.thread = thread;
+                return thread;
+            });
+        }
+
+        // run on the writer thread and wait for the result; run at once if already on it.
+        public <T> T call(Callable<T> callable) {
+            try {
+                if (Thread.currentThread() == thread) {
+                    return callable.call();
+                }
+                return executor.submit(callable).get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                String message = "Write failed in " + name;
+                LOGGER.error(message, e.getCause());
+                throw new RuntimeException(message, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                String message = "Interrupted while waiting for " + name;
+                LOGGER.error(message, e);
+                throw new RuntimeException(message, e);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                String message = "Write failed in " + name;
+                LOGGER.error(message, e);
+                throw new RuntimeException(message, e);
+            }
+        }
+    }
+}
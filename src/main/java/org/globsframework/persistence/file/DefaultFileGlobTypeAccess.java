@@ -1,6 +1,7 @@
 package org.globsframework.persistence.file;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParser;
 import org.globsframework.metamodel.GlobTypeResolver;
 import org.globsframework.json.GlobsGson;
 import org.globsframework.json.helper.LoadingGlobTypeResolver;
@@ -16,19 +17,33 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
+/*
+ Declared types are appended, one json per line, to dir/schema.manifest (a torn last line is ignored).
+ find() is a single map lookup: types found through the given resolver are cached with the declared ones.
+ Directories of the previous layout (one <type>.json per type) are converted to the manifest at load.
+ */
 public class DefaultFileGlobTypeAccess implements FileGlobTypeAccess {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultFileGlobTypeAccess.class);
+    public static final String MANIFEST = "schema.manifest";
     private final Path dir;
-    private final Map<String, GlobType> schema = new HashMap<>();
-    private GlobTypeResolver globTypeResolver;
+    private final Map<String, GlobType> types = new ConcurrentHashMap<>();
+    private final GlobTypeResolver globTypeResolver;
+    private final Gson gson = GlobsGson.create(null);
+    private FileChannel manifest;
 
     public DefaultFileGlobTypeAccess(GlobTypeResolver globTypeResolver, Path dir) {
         this.globTypeResolver = globTypeResolver;
@@ -37,68 +52,128 @@ public class DefaultFileGlobTypeAccess implements FileGlobTypeAccess {
     }
 
     public GlobType find(String name) {
-        GlobType globType = schema.get(name);
-        return globType != null ? globType : globTypeResolver.findType(name);
+        GlobType globType = types.get(name);
+        if (globType != null) {
+            return globType;
+        }
+        globType = globTypeResolver.findType(name);
+        if (globType != null) {
+            types.putIfAbsent(name, globType);
+        }
+        return globType;
     }
 
-    public void declare(GlobType globType) {
-        if (globTypeResolver.findType(globType.getName()) != null || schema.containsKey(globType.getName())) {
+    public synchronized void declare(GlobType globType) {
+        if (find(globType.getName()) != null) {
             return;
         }
-        File file = new File(dir.toFile(), globType.getName() + ".json");
-        if (file.exists()) {
-            LOGGER.error("globType " + globType.getName() + " already declared.");
-        }
         try {
-            Gson gson = GlobsGson.create(null);
-            String s = gson.toJson(globType);
-            Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
-            writer.append(s);
-            writer.close();
-            schema.put(globType.getName(), globType);
-
-            globType.streamAnnotations().map(Glob::getType).forEach(this::declare);
-            globType.streamFields().flatMap(Annotations::streamAnnotations).map(Glob::getType).forEach(this::declare);
-            globType.streamFields().flatMap(field -> field instanceof GlobField ? Stream.of(((GlobField) field).getTargetType()) :
-                    field instanceof GlobUnionField ? ((GlobUnionField) field).getTargetTypes().stream() :
-                            field instanceof GlobArrayField ? Stream.of(((GlobArrayField) field).getTargetType()) :
-                                    field instanceof GlobArrayUnionField ? ((GlobArrayUnionField) field).getTargetTypes().stream() :
-                                            Stream.empty()
-            ).forEach(this::declare);
-
+            append(toLine(globType));
         } catch (IOException e) {
             String s = "fail to wirte globType " + globType.getName();
             LOGGER.error(s);
             throw new RuntimeException(s, e);
         }
+        types.put(globType.getName(), globType);
+
+        globType.streamAnnotations().map(Glob::getType).forEach(this::declare);
+        globType.streamFields().flatMap(Annotations::streamAnnotations).map(Glob::getType).forEach(this::declare);
+        globType.streamFields().flatMap(field -> field instanceof GlobField ? Stream.of(((GlobField) field).getTargetType()) :
+                field instanceof GlobUnionField ? ((GlobUnionField) field).getTargetTypes().stream() :
+                        field instanceof GlobArrayField ? Stream.of(((GlobArrayField) field).getTargetType()) :
+                                field instanceof GlobArrayUnionField ? ((GlobArrayUnionField) field).getTargetTypes().stream() :
+                                        Stream.empty()
+        ).forEach(this::declare);
+    }
+
+    public synchronized void shutdown() {
+        try {
+            manifest.close();
+        } catch (IOException e) {
+            LOGGER.error("Fail to close " + dir.resolve(MANIFEST), e);
+        }
     }
 
-    public void shutdown() {
+    // one line whatever the gson configuration
+    private String toLine(GlobType globType) {
+        return JsonParser.parseString(gson.toJson(globType)).toString();
+    }
+
+    private void append(String json) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((json + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            manifest.write(buffer);
+        }
+        manifest.force(false);
     }
 
     private void load() {
+        Path manifestPath = dir.resolve(MANIFEST);
+        LoadingGlobTypeResolver.Builder builder =
+                LoadingGlobTypeResolver.builder(name -> {
+                    GlobType type = globTypeResolver.findType(name);
+                    return type != null ? type : types.get(name);
+                });
+        List<Path> legacyFiles = new ArrayList<>();
         try {
-            LoadingGlobTypeResolver.Builder builder =
-                    LoadingGlobTypeResolver.builder(GlobTypeResolver.chain(globTypeResolver::findType, schema::get)::findType);
-            DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
-            stream.forEach(path -> {
-                try {
+            if (Files.exists(manifestPath)) {
+                String content = new String(Files.readAllBytes(manifestPath), StandardCharsets.UTF_8);
+                int start = 0;
+                int end;
+                while ((end = content.indexOf('\n', start)) >= 0) {
+                    String line = content.substring(start, end);
+                    if (!line.isBlank()) {
+                        builder.read(new StringReader(line));
+                    }
+                    start = end + 1;
+                }
+                if (start < content.length()) {
+                    LOGGER.warn("Incomplete type declaration at the end of " + manifestPath + " ignored.");
+                    try (FileChannel channel = FileChannel.open(manifestPath, StandardOpenOption.WRITE)) {
+                        channel.truncate(content.substring(0, start).getBytes(StandardCharsets.UTF_8).length);
+                    }
+                }
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.json")) {
+                for (Path path : stream) {
                     try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path.toFile()), StandardCharsets.UTF_8))) {
                         builder.read(reader);
                     }
-                } catch (IOException e) {
-                    String s = "Fail to read " + path.toString();
-                    LOGGER.error(s, e);
-                    throw new RuntimeException(s, e);
+                    legacyFiles.add(path);
                 }
-            });
+            }
             for (GlobType type : builder.read()) {
-                schema.put(type.getName(), type);
+                types.put(type.getName(), type);
+            }
+            if (!legacyFiles.isEmpty()) {
+                convert(manifestPath, legacyFiles);
             }
+            manifest = FileChannel.open(manifestPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
         } catch (IOException e) {
             String s = "Fail to read directory " + dir.toString();
             LOGGER.error(s, e);
             throw new RuntimeException(s, e);
         }
     }
+
+    // rewrite all the types in a new manifest then delete the one file per type layout.
+    private void convert(Path manifestPath, List<Path> legacyFiles) throws IOException {
+        LOGGER.info("Moving " + legacyFiles.size() + " type files of " + dir + " to " + manifestPath);
+        Path tmp = dir.resolve(MANIFEST + TagLogFile.TMP_EXTENSION);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp.toFile()), StandardCharsets.UTF_8))) {
+            for (GlobType type : types.values()) {
+                if (globTypeResolver.findType(type.getName()) == null) {
+                    writer.append(toLine(type)).append('\n');
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, manifestPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        TagLogFile.syncDirectory(dir);
+        for (Path legacyFile : legacyFiles) {
+            Files.delete(legacyFile);
+        }
+    }
 }
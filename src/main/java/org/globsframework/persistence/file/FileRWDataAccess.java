@@ -1,44 +1,212 @@
 package org.globsframework.persistence.file;
 
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import org.globsframework.json.GSonUtils;
 import org.globsframework.json.GlobGSonDeserializer;
 import org.globsframework.metamodel.GlobTypeResolver;
 import org.globsframework.model.Glob;
 import org.globsframework.persistence.RWDataAccess;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
+/*
+ Data are stored one file per uuid in dir/<2 first hex>/<2 next hex>/<uuid>.json.
+ Files of the legacy flat layout (dir/<uuid>.json) are still read and are moved in the background.
+ */
 public class FileRWDataAccess implements RWDataAccess {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileRWDataAccess.class);
+    private static final Pattern LEGACY_FILE = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}\\.json");
     private File dir;
     private GlobTypeResolver typeAccess;
+    private final StreamingGlobValidator validator;
+    private final Thread migrationThread;
+    // files written by put() since the last sync().
+    private final Set<Path> unsynced = ConcurrentHashMap.newKeySet();
+    // set unless ASYNC: a file written by save() is forced before it returns, so before its tags are written.
+    private final boolean durable;
+    private volatile boolean stopped = false;
 
     public FileRWDataAccess(File dir, GlobTypeResolver typeAccess) {
+        this(dir, typeAccess, TagLogDurability.ASYNC);
+    }
+
+    public FileRWDataAccess(File dir, GlobTypeResolver typeAccess, TagLogDurability durability) {
         this.dir = dir;
         this.typeAccess = typeAccess;
+        this.durable = durability.mode != TagLogDurability.Mode.ASYNC;
+        this.validator = new StreamingGlobValidator(typeAccess);
+        if (hasLegacyFiles()) {
+            migrationThread = new Thread(this::migrate, "data-migration " + dir.getName());
+            migrationThread.setDaemon(true);
+            migrationThread.start();
+        } else {
+            migrationThread = null;
+        }
+    }
+
+    private File shardedFile(String uuid) {
+        return new File(new File(new File(dir, uuid.substring(0, 2)), uuid.substring(2, 4)), uuid + ".json");
+    }
+
+    private File legacyFile(String uuid) {
+        return new File(dir, uuid + ".json");
+    }
+
+    // the migration can move the file between the two checks: look again in the shard last.
+    private File locate(String uuid) {
+        File file = shardedFile(uuid);
+        if (file.exists()) {
+            return file;
+        }
+        File legacy = legacyFile(uuid);
+        if (legacy.exists()) {
+            return legacy;
+        }
+        return file;
+    }
+
+    private File newFile(String uuid) {
+        File file = shardedFile(uuid);
+        File parent = file.getParentFile();
+        if (!parent.exists()) {
+            if (!parent.mkdirs() && !parent.exists()) {
+                String message = "Fail to create dir " + parent.getAbsolutePath();
+                LOGGER.error(message);
+                throw new RuntimeException(message);
+            }
+            if (durable) {
+                force(parent.getParentFile().toPath());
+                force(dir.toPath());
+            }
+        }
+        return file;
+    }
+
+    private boolean hasLegacyFiles() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir.toPath())) {
+            for (Path file : files) {
+                if (LEGACY_FILE.matcher(file.getFileName().toString()).matches()) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Fail to list " + dir.getAbsolutePath(), e);
+        }
+        return false;
+    }
+
+    // move the uuid named files of the flat layout to their shard, other files (tag logs, ...) are left alone.
+    private void migrate() {
+        long start = System.nanoTime();
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir.toPath())) {
+            for (Path file : files) {
+                if (stopped) {
+                    LOGGER.info("Migration of " + dir.getAbsolutePath() + " interrupted after " + count + " files");
+                    return;
+                }
+                String name = file.getFileName().toString();
+                if (!LEGACY_FILE.matcher(name).matches()) {
+                    continue;
+                }
+                String uuid = name.substring(0, name.length() - ".json".length());
+                Path target = newFile(uuid).toPath();
+                try {
+                    Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+                    count++;
+                } catch (NoSuchFileException e) {
+                } catch (IOException e) {
+                    LOGGER.error("Fail to move " + file + " to " + target, e);
+                }
+                if (count % 10000 == 0 && count != 0) {
+                    LOGGER.info(count + " files moved in " + dir.getAbsolutePath());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Migration of " + dir.getAbsolutePath() + " failed after " + count + " files", e);
+            return;
+        }
+        LOGGER.info("Migration of " + dir.getAbsolutePath() + " done: " + count + " files moved in " +
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) + "s");
     }
 
     public Glob getData(String uuid) {
-        File file = new File(dir, uuid + ".json");
-        Glob glob = null;
+        return read(uuid, file -> {
+            try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                JsonReader jsonReader = new JsonReader(reader);
+                jsonReader.beginObject();
+                String uuidName = jsonReader.nextName();
+                String readUUID = jsonReader.nextString();
+                if (!readUUID.equals(uuid)) {
+                    throw new RuntimeException("Bad UUID");
+                }
+                String dataName = jsonReader.nextName();
+                Glob glob = GlobGSonDeserializer.read(jsonReader, typeAccess);
+                jsonReader.endObject();
+                return glob;
+            }
+        });
+    }
+
+    // the migration can move a legacy file between locate() and its opening: it is then read from its shard.
+    private <T> T read(String uuid, FileRead<T> read) {
+        File file = locate(uuid);
         try {
-            Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
-            JsonReader jsonReader = new JsonReader(reader);
-            jsonReader.beginObject();
-            String uuidName = jsonReader.nextName();
-            String readUUID = jsonReader.nextString();
-            if (!readUUID.equals(uuid)) {
-                throw new RuntimeException("Bad UUID");
+            try {
+                return read.read(file);
+            } catch (FileNotFoundException | NoSuchFileException e) {
+                File sharded = shardedFile(uuid);
+                if (file.equals(sharded)) {
+                    throw e;
+                }
+                file = sharded;
+                return read.read(file);
             }
-            String dataName = jsonReader.nextName();
-            glob = GlobGSonDeserializer.read(jsonReader, typeAccess);
-            jsonReader.endObject();
         } catch (IOException e) {
             throw new RuntimeException("Fail to read " + file.getAbsolutePath(), e);
         }
-        return glob;
+    }
+
+    private interface FileRead<T> {
+        T read(File file) throws IOException;
+    }
+
+    // the file is written by save() as {"uuid":"...","data":...}: the data is sent as it is.
+    public String getRawData(String uuid) {
+        byte[] content = read(uuid, file -> Files.readAllBytes(file.toPath()));
+        byte[] header = header(uuid).getBytes(StandardCharsets.UTF_8);
+        int end = content.length;
+        while (end > 0 && Character.isWhitespace(content[end - 1])) {
+            end--;
+        }
+        if (end > header.length && content[end - 1] == '}' &&
+            Arrays.equals(content, 0, header.length, header, 0, header.length)) {
+            return new String(content, header.length, end - 1 - header.length, StandardCharsets.UTF_8);
+        }
+        LOGGER.warn("Unexpected layout for " + uuid + " in " + dir.getAbsolutePath() + ", decoding it.");
+        return GSonUtils.encode(getData(uuid), true);
+    }
+
+    private static String header(String uuid) {
+        return "{\"uuid\":\"" + uuid + "\",\"data\":";
     }
 
     public String save(Glob glob) {
@@ -46,22 +214,111 @@ public class FileRWDataAccess implements RWDataAccess {
         String uuid;
         do {
             uuid = UUID.randomUUID().toString();
-            file = new File(dir, uuid + ".json");
-        } while (file.exists());
+            file = newFile(uuid);
+        } while (file.exists() || legacyFile(uuid).exists());
 
         try {
             Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
-            writer.append("{")
-            .append("\"uuid\":\"").append(uuid).append("\",\"data\":");
+            writer.append(header(uuid));
             GSonUtils.encode(writer, glob, true);
             writer.append("}");
             writer.close();
         } catch (IOException e) {
             throw new RuntimeException("Fail to write data for " + uuid, e);
         }
+        forceNew(file);
         return uuid;
     }
 
+    public String saveRaw(Reader json) {
+        File file;
+        String uuid;
+        do {
+            uuid = UUID.randomUUID().toString();
+            file = newFile(uuid);
+        } while (file.exists() || legacyFile(uuid).exists());
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.append(header(uuid));
+            JsonWriter jsonWriter = new JsonWriter(writer);
+            validator.copy(new JsonReader(json), jsonWriter);
+            jsonWriter.flush();
+            writer.append("}");
+        } catch (IOException | RuntimeException e) {
+            if (!file.delete()) {
+                LOGGER.error("Fail to delete " + file.getAbsolutePath());
+            }
+            String message = "Invalid data for " + uuid + " : " + e.getMessage();
+            LOGGER.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+        forceNew(file);
+        return uuid;
+    }
+
+    // written in a temporary file then renamed: a reader see the previous or the new data.
+    public void put(String uuid, String json) {
+        File file = newFile(uuid);
+        Path tmp = file.toPath().resolveSibling(uuid + ".tmp");
+        try {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp.toFile()), StandardCharsets.UTF_8))) {
+                writer.append(header(uuid));
+                writer.append(json);
+                writer.append("}");
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            String message = "Fail to write data for " + uuid;
+            LOGGER.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+        File legacy = legacyFile(uuid);
+        if (legacy.exists() && !legacy.delete()) {
+            LOGGER.error("Fail to delete " + legacy.getAbsolutePath());
+        }
+        unsynced.add(file.toPath());
+    }
+
+    private void forceNew(File file) {
+        if (durable) {
+            force(file.toPath());
+            force(file.getParentFile().toPath());
+        }
+    }
+
+    public void sync() {
+        Set<Path> directories = new HashSet<>();
+        for (Path path : unsynced) {
+            unsynced.remove(path);
+            force(path);
+            directories.add(path.getParent());
+        }
+        for (Path directory : directories) {
+            force(directory);
+        }
+    }
+
+    private static void force(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            if (!Files.isDirectory(path)) {
+                String message = "Fail to sync " + path;
+                LOGGER.error(message, e);
+                throw new RuntimeException(message, e);
+            }
+            // fsync of a directory is not supported on every platform.
+        }
+    }
+
     public void shutdown() {
+        stopped = true;
+        if (migrationThread != null) {
+            try {
+                migrationThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 }
@@ -2,7 +2,6 @@ package org.globsframework.persistence.file;
 
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
-import org.globsframework.json.GSonUtils;
 import org.globsframework.json.GlobGSonDeserializer;
 import org.globsframework.metamodel.GlobTypeResolver;
 import org.globsframework.model.Glob;
@@ -11,51 +10,74 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Iterator;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class FileRWTagAccess implements RWTagAccess {
     public static final int MAX_GLOB_COUNT = 10000;
     public static final int MAX_DAY = 2;
+    public static final int REPLAY_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final long DEFAULT_COMPACTION_BYTES_PER_SECOND = 10 * 1024 * 1024;
     private static final Logger LOGGER = LoggerFactory.getLogger(FileRWTagAccess.class);
+    public static final int RING_SIZE = 16 * 1024;
+    public static final int MAX_BATCH = 1024;
+    public static final int WRITE_BUFFER_SIZE = 1024 * 1024;
     private final Path dir;
     private final GlobTypeResolver typeAccess;
-    private Writer writer;
-    private boolean first = true;
+    private final TagLogManifest manifest;
+    private final TagLogCompactor compactor;
+    private final TagLogDurability durability;
+    private final LatencyHistogram fsyncLatency = new LatencyHistogram("tags fsync");
+    private final TagLogRingBuffer<Append> ring = new TagLogRingBuffer<>(RING_SIZE);
+    private final Thread writerThread;
+    private volatile boolean stopped = false;
+    private volatile Path activePath;
+    // only accessed by the writer thread once started.
+    private TagLogWriter writer;
     private int size = 0;
     private Instant last = Instant.now();
+    private final List<CompletableFuture<Void>> waitingSync = new ArrayList<>();
+    private long lastSync = System.nanoTime();
 
     public FileRWTagAccess(Path dir, GlobTypeResolver typeAccess) {
+        this(dir, typeAccess, DEFAULT_COMPACTION_BYTES_PER_SECOND, TagLogDurability.ASYNC);
+    }
+
+    public FileRWTagAccess(Path dir, GlobTypeResolver typeAccess, long compactionBytesPerSecond, TagLogDurability durability) {
         this.dir = dir;
         this.typeAccess = typeAccess;
+        this.durability = durability;
+        this.manifest = new TagLogManifest(dir);
+        this.compactor = new TagLogCompactor(dir, manifest, this::currentLog, new IoThrottle(compactionBytesPerSecond));
         createNewOutputFile();
+        writerThread = new Thread(this::writeLoop, "tags-writer " + dir);
+        writerThread.setDaemon(true);
+        writerThread.start();
+        LOGGER.info("Tag log in " + dir + " with durability " + durability);
     }
 
     private void createNewOutputFile() {
-        if (writer != null) {
-            try {
-                writer.append("]");
-                writer.close();
-            } catch (IOException e) {
-                String s = "Can not write or close file ";
-                LOGGER.error(s, e);
-                throw new RuntimeException(s);
-            }
-        }
         File file;
         int loop = 0;
         do {
             Instant instant = Instant.now();
             ZonedDateTime zonedDateTime = instant.atZone(ZoneOffset.UTC);
-            file = new File(dir.toFile(), zonedDateTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + ".json");
+            file = new File(dir.toFile(), zonedDateTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + TagLogFile.EXTENSION);
             if (file.exists()) {
                 try {
                     Thread.sleep(10);
@@ -71,10 +93,10 @@ public class FileRWTagAccess implements RWTagAccess {
         }
         try {
             size = 0;
-            first = true;
             last = Instant.now();
-            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
-            writer.append("[");
+            manifest.setActive(file.toPath());
+            writer = new TagLogWriter(file.toPath(), WRITE_BUFFER_SIZE);
+            activePath = writer.getPath();
         } catch (Exception e) {
             String s = "Can not create or write to file " + file.getAbsolutePath();
             LOGGER.error(s, e);
@@ -82,104 +104,487 @@ public class FileRWTagAccess implements RWTagAccess {
         }
     }
 
-    public synchronized void save(String uuid, Glob[] tags) {
+    public void save(String uuid, Glob[] tags) {
         try {
-            if (!first) {
-                writer.append(",");
-            }
-            first = false;
-            writer.append("{\"uuid\":\"").append(uuid).append("\",")
-                    .append("\"data\":[");
-            for (int i = 0, tagsLength = tags.length; i < tagsLength; i++) {
-                Glob tag = tags[i];
-                String s = GSonUtils.encode(tag, true);
-                writer.append(s);
-                if (i < tagsLength - 1) {
-                    writer.append(",");
+            append(uuid, tags).get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Fail to save tags of " + uuid + " in " + dir, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while saving tags of " + uuid + " in " + dir, e);
+        }
+    }
+
+    // tags are encoded on the caller thread; the returned future completes once the record is
+    // written (ASYNC) or fsynced (GROUP_COMMIT, SYNC).
+    public CompletableFuture<Void> append(String uuid, Glob[] tags) {
+        if (stopped) {
+            throw new RuntimeException("Tag log " + dir + " is closed");
+        }
+        return publish(new Append(TagLogFile.encode(uuid, tags), tags.length, null));
+    }
+
+    CompletableFuture<Void> publish(Append append) {
+        ring.publish(append);
+        return append.done;
+    }
+
+    public LatencyHistogram getFsyncLatency() {
+        return fsyncLatency;
+    }
+
+    // the single writer: drain the ring, write the records in one sequential chunk and fsync according to the durability.
+    private void writeLoop() {
+        List<Append> batch = new ArrayList<>(MAX_BATCH);
+        long groupCommitNanos = durability.groupCommitMillis * 1_000_000L;
+        while (true) {
+            long wait = waitingSync.isEmpty() ? 100_000_000L : Math.max(1, lastSync + groupCommitNanos - System.nanoTime());
+            batch.clear();
+            ring.drainTo(batch, MAX_BATCH, wait);
+            // an append is processed once written (its future is then in waitingSync) or once failed.
+            int processed = 0;
+            try {
+                for (; processed < batch.size(); processed++) {
+                    Append append = batch.get(processed);
+                    if (append.command != null) {
+                        append.command.run();
+                        if (append.command == shutdownCommand) {
+                            fail(batch.subList(processed + 1, batch.size()), new RuntimeException("Tag log " + dir + " closed"));
+                            return;
+                        }
+                        continue;
+                    }
+                    writer.write(append.frame);
+                    waitingSync.add(append.done);
+                    size += append.tagCount;
+                    if (size > MAX_GLOB_COUNT || Duration.between(last, Instant.now()).compareTo(Duration.ofDays(MAX_DAY)) > 0) {
+                        sealAndCreateNewOutputFile();
+                    }
+                }
+                writer.flush();
+                if (!waitingSync.isEmpty()) {
+                    switch (durability.mode) {
+                        case ASYNC:
+                            completeWaiting();
+                            break;
+                        case SYNC:
+                            force();
+                            break;
+                        case GROUP_COMMIT:
+                            if (waitingSync.size() >= durability.groupCommitRecords ||
+                                System.nanoTime() - lastSync >= groupCommitNanos) {
+                                force();
+                            }
+                            break;
+                    }
                 }
-                size++;
+            } catch (Exception e) {
+                LOGGER.error("Fail to write tags in " + dir, e);
+                failWaiting(e);
+                fail(batch.subList(processed, batch.size()), e);
             }
-            writer.append("]}");
-            writer.flush();
+        }
+    }
+
+    private static void fail(List<Append> appends, Exception e) {
+        for (Append append : appends) {
+            append.done.completeExceptionally(e);
+        }
+    }
+
+    private void force() throws IOException {
+        long start = System.nanoTime();
+        writer.force();
+        lastSync = System.nanoTime();
+        fsyncLatency.record(lastSync - start);
+        completeWaiting();
+    }
+
+    private void completeWaiting() {
+        for (CompletableFuture<Void> future : waitingSync) {
+            future.complete(null);
+        }
+        waitingSync.clear();
+    }
+
+    private void failWaiting(Exception e) {
+        for (CompletableFuture<Void> future : waitingSync) {
+            future.completeExceptionally(e);
+        }
+        waitingSync.clear();
+    }
+
+    private void sealAndCreateNewOutputFile() throws IOException {
+        writer.flush();
+        if (durability.mode != TagLogDurability.Mode.ASYNC) {
+            force();
+        }
+        writer.close();
+        completeWaiting();
+        if (fsyncLatency.count() != 0) {
+            LOGGER.info(fsyncLatency.toString());
+        }
+        createNewOutputFile();
+    }
+
+    private Path currentLog() {
+        return activePath;
+    }
+
+    private void execute(Runnable command) {
+        if (stopped) {
+            throw new RuntimeException("Tag log " + dir + " is closed");
+        }
+        publish(new Append(null, 0, command));
+    }
+
+    // the records are indexed by uuid and type without decoding the json, only the latest tags are decoded.
+    public void listAll(TagListener consumer) {
+        List<Path> files = manifest.logs();
+        Path snapshot = manifest.snapshots().stream().reduce((first, second) -> second).orElse(null);
+        LatestTags latestTags = new LatestTags();
+        if (snapshot != null) {
+            if (readSnapshot(snapshot, latestTags)) {
+                LocalDateTime position = TagLogFile.timestampOf(snapshot);
+                files = files.stream()
+                        .filter(path -> TagLogFile.timestampOf(path) == null || !TagLogFile.timestampOf(path).isBefore(position))
+                        .collect(Collectors.toList());
+            } else {
+                // the tag logs it covers are deleted: starting without it would lose their tags.
+                String s = "Fail to read snapshot " + snapshot;
+                LOGGER.error(s);
+                throw new RuntimeException(s);
+            }
+        }
+        long start = System.nanoTime();
+        long bytes = 0;
+        long records = 0;
+        int threads = Math.min(REPLAY_THREADS, Math.max(1, files.size()));
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        long decodeStart;
+        try {
+            // files are read concurrently but indexed in timestamp order so later updates still win.
+            Deque<Future<List<LatestTags.Record>>> pending = new ArrayDeque<>();
+            Iterator<Path> toRead = files.iterator();
+            while (toRead.hasNext() || !pending.isEmpty()) {
+                while (toRead.hasNext() && pending.size() < threads * 2) {
+                    Path path = toRead.next();
+                    bytes += path.toFile().length();
+                    pending.add(executorService.submit(() -> read(path)));
+                }
+                for (LatestTags.Record record : pending.poll().get()) {
+                    latestTags.put(record);
+                    records++;
+                }
+            }
+            decodeStart = System.nanoTime();
+            latestTags.decodeTo(consumer, typeAccess, executorService, threads);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading " + dir.toString(), e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("For " + dir.toString(), e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1_000_000_000.;
+        LOGGER.info("Replayed " + records + " records from " + files.size() + " files (" + bytes + " bytes) of " + dir +
+                    " in " + String.format("%.3f", seconds) + "s: " + String.format("%.0f", records / seconds) + " records/s, " +
+                    String.format("%.2f", bytes / seconds / (1024. * 1024.)) + " MB/s using " + threads + " threads; " +
+                    latestTags.superseded() + " superseded tags of " + latestTags.count() + " skipped, decoding took " +
+                    (System.nanoTime() - decodeStart) / 1_000_000 + "ms");
+    }
+
+    public void compact() {
+        compactor.compact();
+    }
+
+    // tag logs used to be written among the data files: move them (and drop the manifest so it is rebuilt).
+    public static void moveTagLogs(Path from, Path to) {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(from)) {
+            files = stream.filter(path -> TagLogFile.isTagLog(path) || TagLogFile.isSnapshot(path) || TagLogFile.isLegacyTagLog(path))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            String s = "Fail to list " + from;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+        LOGGER.info("Moving " + files.size() + " tag logs from " + from + " to " + to);
+        try {
+            Files.deleteIfExists(to.resolve(TagLogManifest.NAME));
+            for (Path file : files) {
+                Files.move(file, to.resolve(file.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            String s = "Fail to move tag logs from " + from + " to " + to;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+        TagLogFile.syncDirectory(to);
+        TagLogFile.syncDirectory(from);
+    }
+
+    public void sync() {
+        CompletableFuture<Void> synced = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                writer.flush();
+                force();
+                synced.complete(null);
+            } catch (Exception e) {
+                synced.completeExceptionally(e);
+            }
+        });
+        try {
+            synced.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while syncing " + dir, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Fail to sync tag log in " + dir, e.getCause());
+        }
+    }
+
+    public Checkpoint checkpoint() {
+        CompletableFuture<Path> rotated = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                sealAndCreateNewOutputFile();
+                rotated.complete(activePath);
+            } catch (Exception e) {
+                rotated.completeExceptionally(e);
+            }
+        });
+        Path position;
+        try {
+            position = rotated.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while sealing " + dir, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Fail to seal tag log in " + dir, e.getCause());
+        }
+        return state -> writeSnapshot(position, state);
+    }
+
+    // the snapshot is named after the first log it does not cover.
+    private void writeSnapshot(Path position, TagSource state) {
+        long start = System.nanoTime();
+        String name = TagLogFile.baseName(position) + TagLogFile.SNAPSHOT_EXTENSION;
+        Path tmp = dir.resolve(name + TagLogFile.TMP_EXTENSION);
+        Path snapshot = dir.resolve(name);
+        int[] count = new int[1];
+        try {
+            try (TagLogWriter snapshotWriter = new TagLogWriter(tmp)) {
+                state.forEach((uuid, tags) -> {
+                    List<Glob> globs = new ArrayList<>();
+                    tags.forEachRemaining(globs::add);
+                    try {
+                        snapshotWriter.write(TagLogFile.encode(uuid, globs.toArray(new Glob[0])));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    count[0]++;
+                });
+                snapshotWriter.sync();
+            }
+            // the logs covered by the snapshot are deleted once it is added: it must be readable.
+            verifySnapshot(tmp, count[0]);
+            Files.move(tmp, snapshot, StandardCopyOption.ATOMIC_MOVE);
+            TagLogFile.syncDirectory(dir);
+            manifest.addSnapshot(snapshot);
+        } catch (IOException | UncheckedIOException e) {
+            String s = "Fail to write snapshot " + snapshot;
+            LOGGER.error(s, e);
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ex) {
+                LOGGER.error("Fail to delete " + tmp, ex);
+            }
+            throw new RuntimeException(s, e);
+        }
+        List<Path> previous = manifest.snapshots().stream()
+                .filter(path -> TagLogFile.BY_TIMESTAMP.compare(path, snapshot) < 0)
+                .collect(Collectors.toList());
+        try {
+            manifest.remove(previous);
+            for (Path path : previous) {
+                Files.delete(path);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Fail to delete previous snapshots in " + dir, e);
+        }
+        compactor.deleteCoveredLogs();
+        LOGGER.info("Snapshot " + snapshot + " of " + count[0] + " uuids written in " +
+                    (System.nanoTime() - start) / 1_000_000 + "ms");
+    }
+
+    private static void verifySnapshot(Path snapshot, int count) throws IOException {
+        try (TagLogReader reader = new TagLogReader(snapshot)) {
+            while (reader.next()) {
+            }
+            if (reader.isTorn() || reader.isCorrupted() || reader.recordCount() != count) {
+                throw new IOException("Snapshot " + snapshot + " read back with " + reader.recordCount() + " of " + count + " records");
+            }
+        }
+    }
 
-            if (size > MAX_GLOB_COUNT || Duration.between(last, Instant.now()).compareTo(Duration.ofDays(MAX_DAY)) > 0) {
-                createNewOutputFile();
+    private boolean readSnapshot(Path snapshot, LatestTags latestTags) {
+        long start = System.nanoTime();
+        try (TagLogReader reader = new TagLogReader(snapshot)) {
+            while (reader.next()) {
+                latestTags.put(LatestTags.Record.read(reader));
             }
+            if (reader.isTorn() || reader.isCorrupted()) {
+                LOGGER.error("Snapshot " + snapshot + " is damaged after " + reader.recordCount() + " records");
+                return false;
+            }
+            LOGGER.info("Loaded snapshot " + snapshot + " with " + reader.recordCount() + " uuids in " +
+                        (System.nanoTime() - start) / 1_000_000 + "ms");
+            return true;
         } catch (Exception e) {
-            throw new RuntimeException("Bug", e);
+            LOGGER.error("While reading " + snapshot, e);
+            return false;
         }
     }
 
-    public void listAll(TagListener consumer) {
+    private List<LatestTags.Record> read(Path path) {
+        List<LatestTags.Record> result = new ArrayList<>();
+        if (TagLogFile.isTagLog(path)) {
+            readTagLog(path, result);
+        } else {
+            readLegacyJson(path, (uuid, tags) -> {
+                List<Glob> globs = new ArrayList<>();
+                tags.forEachRemaining(globs::add);
+                result.add(LatestTags.Record.of(uuid, globs));
+            });
+        }
+        return result;
+    }
+
+    private void readTagLog(Path path, List<LatestTags.Record> records) {
+        try (TagLogReader reader = new TagLogReader(path)) {
+            while (reader.next()) {
+                records.add(LatestTags.Record.read(reader));
+            }
+            if (reader.isTorn()) {
+                if (path.equals(activePath)) {
+                    LOGGER.warn("Incomplete record at the end of the current file " + path);
+                } else {
+                    LOGGER.warn("Torn record at the end of " + path + " after " + reader.recordCount() +
+                                " records, truncating at " + reader.validPosition());
+                    reader.truncateTornTail();
+                }
+            } else if (reader.isCorrupted()) {
+                LOGGER.error("Corrupted record in " + path + " at " + reader.validPosition() + " after " +
+                             reader.recordCount() + " records, following records are ignored.");
+            }
+        } catch (Exception e) {
+            LOGGER.error("While reading " + path.toString(), e);
+        }
+    }
+
+    // json array format written before the framed tag log.
+    private void readLegacyJson(Path path, TagListener consumer) {
         try {
-            DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
-            stream.forEach(path -> {
-                try {
-                    File file = path.toFile();
-                    if (file.length() > 0) {
-                        JsonReader jsonReader = new JsonReader(new BufferedReader(new FileReader(file)));
-                        jsonReader.beginArray();
-                        do {
-                            jsonReader.beginObject();
-                            String name = jsonReader.nextName();
-                            if (!name.equals("uuid")) {
+            File file = path.toFile();
+            if (file.length() > 0) {
+                JsonReader jsonReader = new JsonReader(new BufferedReader(new FileReader(file)));
+                jsonReader.beginArray();
+                do {
+                    jsonReader.beginObject();
+                    String name = jsonReader.nextName();
+                    if (!name.equals("uuid")) {
 
-                            }
-                            String uuid = jsonReader.nextString();
-                            name = jsonReader.nextName();
-                            if (!name.equals("data")) {
+                    }
+                    String uuid = jsonReader.nextString();
+                    name = jsonReader.nextName();
+                    if (!name.equals("data")) {
 
+                    }
+                    jsonReader.beginArray();
+                    Iterator<Glob> it = new Iterator<Glob>() {
+                        public boolean hasNext() {
+                            try {
+                                return jsonReader.peek() != JsonToken.END_ARRAY;
+                            } catch (Exception e) {
+                                throw new RuntimeException("EOF", e);
                             }
-                            jsonReader.beginArray();
-                            Iterator<Glob> it = new Iterator<Glob>() {
-                                public boolean hasNext() {
-                                    try {
-                                        return jsonReader.peek() != JsonToken.END_ARRAY;
-                                    } catch (Exception e) {
-                                        throw new RuntimeException("EOF", e);
-                                    }
-                                }
-
-                                public Glob next() {
-                                    try {
-                                        return GlobGSonDeserializer.read(jsonReader, typeAccess);
-                                    } catch (IOException e) {
-                                        throw new RuntimeException("EOF", e);
-                                    }
-                                }
-                            };
-                            consumer.accept(uuid, it);
-                            // be sure iterator was fully read.
-                            while (it.hasNext()) {
-                                it.next();
+                        }
+
+                        public Glob next() {
+                            try {
+                                return GlobGSonDeserializer.read(jsonReader, typeAccess);
+                            } catch (IOException e) {
+                                throw new RuntimeException("EOF", e);
                             }
-                            jsonReader.endArray();
-                            jsonReader.endObject();
-                        } while (jsonReader.peek() != JsonToken.END_ARRAY);
+                        }
+                    };
+                    consumer.accept(uuid, it);
+                    // be sure iterator was fully read.
+                    while (it.hasNext()) {
+                        it.next();
                     }
-                } catch (Exception e) {
-                    LOGGER.error("While reading " + path.toString(), e);
-                }
-            });
-        } catch (IOException e) {
-            throw new RuntimeException("For " + dir.toString(), e);
+                    jsonReader.endArray();
+                    jsonReader.endObject();
+                } while (jsonReader.peek() != JsonToken.END_ARRAY);
+            }
+        } catch (Exception e) {
+            LOGGER.error("While reading " + path.toString(), e);
         }
     }
 
-    public synchronized void shutdown() {
+    public void shutdown() {
         LOGGER.info("closing tags");
+        stopped = true;
+        ring.publish(new Append(null, 0, shutdownCommand));
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Append> remaining = new ArrayList<>();
+        ring.drainTo(remaining, ring.capacity(), 0);
+        for (Append append : remaining) {
+            append.done.completeExceptionally(new RuntimeException("Tag log " + dir + " closed"));
+        }
+        if (fsyncLatency.count() != 0) {
+            LOGGER.info(fsyncLatency.toString());
+        }
+    }
+
+    private final Runnable shutdownCommand = this::closeWriter;
+
+    private void closeWriter() {
         try {
-            writer.append("]");
+            writer.flush();
+            if (durability.mode != TagLogDurability.Mode.ASYNC) {
+                force();
+            }
             writer.close();
+            completeWaiting();
         } catch (IOException e) {
             LOGGER.error("Fail to close tags", e);
+            failWaiting(e);
         }
         writer = null;
-
+        activePath = null;
     }
 
-    static class Data {
-        String uuid;
-        Glob[] tags;
+    static class Append {
+        final byte[] frame;
+        final int tagCount;
+        final Runnable command;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Append(byte[] frame, int tagCount, Runnable command) {
+            this.frame = frame;
+            this.tagCount = tagCount;
+            this.command = command;
+        }
     }
 }
@@ -0,0 +1,37 @@
+package org.globsframework.persistence.file;
+
+/*
+ Keep a background io task under a given number of bytes per second.
+ */
+public class IoThrottle {
+    public static final IoThrottle NONE = new IoThrottle(0);
+    private final long bytesPerSecond;
+    private long start = System.nanoTime();
+    private long bytes;
+
+    // 0 means no limit.
+    public IoThrottle(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public void reset() {
+        start = System.nanoTime();
+        bytes = 0;
+    }
+
+    public void acquire(long count) {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        bytes += count;
+        long expectedNanos = bytes * 1_000_000_000L / bytesPerSecond;
+        long sleepNanos = expectedNanos - (System.nanoTime() - start);
+        if (sleepNanos > 1_000_000) {
+            try {
+                Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.globsframework.persistence.file;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ Power of two buckets in micro seconds: bucket i count latencies in [2^(i-1), 2^i[ us.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 32;
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    // upper bound in micro seconds of the bucket containing the given percentile.
+    public long percentileMicros(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * percentile / 100.);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= threshold) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    public String toString() {
+        long total = count.get();
+        StringBuilder builder = new StringBuilder(name).append(": count=").append(total);
+        if (total == 0) {
+            return builder.toString();
+        }
+        builder.append(" avg=").append(totalNanos.get() / total / 1000).append("us")
+                .append(" p50<").append(percentileMicros(50)).append("us")
+                .append(" p99<").append(percentileMicros(99)).append("us")
+                .append(" p99.9<").append(percentileMicros(99.9)).append("us")
+                .append(" max=").append(maxNanos.get() / 1000).append("us [");
+        for (int i = 0; i < BUCKETS; i++) {
+            long value = buckets.get(i);
+            if (value != 0) {
+                builder.append(" <").append(1L << i).append("us:").append(value);
+            }
+        }
+        return builder.append(" ]").toString();
+    }
+}
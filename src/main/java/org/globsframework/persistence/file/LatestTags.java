@@ -0,0 +1,134 @@
+package org.globsframework.persistence.file;
+
+import com.google.gson.stream.JsonReader;
+import org.globsframework.json.GlobGSonDeserializer;
+import org.globsframework.metamodel.GlobTypeResolver;
+import org.globsframework.model.Glob;
+import org.globsframework.persistence.RWTagAccess;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/*
+ Latest tag of each uuid and type name seen while replaying the logs, kept as the raw json of the record:
+ a superseded tag is never decoded. Each remaining tag is decoded once by decodeTo().
+ */
+class LatestTags {
+    public static final int DECODE_CHUNK = 1024;
+    private final Map<String, Map<String, Object>> tagsByUUID = new LinkedHashMap<>();
+    private long count;
+    private long superseded;
+
+    // tags are the raw json (byte[]) or already decoded Glob (legacy json logs).
+    void put(Record record) {
+        Map<String, Object> tags = tagsByUUID.computeIfAbsent(record.uuid, uuid -> new HashMap<>(4));
+        for (int i = 0; i < record.typeNames.length; i++) {
+            if (tags.put(record.typeNames[i], record.tags[i]) != null) {
+                superseded++;
+            }
+            count++;
+        }
+    }
+
+    long count() {
+        return count;
+    }
+
+    long superseded() {
+        return superseded;
+    }
+
+    int uuidCount() {
+        return tagsByUUID.size();
+    }
+
+    // decode by chunks on the executor, give them to the consumer in the calling thread, in the order of first appearance.
+    void decodeTo(RWTagAccess.TagListener consumer, GlobTypeResolver typeAccess, ExecutorService executorService, int threads)
+            throws InterruptedException, ExecutionException {
+        Iterator<Map.Entry<String, Map<String, Object>>> iterator = tagsByUUID.entrySet().iterator();
+        Deque<Future<List<Decoded>>> pending = new ArrayDeque<>();
+        while (iterator.hasNext() || !pending.isEmpty()) {
+            while (iterator.hasNext() && pending.size() < threads * 2) {
+                List<Map.Entry<String, Map<String, Object>>> chunk = new ArrayList<>(DECODE_CHUNK);
+                while (iterator.hasNext() && chunk.size() < DECODE_CHUNK) {
+                    chunk.add(iterator.next());
+                    iterator.remove();
+                }
+                pending.add(executorService.submit(() -> decode(chunk, typeAccess)));
+            }
+            for (Decoded decoded : pending.poll().get()) {
+                consumer.accept(decoded.uuid, Arrays.asList(decoded.tags).iterator());
+            }
+        }
+    }
+
+    private static List<Decoded> decode(List<Map.Entry<String, Map<String, Object>>> chunk, GlobTypeResolver typeAccess) {
+        List<Decoded> result = new ArrayList<>(chunk.size());
+        for (Map.Entry<String, Map<String, Object>> entry : chunk) {
+            Glob[] tags = new Glob[entry.getValue().size()];
+            int i = 0;
+            for (Object tag : entry.getValue().values()) {
+                tags[i++] = tag instanceof Glob ? (Glob) tag : decode(entry.getKey(), (byte[]) tag, typeAccess);
+            }
+            result.add(new Decoded(entry.getKey(), tags));
+        }
+        return result;
+    }
+
+    private static Glob decode(String uuid, byte[] json, GlobTypeResolver typeAccess) {
+        try {
+            return GlobGSonDeserializer.read(new JsonReader(new InputStreamReader(
+                    new ByteArrayInputStream(json), StandardCharsets.UTF_8)), typeAccess);
+        } catch (IOException e) {
+            throw new RuntimeException("Fail to decode tag of " + uuid, e);
+        }
+    }
+
+    static class Record {
+        final String uuid;
+        final String[] typeNames;
+        final Object[] tags;
+
+        Record(String uuid, String[] typeNames, Object[] tags) {
+            this.uuid = uuid;
+            this.typeNames = typeNames;
+            this.tags = tags;
+        }
+
+        // copy the json of the current record of the reader.
+        static Record read(TagLogReader reader) {
+            String[] typeNames = new String[reader.tagCount()];
+            Object[] tags = new Object[reader.tagCount()];
+            int[] i = new int[1];
+            reader.rawTags((typeName, json, offset, length) -> {
+                typeNames[i[0]] = typeName;
+                tags[i[0]++] = Arrays.copyOfRange(json, offset, offset + length);
+            });
+            return new Record(reader.uuid(), typeNames, tags);
+        }
+
+        static Record of(String uuid, List<Glob> globs) {
+            String[] typeNames = new String[globs.size()];
+            for (int i = 0; i < typeNames.length; i++) {
+                typeNames[i] = globs.get(i).getType().getName();
+            }
+            return new Record(uuid, typeNames, globs.toArray());
+        }
+    }
+
+    private static class Decoded {
+        final String uuid;
+        final Glob[] tags;
+
+        Decoded(String uuid, Glob[] tags) {
+            this.uuid = uuid;
+            this.tags = tags;
+        }
+    }
+}
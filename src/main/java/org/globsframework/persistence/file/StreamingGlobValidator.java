@@ -0,0 +1,217 @@
+package org.globsframework.persistence.file;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.globsframework.metamodel.Field;
+import org.globsframework.metamodel.GlobType;
+import org.globsframework.metamodel.GlobTypeResolver;
+import org.globsframework.metamodel.fields.GlobArrayField;
+import org.globsframework.metamodel.fields.GlobArrayUnionField;
+import org.globsframework.metamodel.fields.GlobField;
+import org.globsframework.metamodel.fields.GlobUnionField;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collection;
+
+/*
+ Copy a json encoded glob (as written by GSonUtils.encode(glob, true)) from a reader to a writer, checking
+ each value against the declared GlobType on the fly, without building the Glob.
+ Unknown fields are dropped as the deserializer would do. The "_kind" of the root glob must come first.
+ */
+public class StreamingGlobValidator {
+    public static final String KIND = "_kind";
+    private final GlobTypeResolver resolver;
+
+    public StreamingGlobValidator(GlobTypeResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    // return the type of the copied glob.
+    public GlobType copy(JsonReader in, JsonWriter out) throws IOException {
+        in.beginObject();
+        if (!in.hasNext() || !in.nextName().equals(KIND)) {
+            throw new IOException(KIND + " is expected as first field at " + in.getPath());
+        }
+        String typeName = in.nextString();
+        GlobType type = resolver.findType(typeName);
+        if (type == null) {
+            throw new IOException("Unknown type " + typeName + " at " + in.getPath());
+        }
+        out.beginObject();
+        out.name(KIND).value(typeName);
+        copyFields(type, in, out);
+        in.endObject();
+        out.endObject();
+        return type;
+    }
+
+    private void copyFields(GlobType type, JsonReader in, JsonWriter out) throws IOException {
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (name.equals(KIND)) {
+                String kind = in.nextString();
+                if (!kind.equals(type.getName())) {
+                    throw new IOException("Expecting " + type.getName() + " but got " + kind + " at " + in.getPath());
+                }
+                out.name(KIND).value(kind);
+                continue;
+            }
+            Field field = type.findField(name);
+            if (field == null) {
+                in.skipValue();
+                continue;
+            }
+            out.name(name);
+            copyValue(field, in, out);
+        }
+    }
+
+    private void copyGlob(GlobType type, JsonReader in, JsonWriter out) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            out.nullValue();
+            return;
+        }
+        in.beginObject();
+        out.beginObject();
+        copyFields(type, in, out);
+        in.endObject();
+        out.endObject();
+    }
+
+    // a union is written as {"typeName":{...}}
+    private void copyUnion(Collection<GlobType> types, JsonReader in, JsonWriter out) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            out.nullValue();
+            return;
+        }
+        in.beginObject();
+        out.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            GlobType type = types.stream().filter(t -> t.getName().equals(name)).findFirst()
+                    .orElseThrow(() -> new IOException("Unexpected type " + name + " at " + in.getPath()));
+            out.name(name);
+            copyGlob(type, in, out);
+        }
+        in.endObject();
+        out.endObject();
+    }
+
+    private void copyValue(Field field, JsonReader in, JsonWriter out) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            out.nullValue();
+            return;
+        }
+        switch (field.getDataType()) {
+            case Glob:
+                copyGlob(((GlobField) field).getTargetType(), in, out);
+                break;
+            case GlobArray:
+                in.beginArray();
+                out.beginArray();
+                while (in.hasNext()) {
+                    copyGlob(((GlobArrayField) field).getTargetType(), in, out);
+                }
+                in.endArray();
+                out.endArray();
+                break;
+            case GlobUnion:
+                copyUnion(((GlobUnionField) field).getTargetTypes(), in, out);
+                break;
+            case GlobUnionArray:
+                in.beginArray();
+                out.beginArray();
+                while (in.hasNext()) {
+                    copyUnion(((GlobArrayUnionField) field).getTargetTypes(), in, out);
+                }
+                in.endArray();
+                out.endArray();
+                break;
+            case StringArray:
+            case IntegerArray:
+            case LongArray:
+            case DoubleArray:
+            case BooleanArray:
+            case BigDecimalArray:
+                in.beginArray();
+                out.beginArray();
+                while (in.hasNext()) {
+                    copyScalar(field, in, out);
+                }
+                in.endArray();
+                out.endArray();
+                break;
+            default:
+                copyScalar(field, in, out);
+        }
+    }
+
+    private void copyScalar(Field field, JsonReader in, JsonWriter out) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            out.nullValue();
+            return;
+        }
+        switch (field.getDataType()) {
+            case String:
+            case StringArray:
+            case Date:
+            case DateTime:
+            case Bytes:
+                expect(field, token, JsonToken.STRING, in);
+                out.value(in.nextString());
+                break;
+            case Integer:
+            case IntegerArray:
+                expect(field, token, JsonToken.NUMBER, in);
+                out.value(in.nextInt());
+                break;
+            case Long:
+            case LongArray:
+                expect(field, token, JsonToken.NUMBER, in);
+                out.value(in.nextLong());
+                break;
+            case Double:
+            case DoubleArray:
+                expect(field, token, JsonToken.NUMBER, in);
+                out.value(in.nextDouble());
+                break;
+            case Boolean:
+            case BooleanArray:
+                expect(field, token, JsonToken.BOOLEAN, in);
+                out.value(in.nextBoolean());
+                break;
+            case BigDecimal:
+            case BigDecimalArray:
+                if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+                    throw new IOException("Bad value for " + field.getName() + " at " + in.getPath());
+                }
+                String value = in.nextString();
+                try {
+                    new BigDecimal(value);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Bad number " + value + " for " + field.getName() + " at " + in.getPath(), e);
+                }
+                if (token == JsonToken.NUMBER) {
+                    out.jsonValue(value);
+                } else {
+                    out.value(value);
+                }
+                break;
+            default:
+                throw new IOException("Unexpected type " + field.getDataType() + " for " + field.getName());
+        }
+    }
+
+    private static void expect(Field field, JsonToken token, JsonToken expected, JsonReader in) throws IOException {
+        if (token != expected) {
+            throw new IOException("Expecting " + expected + " for " + field.getName() + " but got " + token + " at " + in.getPath());
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.globsframework.persistence.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/*
+ Merge sealed tag logs into one file that only keeps the latest version of each (uuid, tag type).
+ The merged file replaces the most recent file of the run so the replay order is kept: if we stop
+ before the older files are deleted they are replayed first and overridden by the merged file.
+ Tags are never decoded: the type name stored in the frame is enough.
+ */
+public class TagLogCompactor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TagLogCompactor.class);
+    public static final int MIN_FILES = 2;
+    public static final long MAX_RUN_BYTES = 256L * 1024 * 1024;
+    private final Path dir;
+    private final TagLogManifest manifest;
+    private final Supplier<Path> activeLog;
+    private final IoThrottle throttle;
+
+    // activeLog give the file currently written, it is never compacted.
+    public TagLogCompactor(Path dir, TagLogManifest manifest, Supplier<Path> activeLog, IoThrottle throttle) {
+        this.dir = dir;
+        this.manifest = manifest;
+        this.activeLog = activeLog;
+        this.throttle = throttle;
+    }
+
+    public synchronized void compact() {
+        List<Path> run = selectRun();
+        if (run.size() < MIN_FILES) {
+            return;
+        }
+        long start = System.nanoTime();
+        throttle.reset();
+        Path target = run.get(run.size() - 1);
+        Path tmp = dir.resolve(target.getFileName().toString() + TagLogFile.TMP_EXTENSION);
+        Map<String, Map<String, byte[]>> latest = new LinkedHashMap<>();
+        long readBytes = 0;
+        long readRecords = 0;
+        try {
+            for (Path path : run) {
+                try (TagLogReader reader = new TagLogReader(path)) {
+                    while (reader.next()) {
+                        Map<String, byte[]> tags = latest.computeIfAbsent(reader.uuid(), s -> new LinkedHashMap<>());
+                        reader.rawTags((typeName, json, offset, length) ->
+                                tags.put(typeName, Arrays.copyOfRange(json, offset, offset + length)));
+                        readRecords++;
+                    }
+                    if (reader.isCorrupted() || reader.isTorn()) {
+                        LOGGER.error("Compaction of " + run + " aborted: " + path + " is damaged at " + reader.validPosition());
+                        return;
+                    }
+                    readBytes += reader.validPosition();
+                    throttle.acquire(reader.validPosition());
+                }
+            }
+            long writtenBytes;
+            try (TagLogWriter writer = new TagLogWriter(tmp)) {
+                for (Map.Entry<String, Map<String, byte[]>> entry : latest.entrySet()) {
+                    Map<String, byte[]> tags = entry.getValue();
+                    byte[] frame = TagLogFile.encode(entry.getKey(), tags.keySet().toArray(new String[0]),
+                            tags.values().toArray(new byte[0][]));
+                    writer.write(frame);
+                    throttle.acquire(frame.length);
+                }
+                writer.sync();
+                writtenBytes = writer.size();
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            TagLogFile.syncDirectory(dir);
+            manifest.remove(run.subList(0, run.size() - 1));
+            for (Path path : run.subList(0, run.size() - 1)) {
+                Files.delete(path);
+            }
+            LOGGER.info("Compacted " + run.size() + " tag logs of " + dir + " into " + target.getFileName() + ": " +
+                        readRecords + " records (" + readBytes + " bytes) to " + latest.size() + " records (" + writtenBytes +
+                        " bytes) in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        } catch (IOException e) {
+            LOGGER.error("Fail to compact " + run, e);
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ex) {
+                LOGGER.error("Fail to delete " + tmp, ex);
+            }
+        }
+    }
+
+    // once a snapshot is durable the logs it covers are never replayed: removed from the manifest then deleted.
+    public synchronized void deleteCoveredLogs() {
+        LocalDateTime snapshot = latestSnapshot();
+        if (snapshot == null) {
+            return;
+        }
+        List<Path> covered = manifest.logs().stream()
+                .filter(path -> TagLogFile.timestampOf(path) != null && TagLogFile.timestampOf(path).isBefore(snapshot))
+                .collect(Collectors.toList());
+        if (covered.isEmpty()) {
+            return;
+        }
+        try {
+            manifest.remove(covered);
+            for (Path path : covered) {
+                Files.deleteIfExists(path);
+            }
+            LOGGER.info("Deleted " + covered.size() + " tag logs of " + dir + " covered by the snapshot of " + snapshot);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Fail to delete tag logs covered by the snapshot in " + dir, e);
+        }
+    }
+
+    private LocalDateTime latestSnapshot() {
+        return manifest.snapshots().stream()
+                .map(TagLogFile::timestampOf).filter(Objects::nonNull)
+                .reduce((first, second) -> second).orElse(null);
+    }
+
+    // sealed framed logs not covered by a snapshot, oldest first.
+    private List<Path> selectRun() {
+        List<Path> files = manifest.logs();
+        LocalDateTime snapshot = latestSnapshot();
+        Path activePath = activeLog.get();
+        if (activePath == null) {
+            return Collections.emptyList();
+        }
+        LocalDateTime active = TagLogFile.timestampOf(activePath);
+        List<Path> run = new ArrayList<>();
+        long size = 0;
+        for (Path path : files) {
+            LocalDateTime timestamp = TagLogFile.timestampOf(path);
+            if (!TagLogFile.isTagLog(path) || timestamp == null ||
+                (snapshot != null && timestamp.isBefore(snapshot))) {
+                continue;
+            }
+            if (active == null || !timestamp.isBefore(active)) {
+                break;
+            }
+            size += path.toFile().length();
+            if (size > MAX_RUN_BYTES && run.size() >= MIN_FILES) {
+                break;
+            }
+            run.add(path);
+        }
+        return run;
+    }
+}
@@ -0,0 +1,46 @@
+package org.globsframework.persistence.file;
+
+/*
+ When a save on the tag log returns:
+   ASYNC        : once written to the OS (lost on power failure, not on process crash).
+   GROUP_COMMIT : once fsynced by the writer thread, that fsync every groupCommitMillis or every groupCommitRecords records.
+   SYNC         : once fsynced, the writer fsync as soon as it has written what was queued (no wait).
+ */
+public class TagLogDurability {
+    public static final TagLogDurability ASYNC = new TagLogDurability(Mode.ASYNC, 0, 0);
+    public static final TagLogDurability SYNC = new TagLogDurability(Mode.SYNC, 0, 0);
+    public static final int DEFAULT_GROUP_COMMIT_MILLIS = 5;
+    public static final int DEFAULT_GROUP_COMMIT_RECORDS = 1000;
+    public final Mode mode;
+    public final int groupCommitMillis;
+    public final int groupCommitRecords;
+
+    private TagLogDurability(Mode mode, int groupCommitMillis, int groupCommitRecords) {
+        this.mode = mode;
+        this.groupCommitMillis = groupCommitMillis;
+        this.groupCommitRecords = groupCommitRecords;
+    }
+
+    public static TagLogDurability groupCommit(int groupCommitMillis, int groupCommitRecords) {
+        return new TagLogDurability(Mode.GROUP_COMMIT, Math.max(1, groupCommitMillis), Math.max(1, groupCommitRecords));
+    }
+
+    public static TagLogDurability parse(String mode, int groupCommitMillis, int groupCommitRecords) {
+        switch (Mode.valueOf(mode.trim().toUpperCase())) {
+            case SYNC:
+                return SYNC;
+            case GROUP_COMMIT:
+                return groupCommit(groupCommitMillis, groupCommitRecords);
+            default:
+                return ASYNC;
+        }
+    }
+
+    public String toString() {
+        return mode == Mode.GROUP_COMMIT ? mode + "(" + groupCommitMillis + "ms, " + groupCommitRecords + " records)" : mode.toString();
+    }
+
+    public enum Mode {
+        ASYNC, GROUP_COMMIT, SYNC
+    }
+}
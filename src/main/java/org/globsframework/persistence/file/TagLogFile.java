@@ -0,0 +1,142 @@
+package org.globsframework.persistence.file;
+
+import org.globsframework.json.GSonUtils;
+import org.globsframework.model.Glob;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Comparator;
+import java.util.zip.CRC32C;
+
+/*
+ Binary tag log layout:
+   file   : MAGIC (4 bytes) VERSION (int) frame*
+   frame  : payloadLength (int) crc32c(payload) (int) payload
+   payload: uuid (short length + utf8) tagCount (int) [typeName (short length + utf8) json (int length + utf8)]*
+
+ The uuid and the type names are readable without decoding any glob, so a reader can skip
+ from frame header to frame header or select records before paying for the json decoding.
+ */
+public final class TagLogFile {
+    public static final String EXTENSION = ".tlog";
+    public static final String SNAPSHOT_EXTENSION = ".snapshot";
+    public static final String TMP_EXTENSION = ".tmp";
+    public static final byte[] MAGIC = {'G', 'T', 'L', 'G'};
+    public static final int VERSION = 1;
+    public static final int FILE_HEADER_SIZE = MAGIC.length + Integer.BYTES;
+    public static final int FRAME_HEADER_SIZE = 2 * Integer.BYTES;
+    public static final int MAX_FRAME_SIZE = 256 * 1024 * 1024;
+
+    // tag log files are named by their creation date (see FileRWTagAccess), unknown names come last.
+    public static final Comparator<Path> BY_TIMESTAMP = Comparator
+            .comparing(TagLogFile::timestampOf, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(path -> path.getFileName().toString());
+
+    private TagLogFile() {
+    }
+
+    public static LocalDateTime timestampOf(Path path) {
+        try {
+            return LocalDateTime.parse(baseName(path), DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    public static boolean isTagLog(Path path) {
+        return path.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    // json array tag log written before the framed format, named <timestamp>.json
+    public static boolean isLegacyTagLog(Path path) {
+        return path.getFileName().toString().endsWith(".json") && timestampOf(path) != null;
+    }
+
+    public static boolean isSnapshot(Path path) {
+        return path.getFileName().toString().endsWith(SNAPSHOT_EXTENSION);
+    }
+
+    public static String baseName(Path path) {
+        String name = path.getFileName().toString();
+        int extension = name.lastIndexOf('.');
+        return extension > 0 ? name.substring(0, extension) : name;
+    }
+
+    // make a rename or a file creation durable.
+    public static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not supported on every platform.
+        }
+    }
+
+    public static byte[] fileHeader() {
+        ByteBuffer buffer = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        return buffer.array();
+    }
+
+    public static byte[] encode(String uuid, Glob[] tags) {
+        String[] typeNames = new String[tags.length];
+        byte[][] jsons = new byte[tags.length][];
+        for (int i = 0; i < tags.length; i++) {
+            Glob tag = tags[i];
+            typeNames[i] = tag.getType().getName();
+            jsons[i] = GSonUtils.encode(tag, true).getBytes(StandardCharsets.UTF_8);
+        }
+        return encode(uuid, typeNames, jsons);
+    }
+
+    public static byte[] encode(String uuid, String[] typeNames, byte[][] jsons) {
+        byte[][] typeNameBytes = new byte[typeNames.length][];
+        byte[] uuidBytes = uuid.getBytes(StandardCharsets.UTF_8);
+        int payloadSize = Short.BYTES + uuidBytes.length + Integer.BYTES;
+        for (int i = 0; i < typeNames.length; i++) {
+            typeNameBytes[i] = typeNames[i].getBytes(StandardCharsets.UTF_8);
+            payloadSize += Short.BYTES + typeNameBytes[i].length + Integer.BYTES + jsons[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER_SIZE + payloadSize);
+        buffer.position(FRAME_HEADER_SIZE);
+        putShortString(buffer, uuidBytes);
+        buffer.putInt(typeNames.length);
+        for (int i = 0; i < typeNames.length; i++) {
+            putShortString(buffer, typeNameBytes[i]);
+            buffer.putInt(jsons[i].length);
+            buffer.put(jsons[i]);
+        }
+        byte[] frame = buffer.array();
+        buffer.putInt(0, payloadSize);
+        buffer.putInt(Integer.BYTES, crc(frame, FRAME_HEADER_SIZE, payloadSize));
+        return frame;
+    }
+
+    public static int crc(byte[] data, int offset, int length) {
+        CRC32C crc32C = new CRC32C();
+        crc32C.update(data, offset, length);
+        return (int) crc32C.getValue();
+    }
+
+    static void putShortString(ByteBuffer buffer, byte[] value) {
+        if (value.length > Short.MAX_VALUE) {
+            throw new RuntimeException("String too long for tag log " + value.length);
+        }
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    static String getShortString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,170 @@
+package org.globsframework.persistence.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ List of the files of a tag log directory, one "<state> <file name>" per line with state in active, sealed, snapshot.
+ The manifest is rewritten (tmp + atomic move) each time the set of files change. A file is added before it is
+ created and removed before it is deleted: a file absent from the manifest is never replayed.
+ Without manifest (first start or directory migrated from an older version) the directory is listed once.
+ */
+public class TagLogManifest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TagLogManifest.class);
+    public static final String NAME = "MANIFEST";
+    private static final String ACTIVE = "active";
+    private static final String SEALED = "sealed";
+    private static final String SNAPSHOT = "snapshot";
+    private final Path dir;
+    private final Path path;
+    private final Set<String> logs = new HashSet<>();
+    private final Set<String> snapshots = new HashSet<>();
+    private String active;
+
+    public TagLogManifest(Path dir) {
+        this.dir = dir;
+        this.path = dir.resolve(NAME);
+        if (Files.exists(path)) {
+            read();
+        } else {
+            scan();
+            write();
+        }
+        deleteTemporaryFiles();
+    }
+
+    // logs (sealed and active) in replay order.
+    public synchronized List<Path> logs() {
+        return logs.stream().map(dir::resolve).sorted(TagLogFile.BY_TIMESTAMP).collect(Collectors.toList());
+    }
+
+    public synchronized List<Path> snapshots() {
+        return snapshots.stream().map(dir::resolve).sorted(TagLogFile.BY_TIMESTAMP).collect(Collectors.toList());
+    }
+
+    // to call before the file is created, the previous active log becomes sealed.
+    public synchronized void setActive(Path log) {
+        active = log.getFileName().toString();
+        logs.add(active);
+        write();
+    }
+
+    public synchronized void addSnapshot(Path snapshot) {
+        snapshots.add(snapshot.getFileName().toString());
+        write();
+    }
+
+    // to call before the files are deleted.
+    public synchronized void remove(Collection<Path> files) {
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            logs.remove(name);
+            snapshots.remove(name);
+        }
+        write();
+    }
+
+    private void read() {
+        try {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                int index = line.indexOf(' ');
+                String state = index < 0 ? "" : line.substring(0, index);
+                String name = line.substring(index + 1);
+                if (!Files.exists(dir.resolve(name))) {
+                    LOGGER.warn(name + " in manifest of " + dir + " is missing, ignored.");
+                    continue;
+                }
+                switch (state) {
+                    case ACTIVE:
+                        active = name;
+                        logs.add(name);
+                        break;
+                    case SEALED:
+                        logs.add(name);
+                        break;
+                    case SNAPSHOT:
+                        snapshots.add(name);
+                        break;
+                    default:
+                        throw new IOException("Bad line '" + line + "'");
+                }
+            }
+        } catch (IOException e) {
+            String s = "Fail to read manifest " + path;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+    }
+
+    private void scan() {
+        try (Stream<Path> stream = Files.list(dir)) {
+            stream.forEach(file -> {
+                if (TagLogFile.isSnapshot(file)) {
+                    snapshots.add(file.getFileName().toString());
+                } else if (TagLogFile.isTagLog(file) || TagLogFile.isLegacyTagLog(file)) {
+                    logs.add(file.getFileName().toString());
+                }
+            });
+        } catch (IOException e) {
+            String s = "Fail to list " + dir;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+        LOGGER.info("No manifest in " + dir + ", " + logs.size() + " tag logs and " + snapshots.size() + " snapshots found.");
+    }
+
+    private void write() {
+        Path tmp = dir.resolve(NAME + TagLogFile.TMP_EXTENSION);
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                         Channels.newOutputStream(channel), StandardCharsets.UTF_8))) {
+                for (Path log : logs()) {
+                    String name = log.getFileName().toString();
+                    writer.append(name.equals(active) ? ACTIVE : SEALED).append(' ').append(name).append('\n');
+                }
+                for (Path snapshot : snapshots()) {
+                    writer.append(SNAPSHOT).append(' ').append(snapshot.getFileName().toString()).append('\n');
+                }
+                writer.flush();
+                channel.force(true);
+            }
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            TagLogFile.syncDirectory(dir);
+        } catch (IOException e) {
+            String s = "Fail to write manifest " + path;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+    }
+
+    // left by an interrupted snapshot, compaction or manifest update.
+    private void deleteTemporaryFiles() {
+        try (Stream<Path> stream = Files.list(dir)) {
+            for (Path file : stream.filter(file -> file.getFileName().toString().endsWith(TagLogFile.TMP_EXTENSION))
+                    .collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Fail to delete temporary files in " + dir, e);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package org.globsframework.persistence.file;
+
+import com.google.gson.stream.JsonReader;
+import org.globsframework.json.GlobGSonDeserializer;
+import org.globsframework.metamodel.GlobTypeResolver;
+import org.globsframework.model.Glob;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ Sequential reader of a tag log written by TagLogWriter.
+ The payload returned by uuid()/tags() is only valid until the next call to next() or skip().
+ */
+public class TagLogReader implements Closeable {
+    public static final int BUFFER_SIZE = 1024 * 1024;
+    // longest tail after the start of a frame cut by a crash.
+    public static final int TORN_TAIL_SIZE = 1024 * 1024;
+    private final Path path;
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long bufferFileOffset = 0;
+    private long validPosition = 0;
+    private boolean torn = false;
+    private boolean corrupted = false;
+    private ByteBuffer payload;
+    private String uuid;
+    private int tagCount;
+    private long recordCount;
+
+    public TagLogReader(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        buffer.flip();
+        if (!ensure(TagLogFile.FILE_HEADER_SIZE)) {
+            torn = channel.size() != 0;
+            return;
+        }
+        byte[] magic = new byte[TagLogFile.MAGIC.length];
+        buffer.get(magic);
+        int version = buffer.getInt();
+        if (!Arrays.equals(magic, TagLogFile.MAGIC) || version != TagLogFile.VERSION) {
+            channel.close();
+            throw new IOException(path + " is not a tag log (version " + version + ")");
+        }
+        validPosition = TagLogFile.FILE_HEADER_SIZE;
+    }
+
+    // read and check the next frame, return false at end of file or on a torn/corrupted frame.
+    public boolean next() throws IOException {
+        payload = null;
+        if (!readHeader()) {
+            return false;
+        }
+        int length = buffer.getInt(buffer.position());
+        int crc = buffer.getInt(buffer.position() + Integer.BYTES);
+        // checked before reading the frame: a corrupted length must not allocate a buffer of its size.
+        if (buffer.remaining() < TagLogFile.FRAME_HEADER_SIZE + length &&
+            (currentOffset() + TagLogFile.FRAME_HEADER_SIZE + length > channel.size() ||
+             !ensure(TagLogFile.FRAME_HEADER_SIZE + length))) {
+            endBeyondFileAt(currentOffset());
+            return false;
+        }
+        int payloadStart = buffer.position() + TagLogFile.FRAME_HEADER_SIZE;
+        if (TagLogFile.crc(buffer.array(), payloadStart, length) != crc) {
+            if (currentOffset() + TagLogFile.FRAME_HEADER_SIZE + length == channel.size()) {
+                torn = true;
+            } else {
+                corrupted = true;
+            }
+            return false;
+        }
+        payload = ByteBuffer.wrap(buffer.array(), payloadStart, length).slice();
+        uuid = TagLogFile.getShortString(payload);
+        tagCount = payload.getInt();
+        consume(TagLogFile.FRAME_HEADER_SIZE + length);
+        return true;
+    }
+
+    // jump over the next frame using only its header: neither the crc nor the payload are read.
+    public boolean skip() throws IOException {
+        payload = null;
+        if (!readHeader()) {
+            return false;
+        }
+        int length = buffer.getInt(buffer.position());
+        long next = currentOffset() + TagLogFile.FRAME_HEADER_SIZE + length;
+        if (next > channel.size()) {
+            endBeyondFileAt(currentOffset());
+            return false;
+        }
+        if (buffer.remaining() >= TagLogFile.FRAME_HEADER_SIZE + length) {
+            buffer.position(buffer.position() + TagLogFile.FRAME_HEADER_SIZE + length);
+        } else {
+            channel.position(next);
+            bufferFileOffset = next;
+            buffer.clear();
+            buffer.flip();
+        }
+        validPosition = next;
+        recordCount++;
+        return true;
+    }
+
+    public String uuid() {
+        return uuid;
+    }
+
+    public int tagCount() {
+        return tagCount;
+    }
+
+    public Iterator<Glob> tags(GlobTypeResolver typeResolver) {
+        ByteBuffer tags = payload.duplicate();
+        return new Iterator<>() {
+            int remaining = tagCount;
+
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            public Glob next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+                TagLogFile.getShortString(tags);
+                int length = tags.getInt();
+                int start = tags.arrayOffset() + tags.position();
+                tags.position(tags.position() + length);
+                try {
+                    return GlobGSonDeserializer.read(new JsonReader(new InputStreamReader(
+                            new ByteArrayInputStream(tags.array(), start, length), StandardCharsets.UTF_8)), typeResolver);
+                } catch (IOException e) {
+                    throw new RuntimeException("Fail to decode tag of " + uuid + " in " + path, e);
+                }
+            }
+        };
+    }
+
+    // give the type name and the json of each tag of the current record without decoding them.
+    public void rawTags(RawTagConsumer consumer) {
+        ByteBuffer tags = payload.duplicate();
+        for (int i = 0; i < tagCount; i++) {
+            String typeName = TagLogFile.getShortString(tags);
+            int length = tags.getInt();
+            consumer.accept(typeName, tags.array(), tags.arrayOffset() + tags.position(), length);
+            tags.position(tags.position() + length);
+        }
+    }
+
+    public boolean isTorn() {
+        return torn;
+    }
+
+    public boolean isCorrupted() {
+        return corrupted;
+    }
+
+    // offset just after the last complete frame.
+    public long validPosition() {
+        return validPosition;
+    }
+
+    public long recordCount() {
+        return recordCount;
+    }
+
+    public void truncateTornTail() throws IOException {
+        if (!torn) {
+            return;
+        }
+        try (FileChannel writeChannel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            writeChannel.truncate(validPosition);
+            writeChannel.force(true);
+        }
+        torn = false;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public interface RawTagConsumer {
+        void accept(String typeName, byte[] json, int offset, int length);
+    }
+
+    private boolean readHeader() throws IOException {
+        if (!ensure(TagLogFile.FRAME_HEADER_SIZE)) {
+            torn = buffer.hasRemaining();
+            return false;
+        }
+        int length = buffer.getInt(buffer.position());
+        if (length < 0 || length > TagLogFile.MAX_FRAME_SIZE) {
+            corrupted = true;
+            return false;
+        }
+        return true;
+    }
+
+    /*
+     The frame at offset ends after the end of the file: it is the last frame cut by a crash only if it is within
+     TORN_TAIL_SIZE of the end and nothing after it is a valid frame, a corrupted length in the middle of the file must
+     not be truncated with the frames that follow it. A longer tail is reported as corrupted: nothing is truncated.
+     */
+    private void endBeyondFileAt(long offset) throws IOException {
+        long size = channel.size();
+        if (size - offset > TORN_TAIL_SIZE) {
+            corrupted = true;
+            return;
+        }
+        ByteBuffer tail = ByteBuffer.allocate((int) (size - offset));
+        while (tail.hasRemaining()) {
+            if (channel.read(tail, offset + tail.position()) < 0) {
+                break;
+            }
+        }
+        byte[] bytes = tail.array();
+        int end = tail.position();
+        for (int start = 1; start + TagLogFile.FRAME_HEADER_SIZE + Short.BYTES <= end; start++) {
+            int length = tail.getInt(start);
+            int payloadStart = start + TagLogFile.FRAME_HEADER_SIZE;
+            // at least the uuid and the tag count: a run of zeros is not a frame, the crc is only computed for a
+            // header followed by a uuid length that fits in the frame.
+            if (length >= Short.BYTES + Integer.BYTES && length <= end - payloadStart &&
+                (tail.getShort(payloadStart) & 0xFFFF) <= length - Short.BYTES - Integer.BYTES &&
+                TagLogFile.crc(bytes, payloadStart, length) == tail.getInt(start + Integer.BYTES)) {
+                corrupted = true;
+                return;
+            }
+        }
+        torn = true;
+    }
+
+    private void consume(int size) {
+        buffer.position(buffer.position() + size);
+        validPosition = currentOffset();
+        recordCount++;
+    }
+
+    private long currentOffset() {
+        return bufferFileOffset + buffer.position();
+    }
+
+    private boolean ensure(int size) throws IOException {
+        if (buffer.remaining() >= size) {
+            return true;
+        }
+        bufferFileOffset += buffer.position();
+        if (buffer.capacity() < size) {
+            ByteBuffer newBuffer = ByteBuffer.allocate(size);
+            newBuffer.put(buffer);
+            buffer = newBuffer;
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < size) {
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= size;
+    }
+}
@@ -0,0 +1,80 @@
+package org.globsframework.persistence.file;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ Bounded multi producers / single consumer ring buffer (disruptor like).
+ A producer claims a sequence with one atomic increment, fills the slot and publishes it by writing the
+ sequence in the published array; the consumer reads every consecutive published slot in one pass.
+ Producers spin (then park) only when the ring is full.
+ */
+public class TagLogRingBuffer<T> {
+    private final Object[] slots;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed = 0;
+    private volatile Thread consumer;
+    private volatile boolean consumerParked = false;
+
+    // capacity is rounded to the next power of two.
+    public TagLogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new Object[size];
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        mask = size - 1;
+    }
+
+    public void publish(T value) {
+        long sequence = claimed.getAndIncrement();
+        int spin = 0;
+        while (sequence - consumed >= slots.length) {
+            if (++spin < 100) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(10_000);
+            }
+        }
+        int index = (int) (sequence & mask);
+        slots[index] = value;
+        published.set(index, sequence);
+        if (consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    // called only by the consumer thread: move up to max published values in target, wait up to timeoutNanos if none.
+    @SuppressWarnings("unchecked")
+    public int drainTo(List<T> target, int max, long timeoutNanos) {
+        long sequence = consumed;
+        int index = (int) (sequence & mask);
+        if (published.get(index) != sequence && timeoutNanos > 0) {
+            consumer = Thread.currentThread();
+            consumerParked = true;
+            if (published.get(index) != sequence) {
+                LockSupport.parkNanos(this, timeoutNanos);
+            }
+            consumerParked = false;
+        }
+        int count = 0;
+        while (count < max && published.get(index) == sequence) {
+            target.add((T) slots[index]);
+            slots[index] = null;
+            sequence++;
+            count++;
+            index = (int) (sequence & mask);
+        }
+        consumed = sequence;
+        return count;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,83 @@
+package org.globsframework.persistence.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ Append only writer of framed tag log (see TagLogFile). Not thread safe.
+ */
+public class TagLogWriter implements Closeable {
+    public static final int BUFFER_SIZE = 64 * 1024;
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long size;
+
+    public TagLogWriter(Path path) throws IOException {
+        this(path, BUFFER_SIZE);
+    }
+
+    public TagLogWriter(Path path, int bufferSize) throws IOException {
+        this.path = path;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        byte[] header = TagLogFile.fileHeader();
+        writeFully(ByteBuffer.wrap(header));
+        size = header.length;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public void write(byte[] frame) throws IOException {
+        if (frame.length > buffer.remaining()) {
+            flush();
+            if (frame.length > buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(frame));
+                size += frame.length;
+                return;
+            }
+        }
+        buffer.put(frame);
+        size += frame.length;
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    public void sync() throws IOException {
+        flush();
+        force();
+    }
+
+    // fsync what was already flushed, can be called while an other thread write.
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeFully(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+}
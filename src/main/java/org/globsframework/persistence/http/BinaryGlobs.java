@@ -0,0 +1,40 @@
+package org.globsframework.persistence.http;
+
+import org.globsframework.directory.Directory;
+import org.globsframework.metamodel.GlobTypeResolver;
+import org.globsframework.model.Glob;
+import org.globsframework.model.MutableGlob;
+import org.globsframework.remote.Serializer;
+import org.globsframework.utils.serialization.SerializedInput;
+import org.globsframework.utils.serialization.SerializedOutput;
+
+// globs encoded with GlobBinaryCodec, decoded by the receiver once it knows the types of the namespace.
+public class BinaryGlobs {
+    final public byte[] payload;
+
+    public BinaryGlobs(byte[] payload) {
+        this.payload = payload;
+    }
+
+    public static BinaryGlobs of(Glob... globs) {
+        return new BinaryGlobs(GlobBinaryCodec.encode(globs));
+    }
+
+    public MutableGlob[] decode(GlobTypeResolver resolver) {
+        return GlobBinaryCodec.decode(payload, resolver);
+    }
+
+    static public class BinaryGlobsSerializer implements Serializer {
+        public Class getClassType() {
+            return BinaryGlobs.class;
+        }
+
+        public Object read(SerializedInput serializedInput, Directory directory) {
+            return new BinaryGlobs(serializedInput.readBytes());
+        }
+
+        public void write(Object object, SerializedOutput serializedOutput) {
+            serializedOutput.writeBytes(((BinaryGlobs) object).payload);
+        }
+    }
+}
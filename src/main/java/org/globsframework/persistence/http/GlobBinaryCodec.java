@@ -0,0 +1,439 @@
+package org.globsframework.persistence.http;
+
+import org.globsframework.metamodel.Field;
+import org.globsframework.metamodel.GlobType;
+import org.globsframework.metamodel.GlobTypeResolver;
+import org.globsframework.metamodel.type.DataType;
+import org.globsframework.model.Glob;
+import org.globsframework.model.MutableGlob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ Binary encoding of globs for the rpc calls:
+   payload : VERSION (byte) count (varint) glob*
+   glob    : typeRef (varint): 0 for a null glob, n for the (n - 1)th type of the payload; a type is written at
+             its first use, with typeRef = number of types already written + 1:
+               name (string) fieldCount (varint) [fieldName (string) dataType (string)]*
+             then [tag (varint) value]* 0 with tag = (position of the field in the type + 1) * 2 + (null value ? 1 : 0)
+   varint are unsigned LEB128, signed numbers are zigzag encoded, strings are length + 1 (0 for null) and utf8.
+ The fields are matched by name: a field unknown by the reader (or of another data type) is skipped.
+ */
+public class GlobBinaryCodec {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GlobBinaryCodec.class);
+    public static final byte VERSION = 1;
+
+    public static byte[] encode(Glob... globs) {
+        Output output = new Output();
+        output.writeByte(VERSION);
+        output.writeVarLong(globs.length);
+        for (Glob glob : globs) {
+            output.writeGlob(glob);
+        }
+        return output.toByteArray();
+    }
+
+    public static MutableGlob[] decode(byte[] payload, GlobTypeResolver resolver) {
+        Input input = new Input(payload, resolver);
+        byte version = input.readByte();
+        if (version != VERSION) {
+            String message = "Unknown binary glob version " + version;
+            LOGGER.error(message);
+            throw new RuntimeException(message);
+        }
+        MutableGlob[] globs = new MutableGlob[(int) input.readVarLong()];
+        for (int i = 0; i < globs.length; i++) {
+            globs[i] = input.readGlob();
+        }
+        return globs;
+    }
+
+    static class Output {
+        private final Map<GlobType, Integer> types = new HashMap<>();
+        private byte[] buffer = new byte[256];
+        private int position;
+
+        void writeGlob(Glob glob) {
+            if (glob == null) {
+                writeVarLong(0);
+                return;
+            }
+            GlobType type = glob.getType();
+            Field[] fields = type.getFields();
+            Integer typeRef = types.get(type);
+            if (typeRef == null) {
+                typeRef = types.size() + 1;
+                types.put(type, typeRef);
+                writeVarLong(typeRef);
+                writeString(type.getName());
+                writeVarLong(fields.length);
+                for (Field field : fields) {
+                    writeString(field.getName());
+                    writeString(field.getDataType().name());
+                }
+            } else {
+                writeVarLong(typeRef);
+            }
+            for (int i = 0; i < fields.length; i++) {
+                Field field = fields[i];
+                if (glob.isSet(field)) {
+                    Object value = glob.getValue(field);
+                    writeVarLong((i + 1) * 2L + (value == null ? 1 : 0));
+                    if (value != null) {
+                        writeValue(field.getDataType(), value);
+                    }
+                }
+            }
+            writeVarLong(0);
+        }
+
+        private void writeValue(DataType dataType, Object value) {
+            switch (dataType) {
+                case String:
+                    writeString((String) value);
+                    break;
+                case Integer:
+                    writeSignedVarLong((Integer) value);
+                    break;
+                case Long:
+                    writeSignedVarLong((Long) value);
+                    break;
+                case Double:
+                    writeLong(Double.doubleToRawLongBits((Double) value));
+                    break;
+                case Boolean:
+                    writeByte((byte) ((Boolean) value ? 1 : 0));
+                    break;
+                case BigDecimal:
+                    writeString(value.toString());
+                    break;
+                case Date:
+                    writeSignedVarLong(((LocalDate) value).toEpochDay());
+                    break;
+                case DateTime:
+                    ZonedDateTime dateTime = (ZonedDateTime) value;
+                    writeSignedVarLong(dateTime.toEpochSecond());
+                    writeVarLong(dateTime.getNano());
+                    writeString(dateTime.getZone().getId());
+                    break;
+                case Bytes:
+                    byte[] bytes = (byte[]) value;
+                    writeVarLong(bytes.length);
+                    writeBytes(bytes, bytes.length);
+                    break;
+                case Glob:
+                case GlobUnion:
+                    writeGlob((Glob) value);
+                    break;
+                case GlobArray:
+                case GlobUnionArray:
+                    Glob[] globs = (Glob[]) value;
+                    writeVarLong(globs.length);
+                    for (Glob glob : globs) {
+                        writeGlob(glob);
+                    }
+                    break;
+                case StringArray:
+                    String[] strings = (String[]) value;
+                    writeVarLong(strings.length);
+                    for (String string : strings) {
+                        writeString(string);
+                    }
+                    break;
+                case IntegerArray:
+                    int[] ints = (int[]) value;
+                    writeVarLong(ints.length);
+                    for (int i : ints) {
+                        writeSignedVarLong(i);
+                    }
+                    break;
+                case LongArray:
+                    long[] longs = (long[]) value;
+                    writeVarLong(longs.length);
+                    for (long l : longs) {
+                        writeSignedVarLong(l);
+                    }
+                    break;
+                case DoubleArray:
+                    double[] doubles = (double[]) value;
+                    writeVarLong(doubles.length);
+                    for (double d : doubles) {
+                        writeLong(Double.doubleToRawLongBits(d));
+                    }
+                    break;
+                case BooleanArray:
+                    boolean[] booleans = (boolean[]) value;
+                    writeVarLong(booleans.length);
+                    for (boolean b : booleans) {
+                        writeByte((byte) (b ? 1 : 0));
+                    }
+                    break;
+                case BigDecimalArray:
+                    BigDecimal[] decimals = (BigDecimal[]) value;
+                    writeVarLong(decimals.length);
+                    for (BigDecimal decimal : decimals) {
+                        writeString(decimal == null ? null : decimal.toString());
+                    }
+                    break;
+                default:
+                    String message = "Data type " + dataType + " not supported by the binary encoding";
+                    LOGGER.error(message);
+                    throw new RuntimeException(message);
+            }
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            writeBytes(bytes, bytes.length);
+        }
+
+        void writeSignedVarLong(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensure(Long.BYTES);
+            for (int i = 0; i < Long.BYTES; i++) {
+                buffer[position++] = (byte) (value >>> (8 * i));
+            }
+        }
+
+        void writeByte(byte value) {
+            ensure(1);
+            buffer[position++] = value;
+        }
+
+        private void writeBytes(byte[] bytes, int length) {
+            ensure(length);
+            System.arraycopy(bytes, 0, buffer, position, length);
+            position += length;
+        }
+
+        private void ensure(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    static class Input {
+        private final byte[] buffer;
+        private final GlobTypeResolver resolver;
+        private final List<TypeEntry> types = new ArrayList<>();
+        private int position;
+
+        Input(byte[] buffer, GlobTypeResolver resolver) {
+            this.buffer = buffer;
+            this.resolver = resolver;
+        }
+
+        MutableGlob readGlob() {
+            int typeRef = (int) readVarLong();
+            if (typeRef == 0) {
+                return null;
+            }
+            TypeEntry entry;
+            if (typeRef == types.size() + 1) {
+                entry = readType();
+                types.add(entry);
+            } else if (typeRef <= types.size()) {
+                entry = types.get(typeRef - 1);
+            } else {
+                String message = "Bad type reference " + typeRef + " at " + position;
+                LOGGER.error(message);
+                throw new RuntimeException(message);
+            }
+            MutableGlob glob = entry.type.instantiate();
+            int tag;
+            while ((tag = (int) readVarLong()) != 0) {
+                int index = tag / 2 - 1;
+                Object value = (tag & 1) != 0 ? null : readValue(entry.dataTypes[index]);
+                Field field = entry.fields[index];
+                if (field != null) {
+                    glob.setValue(field, value);
+                }
+            }
+            return glob;
+        }
+
+        private TypeEntry readType() {
+            String name = readString();
+            GlobType type = resolver.findType(name);
+            if (type == null) {
+                String message = "Unknown type " + name + " in binary globs";
+                LOGGER.error(message);
+                throw new RuntimeException(message);
+            }
+            int count = (int) readVarLong();
+            Field[] fields = new Field[count];
+            DataType[] dataTypes = new DataType[count];
+            for (int i = 0; i < count; i++) {
+                Field field = type.findField(readString());
+                dataTypes[i] = DataType.valueOf(readString());
+                fields[i] = field != null && field.getDataType() == dataTypes[i] ? field : null;
+            }
+            return new TypeEntry(type, fields, dataTypes);
+        }
+
+        private Object readValue(DataType dataType) {
+            int length;
+            switch (dataType) {
+                case String:
+                    return readString();
+                case Integer:
+                    return (int) readSignedVarLong();
+                case Long:
+                    return readSignedVarLong();
+                case Double:
+                    return Double.longBitsToDouble(readLong());
+                case Boolean:
+                    return readByte() != 0;
+                case BigDecimal:
+                    return new BigDecimal(readString());
+                case Date:
+                    return LocalDate.ofEpochDay(readSignedVarLong());
+                case DateTime:
+                    long seconds = readSignedVarLong();
+                    long nanos = readVarLong();
+                    return ZonedDateTime.ofInstant(Instant.ofEpochSecond(seconds, nanos), ZoneId.of(readString()));
+                case Bytes:
+                    length = (int) readVarLong();
+                    byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+                    position += length;
+                    return bytes;
+                case Glob:
+                case GlobUnion:
+                    return readGlob();
+                case GlobArray:
+                case GlobUnionArray:
+                    Glob[] globs = new Glob[(int) readVarLong()];
+                    for (int i = 0; i < globs.length; i++) {
+                        globs[i] = readGlob();
+                    }
+                    return globs;
+                case StringArray:
+                    String[] strings = new String[(int) readVarLong()];
+                    for (int i = 0; i < strings.length; i++) {
+                        strings[i] = readString();
+                    }
+                    return strings;
+                case IntegerArray:
+                    int[] ints = new int[(int) readVarLong()];
+                    for (int i = 0; i < ints.length; i++) {
+                        ints[i] = (int) readSignedVarLong();
+                    }
+                    return ints;
+                case LongArray:
+                    long[] longs = new long[(int) readVarLong()];
+                    for (int i = 0; i < longs.length; i++) {
+                        longs[i] = readSignedVarLong();
+                    }
+                    return longs;
+                case DoubleArray:
+                    double[] doubles = new double[(int) readVarLong()];
+                    for (int i = 0; i < doubles.length; i++) {
+                        doubles[i] = Double.longBitsToDouble(readLong());
+                    }
+                    return doubles;
+                case BooleanArray:
+                    boolean[] booleans = new boolean[(int) readVarLong()];
+                    for (int i = 0; i < booleans.length; i++) {
+                        booleans[i] = readByte() != 0;
+                    }
+                    return booleans;
+                case BigDecimalArray:
+                    BigDecimal[] decimals = new BigDecimal[(int) readVarLong()];
+                    for (int i = 0; i < decimals.length; i++) {
+                        String decimal = readString();
+                        decimals[i] = decimal == null ? null : new BigDecimal(decimal);
+                    }
+                    return decimals;
+                default:
+                    String message = "Data type " + dataType + " not supported by the binary encoding";
+                    LOGGER.error(message);
+                    throw new RuntimeException(message);
+            }
+        }
+
+        String readString() {
+            int length = (int) readVarLong() - 1;
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        long readSignedVarLong() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                value |= (buffer[position++] & 0xFFL) << (8 * i);
+            }
+            return value;
+        }
+
+        byte readByte() {
+            return buffer[position++];
+        }
+    }
+
+    private static class TypeEntry {
+        final GlobType type;
+        final Field[] fields;
+        final DataType[] dataTypes;
+
+        TypeEntry(GlobType type, Field[] fields, DataType[] dataTypes) {
+            this.type = type;
+            this.fields = fields;
+            this.dataTypes = dataTypes;
+        }
+    }
+}
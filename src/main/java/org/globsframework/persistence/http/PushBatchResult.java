@@ -0,0 +1,15 @@
+package org.globsframework.persistence.http;
+
+// result of RpcPersistence.pushDataBatch: for each item its uuid, or null and the error that failed it.
+public class PushBatchResult {
+    public String[] uuids;
+    public String[] errors;
+
+    public PushBatchResult() {
+    }
+
+    public PushBatchResult(String[] uuids, String[] errors) {
+        this.uuids = uuids;
+        this.errors = errors;
+    }
+}
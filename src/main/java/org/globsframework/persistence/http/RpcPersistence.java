@@ -6,6 +6,13 @@ import org.globsframework.utils.Ref;
 import java.util.List;
 
 public interface RpcPersistence {
+    long RESET_EVENTS = -1;
+    int JSON_PROTOCOL = 1;
+    int BINARY_PROTOCOL = 2;
+
+    // highest protocol known by the server: a client calling it on an older server gets an error and stays in json.
+    @ExportMethod
+    int protocolVersion();
 
     @ExportMethod
     void declareType(String type, String typesAsJson);
@@ -16,6 +23,47 @@ public interface RpcPersistence {
     @ExportMethod
     String list(String typeName, String name, String constraintAsJson);
 
+    // batch calls: the items are run in parallel, the result is a json array with the result of each item in order.
+    // A failing item fails a listBatch or getDataBatch call. pushDataBatch returns a PushBatchResult in json instead:
+    // the uuid of each pushed item, the error of each failed one.
+    @ExportMethod
+    String pushDataBatch(String type, String[] data, String[] tags);
+
+    @ExportMethod
+    String listBatch(String typeName, String[] names, String[] constraintsAsJson);
+
+    @ExportMethod
+    String getDataBatch(String typeName, String[] tags);
+
+    // BINARY_PROTOCOL versions of pushData, list, getData and updateTag: the globs are sent as BinaryGlobs,
+    // the constraints stay in json.
+    @ExportMethod
+    String pushDataBinary(String type, BinaryGlobs data, BinaryGlobs tags);
+
+    @ExportMethod
+    BinaryGlobs listBinary(String typeName, String name, String constraintAsJson);
+
+    @ExportMethod
+    BinaryGlobs getDataBinary(String typeName, BinaryGlobs tag);
+
+    @ExportMethod
+    String updateTagBinary(String typeName, BinaryGlobs refTag, BinaryGlobs tags);
+
+    // list read by pages: return the id of a cursor on the result.
+    @ExportMethod
+    String openCursor(String typeName, String name, String constraintAsJson);
+
+    // set in globs the json array of the next count globs at most. Return false on the last page: the cursor is then
+    // closed. Fail if the cursor is unknown or expired.
+    @ExportMethod
+    boolean fetchNext(String cursorId, int count, Ref<String> globs);
+
+    @ExportMethod
+    boolean fetchNextBinary(String cursorId, int count, Ref<BinaryGlobs> globs);
+
+    @ExportMethod
+    void closeCursor(String cursorId);
+
     @ExportMethod
     void unregister(String listenerUUID, String uuid);
 
@@ -29,6 +77,8 @@ public interface RpcPersistence {
     @ExportMethod
     String register(String listenerUUID, String typeName, String listenerTypeName, String constraintAsJson, String[] additionalTypes);
 
+    // lastId: value returned by the previous call (0 at first). Return the id of the last event returned, to give back
+    // in the next call, or RESET_EVENTS if events were lost: the listeners must reset, the next call uses RESET_EVENTS.
     @ExportMethod
     long getNextEvents(String listenerUUID, long lastId, Ref<List<DataEvent>> events);
 
@@ -0,0 +1,20 @@
+package org.globsframework.persistence.http;
+
+// the call was refused before being run: it can be sent again later.
+public class ServerBusyException extends RuntimeException {
+    public static final String BUSY = "Server busy";
+
+    public ServerBusyException(String message) {
+        super(BUSY + ": " + message);
+    }
+
+    // the exception, or one of its causes, is a busy response (its class may be lost through the rpc layer).
+    public static boolean isBusy(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ServerBusyException || (cause.getMessage() != null && cause.getMessage().contains(BUSY))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -5,6 +5,7 @@ import org.globsframework.model.Glob;
 import org.globsframework.model.MutableGlob;
 import org.globsframework.sqlstreams.constraints.Constraint;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -15,10 +16,21 @@ public interface ClientPersistence {
 
     Glob getData(Glob tag);
 
+    // same as list, the result being read from the server by pages of pageSize globs.
+    GlobCursor iterate(GlobType type, Constraint constraint, int pageSize);
+
     Listener listen(GlobType type, Constraint constraint, OnChange consumer, GlobType[] additionalWantedTags);
 
     void updateTag(Glob tag, MutableGlob[] globs);
 
+    // batch versions: one call to the server which runs the items in parallel, results in the order of the items.
+    // If pushDataBatch fails, the tags of the items pushed have their uuid set: push again only the others.
+    void pushDataBatch(List<Glob> data, List<MutableGlob[]> tags);
+
+    List<Glob> getDataBatch(List<Glob> tags); // null for a tag without data
+
+    List<List<Glob>> listBatch(List<GlobType> types, List<Constraint> constraints);
+
     interface OnChange {
         void change(Glob oldValue, Glob newValue, Map<GlobType, Glob> additionalTags); //if newValue == null => delete; if oldValue == null => create else update
 
@@ -29,6 +41,10 @@ public interface ClientPersistence {
         void unregister();
     }
 
+    interface GlobCursor extends Iterator<Glob>, AutoCloseable {
+        void close(); // needed only if the cursor is not read until the end.
+    }
+
     void stop();
 
 }
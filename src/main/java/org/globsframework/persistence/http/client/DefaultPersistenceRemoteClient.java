@@ -12,8 +12,11 @@ import org.globsframework.metamodel.fields.StringField;
 import org.globsframework.metamodel.type.DataType;
 import org.globsframework.model.Glob;
 import org.globsframework.model.MutableGlob;
+import org.globsframework.persistence.http.BinaryGlobs;
 import org.globsframework.persistence.http.DataEvent;
+import org.globsframework.persistence.http.PushBatchResult;
 import org.globsframework.persistence.http.RpcPersistence;
+import org.globsframework.persistence.http.ServerBusyException;
 import org.globsframework.persistence.http.server.PersistenceHttpServer;
 import org.globsframework.remote.DirectoryProvider;
 import org.globsframework.remote.peer.direct.DirectPeerToPeer;
@@ -33,16 +36,27 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
 
 public class DefaultPersistenceRemoteClient implements PersistenceRemoteClient {
     public static Logger LOGGER = LoggerFactory.getLogger(DefaultPersistenceRemoteClient.class);
+    private static final long MIN_BUSY_DELAY_MS = 50;
+    private static final long MAX_BUSY_DELAY_MS = 5000;
+    private static final int MAX_BUSY_ATTEMPTS = 10;
     private RpcService rpcService;
     private RpcListener rpcListener;
     private RpcPersistence rpcPersistence;
     private Map<GlobType, ClientPersistence> persistenceMap = new ConcurrentHashMap<>();
     private final ExecutorService executorService;
+    private final boolean binary;
 
     public DefaultPersistenceRemoteClient(String host, int port) {
+        this(host, port, true);
+    }
+
+    // binary: send the globs with GlobBinaryCodec if the server knows it, json otherwise.
+    public DefaultPersistenceRemoteClient(String host, int port, boolean binary) {
         SharedDataManager sharedDataManager = DefaultSharedDataManager.create(AddressAccessor.FixAddressAccessor.create(host, port));
         Directory directory = new DefaultDirectory();
         DirectPeerToPeer peerToPeer = new DirectPeerToPeer();
@@ -52,15 +66,28 @@ public class DefaultPersistenceRemoteClient implements PersistenceRemoteClient {
             }
         }, sharedDataManager, peerToPeer);
 
-        rpcPersistence = rpcService.getService(RpcPersistence.class, PersistenceHttpServer.UNIQUE, new DataEvent.EventsSerializer());
+        rpcPersistence = rpcService.getService(RpcPersistence.class, PersistenceHttpServer.UNIQUE, new DataEvent.EventsSerializer(),
+                new BinaryGlobs.BinaryGlobsSerializer());
+        this.binary = binary && negotiateBinary(rpcPersistence);
         rpcListener = new RpcListener(rpcPersistence);
         executorService = Executors.newFixedThreadPool(1);
         executorService.submit(rpcListener::run);
     }
 
+    private static boolean negotiateBinary(RpcPersistence rpcPersistence) {
+        try {
+            int version = rpcPersistence.protocolVersion();
+            LOGGER.info("Server protocol " + version);
+            return version >= RpcPersistence.BINARY_PROTOCOL;
+        } catch (Exception e) {
+            LOGGER.info("Server without protocol version, json is used", e);
+            return false;
+        }
+    }
+
     public void createClient(GlobType type, GlobTypeResolver typeResolver) {
         HttpClientPersistence httpClientPersistence = new HttpClientPersistence(type.getName(),
-                rpcPersistence, typeResolver, rpcListener);
+                rpcPersistence, typeResolver, rpcListener, binary);
         persistenceMap.put(type, httpClientPersistence);
     }
 
@@ -76,22 +103,27 @@ public class DefaultPersistenceRemoteClient implements PersistenceRemoteClient {
     private static class HttpClientPersistence implements ClientPersistence {
         final RpcPersistence rpcPersistence;
         private final Gson gson;
+        private final GlobTypeResolver resolver;
+        private final boolean binary;
         private String typeName;
         private GlobTypeResolver typeResolver;
         private RpcListener rpcListener;
         private Map<String, GlobType> alreadySent = new HashMap<>();
 
-        private HttpClientPersistence(String typeName, RpcPersistence rpcPersistence, GlobTypeResolver typeResolver, RpcListener rpcListener) {
+        private HttpClientPersistence(String typeName, RpcPersistence rpcPersistence, GlobTypeResolver typeResolver,
+                                      RpcListener rpcListener, boolean binary) {
             this.typeName = typeName;
             this.rpcPersistence = rpcPersistence;
             this.typeResolver = typeResolver;
             this.rpcListener = rpcListener;
-            GsonBuilder builder = GlobsGson.createBuilder(new GlobTypeResolver() {
+            this.binary = binary;
+            resolver = new GlobTypeResolver() {
                 public GlobType findType(String name) {
                     GlobType type = typeResolver.findType(name);
                     return type != null ? type : alreadySent.get(name);
                 }
-            }, true);
+            };
+            GsonBuilder builder = GlobsGson.createBuilder(resolver, true);
             JSonConstraintTypeAdapter.register(builder, typeResolver);
             gson = builder.create();
         }
@@ -99,19 +131,71 @@ public class DefaultPersistenceRemoteClient implements PersistenceRemoteClient {
         public void pushData(Glob data, MutableGlob[] tags) {
             LOGGER.info("pushData");
             sendTypes(data, tags);
+            if (binary) {
+                String uuid = retryWhenBusy(() -> rpcPersistence.pushDataBinary(typeName, BinaryGlobs.of(data), BinaryGlobs.of(tags)));
+                for (MutableGlob tag : tags) {
+                    tag.set(getUUIDField(tag), uuid);
+                }
+                return;
+            }
             String d1 = gson.toJson(data);
             String t2 = gson.toJson(tags);
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug(d1);
                 LOGGER.debug(t2);
             }
-            String uuid = rpcPersistence.pushData(typeName, d1, t2);
+            String uuid = retryWhenBusy(() -> rpcPersistence.pushData(typeName, d1, t2));
             LOGGER.info("pushData: " + uuid);
             for (MutableGlob tag : tags) {
                 tag.set(getUUIDField(tag), uuid);
             }
         }
 
+        public void pushDataBatch(List<Glob> data, List<MutableGlob[]> tags) {
+            LOGGER.info("pushDataBatch " + data.size());
+            String[] jsonData = new String[data.size()];
+            String[] jsonTags = new String[data.size()];
+            for (int i = 0; i < jsonData.length; i++) {
+                sendTypes(data.get(i), tags.get(i));
+                jsonData[i] = gson.toJson(data.get(i));
+                jsonTags[i] = gson.toJson(tags.get(i));
+            }
+            String[] uuids = new String[jsonData.length];
+            // only the items not pushed yet are sent again when some were refused.
+            retryWhenBusy(() -> {
+                List<Integer> items = new ArrayList<>();
+                for (int i = 0; i < uuids.length; i++) {
+                    if (uuids[i] == null) {
+                        items.add(i);
+                    }
+                }
+                PushBatchResult result = gson.fromJson(rpcPersistence.pushDataBatch(typeName,
+                        items.stream().map(i -> jsonData[i]).toArray(String[]::new),
+                        items.stream().map(i -> jsonTags[i]).toArray(String[]::new)), PushBatchResult.class);
+                List<Integer> failed = new ArrayList<>();
+                String error = null;
+                boolean busy = true;
+                for (int k = 0; k < items.size(); k++) {
+                    int i = items.get(k);
+                    if (result.uuids[k] != null) {
+                        uuids[i] = result.uuids[k];
+                        for (MutableGlob tag : tags.get(i)) {
+                            tag.set(getUUIDField(tag), uuids[i]);
+                        }
+                    } else {
+                        failed.add(i);
+                        busy &= result.errors[k] != null && result.errors[k].contains(ServerBusyException.BUSY);
+                        error = error == null ? result.errors[k] : error;
+                    }
+                }
+                if (!failed.isEmpty()) {
+                    String message = "pushDataBatch failed on items " + failed + " of " + uuids.length + ": " + error;
+                    throw busy ? new ServerBusyException(message) : new RuntimeException(message);
+                }
+                return null;
+            });
+        }
+
         synchronized private void sendTypes(Glob data, Glob[] tags) {
             Set<GlobType> toSend = null;
             if (!alreadySent.containsKey(data.getType().getName())) {
@@ -173,15 +257,45 @@ public class DefaultPersistenceRemoteClient implements PersistenceRemoteClient {
         public List<Glob> list(GlobType type, Constraint constraint) {
             LOGGER.info("Call list" + type.getName());
             String constraintAsJson = gson.toJson(constraint);
-            return Arrays.asList(gson.fromJson(rpcPersistence.list(typeName, type.getName(), constraintAsJson), Glob[].class));
+            if (binary) {
+                return Arrays.asList(retryWhenBusy(() -> rpcPersistence.listBinary(typeName, type.getName(), constraintAsJson)).decode(resolver));
+            }
+            return Arrays.asList(gson.fromJson(retryWhenBusy(() -> rpcPersistence.list(typeName, type.getName(), constraintAsJson)), Glob[].class));
+        }
+
+        public GlobCursor iterate(GlobType type, Constraint constraint, int pageSize) {
+            LOGGER.info("Call iterate " + type.getName());
+            String cursorId = retryWhenBusy(() -> rpcPersistence.openCursor(typeName, type.getName(), gson.toJson(constraint)));
+            return new RemoteCursor(cursorId, pageSize);
         }
 
         public Glob getData(Glob tag) {
             LOGGER.info("Call getData");
-            String dataAsJson = rpcPersistence.getData(typeName, gson.toJson(tag));
+            if (binary) {
+                return retryWhenBusy(() -> rpcPersistence.getDataBinary(typeName, BinaryGlobs.of(tag))).decode(resolver)[0];
+            }
+            String dataAsJson = retryWhenBusy(() -> rpcPersistence.getData(typeName, gson.toJson(tag)));
             return gson.fromJson(dataAsJson, Glob.class);
         }
 
+        public List<List<Glob>> listBatch(List<GlobType> types, List<Constraint> constraints) {
+            LOGGER.info("Call listBatch " + types.size());
+            String[] names = types.stream().map(GlobType::getName).toArray(String[]::new);
+            String[] constraintsAsJson = constraints.stream().map(gson::toJson).toArray(String[]::new);
+            Glob[][] result = gson.fromJson(retryWhenBusy(() -> rpcPersistence.listBatch(typeName, names, constraintsAsJson)), Glob[][].class);
+            List<List<Glob>> lists = new ArrayList<>(result.length);
+            for (Glob[] globs : result) {
+                lists.add(Arrays.asList(globs));
+            }
+            return lists;
+        }
+
+        public List<Glob> getDataBatch(List<Glob> tags) {
+            LOGGER.info("Call getDataBatch " + tags.size());
+            String[] tagsAsJson = tags.stream().map(gson::toJson).toArray(String[]::new);
+            return Arrays.asList(gson.fromJson(retryWhenBusy(() -> rpcPersistence.getDataBatch(typeName, tagsAsJson)), Glob[].class));
+        }
+
         // il faut gérer le cas du redemmarage coté server ==> refaire un register sur le nouveau serveur.
         public Listener listen(GlobType type, Constraint constraint, OnChange consumer, GlobType[] additionalWantedTags) {
             LOGGER.info("Call listen");
@@ -202,7 +316,8 @@ public class DefaultPersistenceRemoteClient implements PersistenceRemoteClient {
         public void updateTag(Glob refTag, MutableGlob[] tags) {
             LOGGER.info("Call updateTag");
             sendTypes(refTag, tags);
-            String uuid = rpcPersistence.updateTag(typeName, gson.toJson(refTag), gson.toJson(tags));
+            String uuid = binary ? retryWhenBusy(() -> rpcPersistence.updateTagBinary(typeName, BinaryGlobs.of(refTag), BinaryGlobs.of(tags)))
+                    : retryWhenBusy(() -> rpcPersistence.updateTag(typeName, gson.toJson(refTag), gson.toJson(tags)));
             for (MutableGlob tag : tags) {
                 tag.set(getUUIDField(tag), uuid);
             }
@@ -211,9 +326,53 @@ public class DefaultPersistenceRemoteClient implements PersistenceRemoteClient {
         public void stop() {
             //clean client only listener
         }
+
+        // keep one page in memory, the next one is fetched when the current one is read.
+        private class RemoteCursor implements GlobCursor {
+            private final String cursorId;
+            private final int pageSize;
+            private Iterator<Glob> page = Collections.emptyIterator();
+            private boolean hasMore = true;
+
+            RemoteCursor(String cursorId, int pageSize) {
+                this.cursorId = cursorId;
+                this.pageSize = pageSize;
+            }
+
+            public boolean hasNext() {
+                while (!page.hasNext() && hasMore) {
+                    if (binary) {
+                        Ref<BinaryGlobs> globs = new Ref<>();
+                        hasMore = rpcPersistence.fetchNextBinary(cursorId, pageSize, globs);
+                        page = Arrays.<Glob>asList(globs.get().decode(resolver)).iterator();
+                    } else {
+                        Ref<String> globs = new Ref<>();
+                        hasMore = rpcPersistence.fetchNext(cursorId, pageSize, globs);
+                        page = Arrays.asList(gson.fromJson(globs.get(), Glob[].class)).iterator();
+                    }
+                }
+                return page.hasNext();
+            }
+
+            public Glob next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+
+            public void close() {
+                if (hasMore) {
+                    hasMore = false;
+                    page = Collections.emptyIterator();
+                    rpcPersistence.closeCursor(cursorId);
+                }
+            }
+        }
     }
 
     static class RpcListener {
+        private static final long MIN_EMPTY_POLL_INTERVAL_MS = 1000;
         private final RpcPersistence rpcPersistence;
         private String rpcListenerUUID = UUID.randomUUID().toString();
         private Map<String, DataRegister> dataRegisters = new ConcurrentHashMap<>();
@@ -238,37 +397,48 @@ public class DefaultPersistenceRemoteClient implements PersistenceRemoteClient {
         }
 
         void run() {
-            NanoChrono nanoChrono = NanoChrono.start();
             while (!stoped) {
+                NanoChrono nanoChrono = NanoChrono.start();
                 Ref<List<DataEvent>> events = new Ref<>();
                 try {
-                    lastId = rpcPersistence.getNextEvents(rpcListenerUUID, lastId, events);
-                    List<DataEvent> dataEvents = events.get();
-                    if (dataEvents != null) {
-                        for (DataEvent dataEvent : dataEvents) {
-                            callOnChange(dataEvent);
+                    long id = rpcPersistence.getNextEvents(rpcListenerUUID, lastId, events);
+                    if (id == RpcPersistence.RESET_EVENTS) {
+                        LOGGER.warn("Events lost after " + lastId + ", calling reset.");
+                        reset();
+                    } else {
+                        List<DataEvent> dataEvents = events.get();
+                        if (dataEvents != null) {
+                            for (DataEvent dataEvent : dataEvents) {
+                                callOnChange(dataEvent);
+                            }
                         }
                     }
-                    // to prevent to fast loop
-                    if (nanoChrono.getElapsedTimeInMS() < 1000) {
+                    lastId = id;
+                    // to prevent to fast loop: the server returns at once without events when too many calls wait.
+                    long elapsed = (long) nanoChrono.getElapsedTimeInMS();
+                    if (elapsed < MIN_EMPTY_POLL_INTERVAL_MS && (events.get() == null || events.get().isEmpty())) {
                         try {
-                            Thread.sleep((long) nanoChrono.getElapsedTimeInMS());
+                            Thread.sleep(MIN_EMPTY_POLL_INTERVAL_MS - elapsed);
                         } catch (InterruptedException e) {
                         }
                     }
                 } catch (Exception e) {
-                    LOGGER.error("Rpc call fail, calling reset.", e);
+                    // the server keeps the events not acknowledged: retry from lastId.
+                    LOGGER.error("Rpc call fail, retrying after " + lastId, e);
                     try {
                         Thread.sleep(1000);
                     } catch (InterruptedException ex) {
                     }
-                    for (DataRegister value : dataRegisters.values()) {
-                        try {
-                            value.onChange.reset();
-                        } catch (Exception ex) {
-                            LOGGER.error("Error on reset from "+ value.uuid, e);
-                        }
-                    }
+                }
+            }
+        }
+
+        private void reset() {
+            for (DataRegister value : dataRegisters.values()) {
+                try {
+                    value.onChange.reset();
+                } catch (Exception ex) {
+                    LOGGER.error("Error on reset from " + value.uuid, ex);
                 }
             }
         }
@@ -308,6 +478,29 @@ public class DefaultPersistenceRemoteClient implements PersistenceRemoteClient {
         }
     }
 
+    // a call refused by a busy server is sent again after a growing random delay.
+    static <T> T retryWhenBusy(Supplier<T> call) {
+        long delay = MIN_BUSY_DELAY_MS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.get();
+            } catch (RuntimeException e) {
+                if (attempt >= MAX_BUSY_ATTEMPTS || !ServerBusyException.isBusy(e)) {
+                    throw e;
+                }
+                long wait = ThreadLocalRandom.current().nextLong(delay / 2, delay + 1);
+                LOGGER.warn("Server busy, attempt " + attempt + ", retrying in " + wait + "ms");
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                delay = Math.min(delay * 2, MAX_BUSY_DELAY_MS);
+            }
+        }
+    }
+
     public static StringField getUUIDField(Glob glob) {
         GlobType type = glob.getType();
         Field[] keyFields = type.getKeyFields();
@@ -0,0 +1,93 @@
+package org.globsframework.persistence.http.server;
+
+import org.globsframework.persistence.http.ServerBusyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/*
+ Bound the calls run at once on a namespace, reads and writes having their own limits: a burst of ingest never
+ delays the reads. A call over the limit waits up to queueMillis in a queue of at most maxQueued calls, then is
+ refused with a ServerBusyException the client retries later.
+ */
+class AdmissionControl {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionControl.class);
+    public static final int DEFAULT_MAX_READS = 64;
+    public static final int DEFAULT_MAX_WRITES = 16;
+    public static final int DEFAULT_MAX_QUEUED = 256;
+    public static final int DEFAULT_QUEUE_MILLIS = 1000;
+    private final Map<String, Gate[]> gates = new ConcurrentHashMap<>();
+    private final int maxReads;
+    private final int maxWrites;
+    private final int maxQueued;
+    private final long queueMillis;
+
+    enum Kind {
+        READ, WRITE
+    }
+
+    AdmissionControl(int maxReads, int maxWrites, int maxQueued, long queueMillis) {
+        this.maxReads = maxReads;
+        this.maxWrites = maxWrites;
+        this.maxQueued = maxQueued;
+        this.queueMillis = queueMillis;
+    }
+
+    <T> T call(String namespace, Kind kind, Supplier<T> call) {
+        Gate gate = gates.computeIfAbsent(namespace, name -> new Gate[]{new Gate(maxReads), new Gate(maxWrites)})[kind.ordinal()];
+        if (!gate.permits.tryAcquire()) {
+            boolean acquired = false;
+            if (gate.queued.incrementAndGet() <= maxQueued) {
+                try {
+                    acquired = gate.permits.tryAcquire(queueMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            gate.queued.decrementAndGet();
+            if (!acquired) {
+                gate.rejected.incrementAndGet();
+                String message = kind + " on " + namespace + " (" + metrics(namespace) + ")";
+                LOGGER.warn("Refused " + message);
+                throw new ServerBusyException(message);
+            }
+        }
+        gate.inFlight.incrementAndGet();
+        try {
+            return call.get();
+        } finally {
+            gate.inFlight.decrementAndGet();
+            gate.permits.release();
+        }
+    }
+
+    String metrics(String namespace) {
+        Gate[] namespaceGates = gates.get(namespace);
+        if (namespaceGates == null) {
+            return "no call";
+        }
+        return "reads " + namespaceGates[Kind.READ.ordinal()] + ", writes " + namespaceGates[Kind.WRITE.ordinal()];
+    }
+
+    private static class Gate {
+        final Semaphore permits;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicLong rejected = new AtomicLong();
+
+        Gate(int max) {
+            permits = new Semaphore(max);
+        }
+
+        public String toString() {
+            return "in flight " + inFlight.get() + ", queued " + queued.get() + ", rejected " + rejected.get();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.globsframework.persistence.http.server;
+
+import com.google.gson.Gson;
+import org.globsframework.model.Glob;
+import org.globsframework.persistence.ChangeDispatch;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ A change is given to every listener one after the other, with the same Glob instances: its json is kept for the
+ time of the dispatch (see ChangeDispatch) so each value is encoded once whatever the number of listeners, and the
+ listeners share the same immutable strings.
+ */
+class ChangeEncoder {
+    private static final int MAX_ADDITIONAL = 256;
+    private Gson gson;
+    private Glob newValue;
+    private Glob oldValue;
+    private String newJson;
+    private String oldJson;
+    private final Map<Glob, String> additionalJson = new IdentityHashMap<>();
+
+    static Encoded encode(Gson gson, Glob oldValue, Glob newValue, List<Glob> additionalTags) {
+        return ChangeDispatch.shared(ChangeEncoder.class, ChangeEncoder::new).get(gson, oldValue, newValue, additionalTags);
+    }
+
+    private Encoded get(Gson gson, Glob oldValue, Glob newValue, List<Glob> additionalTags) {
+        if (gson != this.gson || oldValue != this.oldValue || newValue != this.newValue || newValue == null) {
+            this.gson = gson;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+            oldJson = gson.toJson(oldValue);
+            newJson = gson.toJson(newValue);
+            additionalJson.clear();
+        }
+        if (additionalJson.size() > MAX_ADDITIONAL) {
+            additionalJson.clear();
+        }
+        String[] additional = new String[additionalTags.size()];
+        for (int i = 0; i < additional.length; i++) {
+            additional[i] = additionalJson.computeIfAbsent(additionalTags.get(i), gson::toJson);
+        }
+        return new Encoded(oldJson, newJson, additional);
+    }
+
+    static class Encoded {
+        final String oldValue;
+        final String newValue;
+        final String[] additional;
+
+        Encoded(String oldValue, String newValue, String[] additional) {
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+            this.additional = additional;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.globsframework.persistence.http.server;
+
+import org.globsframework.persistence.http.DataEvent;
+import org.globsframework.persistence.http.RpcPersistence;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ Events of a client numbered from 1. An event is kept until the client acknowledges it (by asking for the
+ events after its id) so a lost response is sent again.
+ An event not yet sent is merged with the next event of the same key (listener and uuid): the client receives
+ one event from the first old value to the latest value.
+ At most capacity events are kept, on overflow the client is asked to reset (it must list again): with RESET the
+ pending events are dropped, with DROP_OLDEST the latest ones are sent after the reset.
+ */
+class ClientEventStream {
+    public static final int DEFAULT_CAPACITY = 10_000;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final ArrayDeque<Entry> events = new ArrayDeque<>();
+    private final Map<String, Entry> unsentByKey = new HashMap<>();
+    private long lastId = 0;
+    private long lastSentId = 0;
+    private boolean overflowed = false;
+    private long coalesced = 0;
+    private long dropped = 0;
+    private long resets = 0;
+
+    enum OverflowPolicy {
+        // drop every pending events at once.
+        RESET,
+        // keep the latest events, sent once the client is told about the gap.
+        DROP_OLDEST
+    }
+
+    ClientEventStream(int capacity) {
+        this(capacity, OverflowPolicy.RESET);
+    }
+
+    ClientEventStream(int capacity, OverflowPolicy overflowPolicy) {
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    synchronized void add(String key, DataEvent event) {
+        Entry pending = key == null ? null : unsentByKey.get(key);
+        if (pending != null) {
+            pending.event = new DataEvent(event.listenerUUID, pending.event.oldValue, event.newValue, event.additional);
+            coalesced++;
+            return;
+        }
+        Entry entry = new Entry(++lastId, key, event);
+        events.addLast(entry);
+        if (key != null) {
+            unsentByKey.put(key, entry);
+        }
+        if (events.size() > capacity) {
+            overflowed = true;
+            if (overflowPolicy == OverflowPolicy.RESET) {
+                dropped += events.size();
+                clear();
+            } else {
+                Entry first = events.removeFirst();
+                unsentByKey.remove(first.key, first);
+                dropped++;
+            }
+        }
+        notifyAll();
+    }
+
+    // acknowledged: id returned by the previous call, RESET_EVENTS after a reset.
+    // fill result with the events after acknowledged and return the id of the last one, or RESET_EVENTS.
+    synchronized long next(long acknowledged, List<DataEvent> result, long timeoutMillis) throws InterruptedException {
+        if (overflowed) {
+            return reset();
+        }
+        if (acknowledged != RpcPersistence.RESET_EVENTS) {
+            while (!events.isEmpty() && events.peekFirst().id <= acknowledged) {
+                Entry first = events.removeFirst();
+                unsentByKey.remove(first.key, first);
+            }
+            long firstAvailable = events.isEmpty() ? lastId + 1 : events.peekFirst().id;
+            if (acknowledged + 1 < firstAvailable || acknowledged > lastId) {
+                // unknown id (stream of another server): everything up to now is covered by the reset.
+                return reset();
+            }
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long wait;
+        while (events.isEmpty() && !overflowed && (wait = deadline - System.currentTimeMillis()) > 0) {
+            wait(wait);
+        }
+        if (overflowed) {
+            return reset();
+        }
+        if (events.isEmpty()) {
+            return lastId;
+        }
+        long id = 0;
+        for (Entry entry : events) {
+            result.add(entry.event);
+            id = entry.id;
+            // sent: a new event of the same key is not merged in it anymore.
+            if (entry.id > lastSentId && entry.key != null) {
+                unsentByKey.remove(entry.key, entry);
+            }
+        }
+        lastSentId = Math.max(lastSentId, id);
+        return id;
+    }
+
+    private long reset() {
+        overflowed = false;
+        if (overflowPolicy == OverflowPolicy.RESET) {
+            clear();
+        }
+        resets++;
+        return RpcPersistence.RESET_EVENTS;
+    }
+
+    private void clear() {
+        events.clear();
+        unsentByKey.clear();
+    }
+
+    synchronized int depth() {
+        return events.size();
+    }
+
+    synchronized long coalesced() {
+        return coalesced;
+    }
+
+    synchronized long dropped() {
+        return dropped;
+    }
+
+    synchronized long resets() {
+        return resets;
+    }
+
+    synchronized String metrics() {
+        return "depth " + events.size() + ", coalesced " + coalesced + ", dropped " + dropped + ", resets " + resets;
+    }
+
+    private static class Entry {
+        final long id;
+        final String key;
+        DataEvent event;
+
+        Entry(long id, String key, DataEvent event) {
+            this.id = id;
+            this.key = key;
+            this.event = event;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.globsframework.persistence.http.server;
+
+import org.globsframework.model.Glob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ Open list results read page by page. A cursor is closed when its last page is read, by the client, or when it is
+ not read for ttlMillis. At most maxCursors are open at once: opening one more fails.
+ A cursor owns a pin on its namespace (see PersistenceProvider.get), released when the cursor is closed.
+ */
+class ListCursors {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ListCursors.class);
+    public static final int DEFAULT_TTL_IN_SECONDS = 300;
+    public static final int DEFAULT_MAX_CURSORS = 1000;
+    public static final int MAX_PAGE_SIZE = 10_000;
+    private final Map<String, Cursor> cursors = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private final int maxCursors;
+
+    ListCursors(long ttlMillis, int maxCursors) {
+        this.ttlMillis = ttlMillis;
+        this.maxCursors = maxCursors;
+    }
+
+    String open(PersistenceProvider.PersistenceInfo persistenceInfo, Iterator<Glob> iterator) {
+        expire();
+        if (cursors.size() >= maxCursors) {
+            String message = "Too many open cursors (" + cursors.size() + ")";
+            LOGGER.error(message);
+            throw new RuntimeException(message);
+        }
+        String cursorId = UUID.randomUUID().toString();
+        cursors.put(cursorId, new Cursor(persistenceInfo, iterator));
+        return cursorId;
+    }
+
+    // null if the cursor is unknown or expired.
+    Page next(String cursorId, int count) {
+        Cursor cursor = cursors.get(cursorId);
+        if (cursor == null) {
+            return null;
+        }
+        Page page = cursor.next(Math.max(1, Math.min(count, MAX_PAGE_SIZE)));
+        if (page.last && cursors.remove(cursorId, cursor)) {
+            cursor.release();
+        }
+        return page;
+    }
+
+    void close(String cursorId) {
+        Cursor cursor = cursors.remove(cursorId);
+        if (cursor != null) {
+            cursor.release();
+        }
+    }
+
+    int size() {
+        return cursors.size();
+    }
+
+    void expire() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Cursor> entry : cursors.entrySet()) {
+            if (now - entry.getValue().lastAccess > ttlMillis && cursors.remove(entry.getKey(), entry.getValue())) {
+                LOGGER.info("Cursor " + entry.getKey() + " expired");
+                entry.getValue().release();
+            }
+        }
+    }
+
+    static class Page {
+        final PersistenceProvider.PersistenceInfo persistenceInfo;
+        final List<Glob> globs;
+        final boolean last;
+
+        Page(PersistenceProvider.PersistenceInfo persistenceInfo, List<Glob> globs, boolean last) {
+            this.persistenceInfo = persistenceInfo;
+            this.globs = globs;
+            this.last = last;
+        }
+    }
+
+    private static class Cursor {
+        private final PersistenceProvider.PersistenceInfo persistenceInfo;
+        private final Iterator<Glob> iterator;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        Cursor(PersistenceProvider.PersistenceInfo persistenceInfo, Iterator<Glob> iterator) {
+            this.persistenceInfo = persistenceInfo;
+            this.iterator = iterator;
+        }
+
+        void release() {
+            if (persistenceInfo != null) {
+                persistenceInfo.release();
+            }
+        }
+
+        synchronized Page next(int count) {
+            List<Glob> globs = new ArrayList<>(Math.min(count, 1024));
+            while (globs.size() < count && iterator.hasNext()) {
+                globs.add(iterator.next());
+            }
+            lastAccess = System.currentTimeMillis();
+            return new Page(persistenceInfo, globs, !iterator.hasNext());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.globsframework.persistence.http.server;
+
+import org.globsframework.persistence.http.DataEvent;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/*
+ Bound the getNextEvents calls waiting for events, each one holding a rpc worker while waiting. Over maxParked a
+ call returns at once with the events already there and its client polls again later: the number of connected
+ clients is no more capped by the rpc workers.
+ */
+class LongPolls {
+    public static final int DEFAULT_MAX_PARKED = 256;
+    public static final int DEFAULT_WAIT_IN_SECONDS = 60;
+    private final int maxParked;
+    private final Semaphore parked;
+    private final long waitMillis;
+
+    LongPolls(int maxParked, long waitMillis) {
+        this.maxParked = maxParked;
+        parked = new Semaphore(maxParked);
+        this.waitMillis = waitMillis;
+    }
+
+    long next(PersistenceHttpServer.PerClientInfo perClientInfo, long lastId, List<DataEvent> events) {
+        if (!parked.tryAcquire()) {
+            return perClientInfo.next(lastId, events, 0);
+        }
+        try {
+            return perClientInfo.next(lastId, events, waitMillis);
+        } finally {
+            parked.release();
+        }
+    }
+
+    int parked() {
+        return maxParked - parked.availablePermits();
+    }
+}
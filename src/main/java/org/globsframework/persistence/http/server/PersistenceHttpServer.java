@@ -8,10 +8,13 @@ import org.globsframework.directory.Directory;
 import org.globsframework.metamodel.GlobType;
 import org.globsframework.metamodel.GlobTypeLoaderFactory;
 import org.globsframework.metamodel.annotations.FieldNameAnnotation;
+import org.globsframework.metamodel.fields.BooleanField;
 import org.globsframework.metamodel.fields.IntegerField;
 import org.globsframework.metamodel.fields.StringField;
 import org.globsframework.model.Glob;
+import org.globsframework.persistence.InMemoryPersistence;
 import org.globsframework.persistence.Persistence;
+import org.globsframework.persistence.http.BinaryGlobs;
 import org.globsframework.persistence.http.DataEvent;
 import org.globsframework.persistence.http.RpcPersistence;
 import org.globsframework.remote.DirectoryProvider;
@@ -26,9 +29,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
 
 public class PersistenceHttpServer {
@@ -40,6 +41,7 @@ public class PersistenceHttpServer {
     private final SharedDataManager sharedDataManager;
     private final RpcService rpcService;
     private final PersistenceProviderImpl persistenceProvider;
+    private final RpcPersistenceImpl rpcPersistence;
     private boolean shutDown = false;
 
     public PersistenceHttpServer(Glob option) {
@@ -52,13 +54,30 @@ public class PersistenceHttpServer {
                 return directory;
             }
         }, sharedDataManager, peerToPeer);
-        persistenceProvider = new PersistenceProviderImpl(new File(option.get(Options.rootDirectory)).toPath());
-        rpcService.register(RpcPersistence.class, new RpcPersistenceImpl(
-                persistenceProvider), UNIQUE, new DataEvent.EventsSerializer());
+        persistenceProvider = new PersistenceProviderImpl(new File(option.get(Options.rootDirectory)).toPath(), option);
+        String overflow = option.get(Options.eventQueueOverflow);
+        rpcPersistence = new RpcPersistenceImpl(
+                persistenceProvider, Boolean.TRUE.equals(option.get(Options.validateRawData)),
+                Boolean.TRUE.equals(option.get(Options.streamingIngest)),
+                PersistenceProviderImpl.getOption(option, Options.eventQueueCapacity, ClientEventStream.DEFAULT_CAPACITY),
+                overflow != null ? ClientEventStream.OverflowPolicy.valueOf(overflow.trim().toUpperCase()) : ClientEventStream.OverflowPolicy.RESET,
+                PersistenceProviderImpl.getOption(option, Options.batchThreads, Runtime.getRuntime().availableProcessors()),
+                new ListCursors(TimeUnit.SECONDS.toMillis(PersistenceProviderImpl.getOption(option, Options.cursorTtlInSeconds, ListCursors.DEFAULT_TTL_IN_SECONDS)),
+                        PersistenceProviderImpl.getOption(option, Options.maxCursors, ListCursors.DEFAULT_MAX_CURSORS)),
+                new LongPolls(PersistenceProviderImpl.getOption(option, Options.maxParkedPolls, LongPolls.DEFAULT_MAX_PARKED),
+                        TimeUnit.SECONDS.toMillis(PersistenceProviderImpl.getOption(option, Options.longPollSeconds, LongPolls.DEFAULT_WAIT_IN_SECONDS))),
+                TimeUnit.SECONDS.toMillis(PersistenceProviderImpl.getOption(option, Options.clientTtlInSeconds, RpcPersistenceImpl.DEFAULT_CLIENT_TTL_IN_SECONDS)),
+                new AdmissionControl(PersistenceProviderImpl.getOption(option, Options.maxConcurrentReads, AdmissionControl.DEFAULT_MAX_READS),
+                        PersistenceProviderImpl.getOption(option, Options.maxConcurrentWrites, AdmissionControl.DEFAULT_MAX_WRITES),
+                        PersistenceProviderImpl.getOption(option, Options.maxQueuedCalls, AdmissionControl.DEFAULT_MAX_QUEUED),
+                        PersistenceProviderImpl.getOption(option, Options.admissionQueueMillis, AdmissionControl.DEFAULT_QUEUE_MILLIS)));
+        rpcService.register(RpcPersistence.class, rpcPersistence, UNIQUE, new DataEvent.EventsSerializer(),
+                new BinaryGlobs.BinaryGlobsSerializer());
 
     }
 
     public void shutDown() {
+        rpcPersistence.shutdown();
         persistenceProvider.shutdown();
         rpcService.reset();
         peerToPeer.destroy();
@@ -135,6 +154,125 @@ public class PersistenceHttpServer {
         @Mandatory_
         public static StringField rootDirectory;
 
+        // 0 to disable snapshots of the tags.
+        @FieldNameAnnotation("checkpointPeriodInMinutes")
+        public static IntegerField checkpointPeriodInMinutes;
+
+        // 0 to disable the compaction of the tag logs.
+        @FieldNameAnnotation("compactionPeriodInMinutes")
+        public static IntegerField compactionPeriodInMinutes;
+
+        @FieldNameAnnotation("compactionMBPerSecond")
+        public static IntegerField compactionMBPerSecond;
+
+        // ASYNC (default), GROUP_COMMIT or SYNC
+        @FieldNameAnnotation("tagDurability")
+        public static StringField tagDurability;
+
+        // override tagDurability by namespace: "namespace1=SYNC,namespace2=GROUP_COMMIT"
+        @FieldNameAnnotation("tagDurabilityByNamespace")
+        public static StringField tagDurabilityByNamespace;
+
+        @FieldNameAnnotation("groupCommitMillis")
+        public static IntegerField groupCommitMillis;
+
+        @FieldNameAnnotation("groupCommitRecords")
+        public static IntegerField groupCommitRecords;
+
+        // getData send the stored json as it is, set to decode it first.
+        @FieldNameAnnotation("validateRawData")
+        public static BooleanField validateRawData;
+
+        // pushData validate the data against its type while writing it, without building the Glob.
+        @FieldNameAnnotation("streamingIngest")
+        public static BooleanField streamingIngest;
+
+        // file (default): one file per data and tag logs, lsm: data and tags in a LSM tree, sql: in the sqlUrl database.
+        @FieldNameAnnotation("storageEngine")
+        public static StringField storageEngine;
+
+        // max events kept by client, 10000 by default.
+        @FieldNameAnnotation("eventQueueCapacity")
+        public static IntegerField eventQueueCapacity;
+
+        // RESET (default): drop the events of a client at once when its queue is full, DROP_OLDEST: keep the latest
+        // ones until it comes back. In both cases the client listeners are reset, with DROP_OLDEST they then receive
+        // the latest events.
+        @FieldNameAnnotation("eventQueueOverflow")
+        public static StringField eventQueueOverflow;
+
+        // jdbc url of the sql storage engine.
+        @FieldNameAnnotation("sqlUrl")
+        public static StringField sqlUrl;
+
+        @FieldNameAnnotation("sqlUser")
+        public static StringField sqlUser;
+
+        @FieldNameAnnotation("sqlPassword")
+        public static StringField sqlPassword;
+
+        // write the data and the tags of a push in one log record, with the tag durability; applied later to the stores.
+        @FieldNameAnnotation("unifiedLog")
+        public static BooleanField unifiedLog;
+
+        // threads running the items of the listBatch, getDataBatch and pushDataBatch calls, the number of processors by default.
+        @FieldNameAnnotation("batchThreads")
+        public static IntegerField batchThreads;
+
+        // a list cursor not read for this time is closed, 300 by default.
+        @FieldNameAnnotation("cursorTtlInSeconds")
+        public static IntegerField cursorTtlInSeconds;
+
+        // max list cursors open at once, 1000 by default.
+        @FieldNameAnnotation("maxCursors")
+        public static IntegerField maxCursors;
+
+        // max getNextEvents calls waiting for events at once, 256 by default: the other calls return at once and
+        // their client polls again a second later, so idle clients do not hold all the rpc workers.
+        @FieldNameAnnotation("maxParkedPolls")
+        public static IntegerField maxParkedPolls;
+
+        // max wait of a getNextEvents call for new events, 60 by default.
+        @FieldNameAnnotation("longPollSeconds")
+        public static IntegerField longPollSeconds;
+
+        // the listeners of a client not calling getNextEvents for this time are unregistered, 300 by default: its
+        // next poll resets them. Must be longer than longPollSeconds.
+        @FieldNameAnnotation("clientTtlInSeconds")
+        public static IntegerField clientTtlInSeconds;
+
+        // close a namespace not used for this time (without listeners), 0 (default) to keep them all.
+        @FieldNameAnnotation("idleEvictionMinutes")
+        public static IntegerField idleEvictionMinutes;
+
+        // max data whose tags are kept in memory across the namespaces: over it the least recently used namespaces
+        // are closed. 0 (default) for no limit.
+        @FieldNameAnnotation("maxLoadedData")
+        public static IntegerField maxLoadedData;
+
+        // "namespace1,namespace2": loaded in background at start.
+        @FieldNameAnnotation("preloadNamespaces")
+        public static StringField preloadNamespaces;
+
+        // writes of a namespace done by one of these threads, always the same: 0 (default) for the calling thread.
+        // Only used for the file engine, or with the ASYNC durability, where a write does not wait for an fsync.
+        @FieldNameAnnotation("writerThreads")
+        public static IntegerField writerThreads;
+
+        // by namespace, max reads (list, getData) and writes (pushData, updateTag) run at once, 64 and 16 by default.
+        @FieldNameAnnotation("maxConcurrentReads")
+        public static IntegerField maxConcurrentReads;
+
+        @FieldNameAnnotation("maxConcurrentWrites")
+        public static IntegerField maxConcurrentWrites;
+
+        // by namespace and kind, max calls waiting for their turn, 256 by default: over it a call is refused at once.
+        @FieldNameAnnotation("maxQueuedCalls")
+        public static IntegerField maxQueuedCalls;
+
+        // max wait of a call for its turn before being refused as busy, 1000 by default.
+        @FieldNameAnnotation("admissionQueueMillis")
+        public static IntegerField admissionQueueMillis;
 
         static {
             GlobTypeLoaderFactory.create(Options.class).load();
@@ -153,22 +291,46 @@ public class PersistenceHttpServer {
         private final PersistenceProvider.PersistenceInfo persistenceInfo;
         private final Map<String, Persistence.Listener> listeners = new ConcurrentHashMap<>();
         public long lastUpdateId;
-        public long lastRpcCall;
-        public BlockingQueue<DataEvent> dataEvents = new LinkedBlockingDeque<>();
+        // last register or getNextEvents call, a client not calling anymore is expired.
+        public volatile long lastRpcCall = System.currentTimeMillis();
+        private boolean closed;
+        private final ClientEventStream dataEvents;
 
         public PerClientInfo(String uuid, PersistenceProvider.PersistenceInfo persistenceInfo) {
+            this(uuid, persistenceInfo, ClientEventStream.DEFAULT_CAPACITY, ClientEventStream.OverflowPolicy.RESET);
+        }
+
+        public PerClientInfo(String uuid, PersistenceProvider.PersistenceInfo persistenceInfo, int eventCapacity,
+                             ClientEventStream.OverflowPolicy overflowPolicy) {
             this.uuid = uuid;
             this.persistenceInfo = persistenceInfo;
+            this.dataEvents = new ClientEventStream(eventCapacity, overflowPolicy);
         }
 
+        // events of a listener on the same data are merged until sent.
         public void onChange(String uuid, GlobType type, Glob oldValue, Glob newValue, List<Glob> additionalTags) {
-            dataEvents.add(new DataEvent(uuid, persistenceInfo.gson.toJson(oldValue),
-                    persistenceInfo.gson.toJson(newValue),
-                    additionalTags.stream().map(persistenceInfo.gson::toJson).toArray(String[]::new)));
+            Glob value = newValue != null ? newValue : oldValue;
+            String key = value == null ? null : uuid + "/" + value.get(InMemoryPersistence.getUUIDField(value));
+            ChangeEncoder.Encoded encoded = ChangeEncoder.encode(persistenceInfo.gson, oldValue, newValue, additionalTags);
+            dataEvents.add(key, new DataEvent(uuid, encoded.oldValue, encoded.newValue, encoded.additional));
         }
 
-        public void register(String uuid, Persistence.Listener listen) {
+        // false once closed: the listener is not registered.
+        public synchronized boolean register(String uuid, Persistence.Listener listen) {
+            if (closed) {
+                return false;
+            }
+            lastRpcCall = System.currentTimeMillis();
             listeners.put(uuid, listen);
+            return true;
+        }
+
+        // the client expired: unregister all its listeners.
+        public synchronized void close() {
+            closed = true;
+            for (String uuid : listeners.keySet()) {
+                unregister(uuid);
+            }
         }
 
         public void unregister(String uuid) {
@@ -178,21 +340,21 @@ public class PersistenceHttpServer {
             }
         }
 
-        public List<DataEvent> drain() {
-            DataEvent poll = null;
+        // wait up to waitMillis for the events after lastId.
+        public long next(long lastId, List<DataEvent> events, long waitMillis) {
+            lastRpcCall = System.currentTimeMillis();
             try {
-                poll = dataEvents.poll(1, TimeUnit.MINUTES);
-                if (poll == null) {
-                    return Collections.emptyList();
-                }
-                List<DataEvent> events = new ArrayList<>();
-                events.add(poll);
-                dataEvents.drainTo(events);
-                return events;
-            } catch (Exception e) {
-                LOGGER.error("in drain", e);
+                return dataEvents.next(lastId, events, waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return lastId;
+            } finally {
+                lastRpcCall = System.currentTimeMillis();
             }
-            return Collections.emptyList();
+        }
+
+        public String metrics() {
+            return dataEvents.metrics();
         }
     }
 }
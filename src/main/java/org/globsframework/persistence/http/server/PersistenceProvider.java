@@ -4,18 +4,52 @@ import com.google.gson.Gson;
 import org.globsframework.persistence.FileGlobTypeAccess;
 import org.globsframework.persistence.Persistence;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public interface PersistenceProvider {
+    // the namespace is pinned until release() is called on the returned info.
     PersistenceInfo get(String typeName);
 
     static class PersistenceInfo {
+        private static final int EVICTED = Integer.MIN_VALUE;
         public final Persistence persistence;
         public final FileGlobTypeAccess fileGlobTypeAccess;
         public final Gson gson;
+        // calls in flight, open cursors and listeners: a pinned namespace is never evicted.
+        private final AtomicInteger pins = new AtomicInteger();
+        volatile long lastAccess = System.currentTimeMillis();
 
         public PersistenceInfo(Persistence persistence, FileGlobTypeAccess fileGlobTypeAccess, Gson gson) {
             this.persistence = persistence;
             this.fileGlobTypeAccess = fileGlobTypeAccess;
             this.gson = gson;
         }
+
+        public void release() {
+            pins.decrementAndGet();
+        }
+
+        // false once evicted.
+        boolean pin() {
+            while (true) {
+                int count = pins.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (pins.compareAndSet(count, count + 1)) {
+                    lastAccess = System.currentTimeMillis();
+                    return true;
+                }
+            }
+        }
+
+        int pinCount() {
+            return Math.max(0, pins.get());
+        }
+
+        // succeed only if not pinned, the namespace can not be pinned anymore.
+        boolean markEvicted() {
+            return pins.compareAndSet(0, EVICTED);
+        }
     }
 }
@@ -6,25 +6,67 @@ import org.globsframework.metamodel.GlobModel;
 import org.globsframework.metamodel.GlobType;
 import org.globsframework.metamodel.MutableGlobModel;
 import org.globsframework.metamodel.annotations.AllAnnotations;
+import org.globsframework.metamodel.fields.IntegerField;
 import org.globsframework.metamodel.impl.DefaultGlobModel;
+import org.globsframework.model.Glob;
 import org.globsframework.persistence.InMemoryPersistence;
+import org.globsframework.persistence.Persistence;
+import org.globsframework.persistence.RWDataAccess;
+import org.globsframework.persistence.RWTagAccess;
+import org.globsframework.persistence.SingleWriterPersistence;
+import org.globsframework.persistence.WriterPartitions;
 import org.globsframework.persistence.file.DefaultFileGlobTypeAccess;
 import org.globsframework.persistence.file.FileRWDataAccess;
 import org.globsframework.persistence.file.FileRWTagAccess;
+import org.globsframework.persistence.file.TagLogDurability;
+import org.globsframework.persistence.lsm.LsmRWDataAccess;
+import org.globsframework.persistence.lsm.LsmRWTagAccess;
+import org.globsframework.persistence.lsm.LsmStore;
+import org.globsframework.persistence.sql.SqlRWDataAccess;
+import org.globsframework.persistence.sql.SqlRWTagAccess;
+import org.globsframework.persistence.wal.UnifiedWriteAheadLog;
+import org.globsframework.sqlstreams.SqlService;
+import org.globsframework.sqlstreams.drivers.jdbc.JdbcSqlService;
 import org.globsframework.sqlstreams.json.JSonConstraintTypeAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 public class PersistenceProviderImpl implements PersistenceProvider {
+    public static final int DEFAULT_CHECKPOINT_PERIOD_IN_MINUTES = 30;
+    public static final int DEFAULT_COMPACTION_PERIOD_IN_MINUTES = 10;
+    public static final int DEFAULT_COMPACTION_MB_PER_SECOND = 10;
+    public static final int EVICTION_CHECK_PERIOD_IN_SECONDS = 60;
     private static Logger LOGGER = LoggerFactory.getLogger(PersistenceProviderImpl.class);
     private Map<String, PersistenceInfo> persistence = new ConcurrentHashMap<>();
+    // namespaces evicted and not yet closed: not loaded again until closed.
+    private final Map<String, CompletableFuture<Void>> closing = new ConcurrentHashMap<>();
+    private final PersistenceBuilder persistenceBuilder = new PersistenceBuilder();
     private Path rootDir;
+    private final ScheduledExecutorService maintenanceExecutor;
+    private final long compactionBytesPerSecond;
+    private final Glob option;
+    private final String defaultDurability;
+    private final Map<String, String> durabilityByNamespace;
+    private final String storageEngine;
+    private final SqlService sqlService;
+    private final boolean unifiedLog;
+    private final long idleMillis;
+    private final int maxLoadedData;
+    private final WriterPartitions writerPartitions;
     private static MutableGlobModel annotations;
 
     static {
@@ -35,22 +77,209 @@ public class PersistenceProviderImpl implements PersistenceProvider {
     }
 
     PersistenceProviderImpl(Path rootDir) {
+        this(rootDir, null);
+    }
+
+    // option is a PersistenceHttpServer.Options, null for the default values.
+    PersistenceProviderImpl(Path rootDir, Glob option) {
         this.rootDir = rootDir;
         File directory = rootDir.toFile();
         if (!directory.exists()) {
             throw new RuntimeException(directory.getAbsolutePath() + " must exist");
         }
+        this.option = option;
+        String durability = option != null ? option.get(PersistenceHttpServer.Options.tagDurability) : null;
+        defaultDurability = durability != null ? durability : TagLogDurability.Mode.ASYNC.name();
+        String engine = option != null ? option.get(PersistenceHttpServer.Options.storageEngine) : null;
+        storageEngine = engine != null ? engine : "file";
+        sqlService = storageEngine.equals("sql") ? new JdbcSqlService(option.get(PersistenceHttpServer.Options.sqlUrl),
+                option.get(PersistenceHttpServer.Options.sqlUser), option.get(PersistenceHttpServer.Options.sqlPassword)) : null;
+        unifiedLog = option != null && Boolean.TRUE.equals(option.get(PersistenceHttpServer.Options.unifiedLog));
+        durabilityByNamespace = parseByNamespace(option != null ? option.get(PersistenceHttpServer.Options.tagDurabilityByNamespace) : null);
+        int writerThreads = getOption(option, PersistenceHttpServer.Options.writerThreads, 0);
+        writerPartitions = writerThreads > 0 ? new WriterPartitions(writerThreads) : null;
+        compactionBytesPerSecond = getOption(option, PersistenceHttpServer.Options.compactionMBPerSecond,
+                DEFAULT_COMPACTION_MB_PER_SECOND) * 1024L * 1024L;
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tags-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int checkpointPeriod = getOption(option, PersistenceHttpServer.Options.checkpointPeriodInMinutes,
+                DEFAULT_CHECKPOINT_PERIOD_IN_MINUTES);
+        if (checkpointPeriod > 0) {
+            maintenanceExecutor.scheduleWithFixedDelay(this::checkpoint, checkpointPeriod, checkpointPeriod, TimeUnit.MINUTES);
+        }
+        int compactionPeriod = getOption(option, PersistenceHttpServer.Options.compactionPeriodInMinutes,
+                DEFAULT_COMPACTION_PERIOD_IN_MINUTES);
+        if (compactionPeriod > 0) {
+            maintenanceExecutor.scheduleWithFixedDelay(this::compact, compactionPeriod, compactionPeriod, TimeUnit.MINUTES);
+        }
+        idleMillis = TimeUnit.MINUTES.toMillis(getOption(option, PersistenceHttpServer.Options.idleEvictionMinutes, 0));
+        maxLoadedData = getOption(option, PersistenceHttpServer.Options.maxLoadedData, 0);
+        if (idleMillis > 0 || maxLoadedData > 0) {
+            maintenanceExecutor.scheduleWithFixedDelay(this::evict, EVICTION_CHECK_PERIOD_IN_SECONDS,
+                    EVICTION_CHECK_PERIOD_IN_SECONDS, TimeUnit.SECONDS);
+        }
+        String preload = option != null ? option.get(PersistenceHttpServer.Options.preloadNamespaces) : null;
+        if (preload != null) {
+            for (String namespace : preload.split(",")) {
+                if (!namespace.isBlank()) {
+                    maintenanceExecutor.execute(() -> preload(namespace.trim()));
+                }
+            }
+        }
+    }
+
+    private void preload(String namespace) {
+        try {
+            get(namespace).release();
+            LOGGER.info("Preloaded " + namespace);
+        } catch (Exception e) {
+            LOGGER.error("Preload failed for " + namespace, e);
+        }
     }
 
+    private TagLogDurability getDurability(String namespace) {
+        String mode = durabilityByNamespace.getOrDefault(namespace, defaultDurability);
+        return TagLogDurability.parse(mode,
+                getOption(option, PersistenceHttpServer.Options.groupCommitMillis, TagLogDurability.DEFAULT_GROUP_COMMIT_MILLIS),
+                getOption(option, PersistenceHttpServer.Options.groupCommitRecords, TagLogDurability.DEFAULT_GROUP_COMMIT_RECORDS));
+    }
+
+    // "namespace1=SYNC,namespace2=GROUP_COMMIT"
+    static Map<String, String> parseByNamespace(String value) {
+        Map<String, String> result = new HashMap<>();
+        if (value != null) {
+            for (String entry : value.split(",")) {
+                String[] split = entry.split("=");
+                if (split.length != 2) {
+                    throw new RuntimeException("Bad namespace option " + entry + " in " + value);
+                }
+                result.put(split[0].trim(), split[1].trim());
+            }
+        }
+        return result;
+    }
+
+    static int getOption(Glob option, IntegerField field, int defaultValue) {
+        Integer value = option != null ? option.get(field) : null;
+        return value != null ? value : defaultValue;
+    }
+
+    private void checkpoint() {
+        for (Map.Entry<String, PersistenceInfo> entry : persistence.entrySet()) {
+            try {
+                entry.getValue().persistence.checkpoint();
+            } catch (Exception e) {
+                LOGGER.error("Checkpoint failed for " + entry.getKey(), e);
+            }
+        }
+    }
+
+    private void compact() {
+        for (Map.Entry<String, PersistenceInfo> entry : persistence.entrySet()) {
+            try {
+                entry.getValue().persistence.compact();
+            } catch (Exception e) {
+                LOGGER.error("Compaction failed for " + entry.getKey(), e);
+            }
+        }
+    }
+
+    // a loaded namespace is returned without lock, an evicted one is loaded again once closed.
     public PersistenceInfo get(String typeName) {
-        return persistence.computeIfAbsent(typeName, new PersistenceBuilder());
+        while (true) {
+            PersistenceInfo persistenceInfo = persistence.get(typeName);
+            if (persistenceInfo == null) {
+                CompletableFuture<Void> closed = closing.get(typeName);
+                if (closed != null) {
+                    closed.join();
+                }
+                persistenceInfo = persistence.computeIfAbsent(typeName, persistenceBuilder);
+            }
+            if (persistenceInfo.pin()) {
+                return persistenceInfo;
+            }
+            // being evicted: removed from the map right after.
+            Thread.yield();
+        }
+    }
+
+    /*
+     Close the namespaces not used for idleMillis, then the least recently used ones while more than maxLoadedData
+     data are in memory. A pinned namespace (call in flight, open cursor or listener) is kept, as is one used during
+     the last check period. An evicted namespace is loaded again at its next use.
+     */
+    void evict() {
+        long now = System.currentTimeMillis();
+        List<Map.Entry<String, PersistenceInfo>> candidates = new ArrayList<>();
+        long loaded = 0;
+        for (Map.Entry<String, PersistenceInfo> entry : persistence.entrySet()) {
+            PersistenceInfo persistenceInfo = entry.getValue();
+            loaded += persistenceInfo.persistence.loadedCount();
+            if (persistenceInfo.pinCount() == 0 &&
+                now - persistenceInfo.lastAccess > TimeUnit.SECONDS.toMillis(EVICTION_CHECK_PERIOD_IN_SECONDS)) {
+                candidates.add(entry);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+        for (Map.Entry<String, PersistenceInfo> entry : candidates) {
+            boolean idle = idleMillis > 0 && now - entry.getValue().lastAccess > idleMillis;
+            boolean overBudget = maxLoadedData > 0 && loaded > maxLoadedData;
+            if (!idle && !overBudget) {
+                continue;
+            }
+            long count = entry.getValue().persistence.loadedCount();
+            if (evict(entry.getKey(), entry.getValue().lastAccess)) {
+                loaded -= count;
+                LOGGER.info("Evicted " + entry.getKey() + " (" + count + " data, " + (idle ? "idle" : "over budget") +
+                            ", " + loaded + " data still loaded)");
+            }
+        }
+    }
+
+    // removed from the map then closed without lock, the next get waits for the close.
+    private boolean evict(String namespace, long lastAccess) {
+        PersistenceInfo persistenceInfo = persistence.get(namespace);
+        if (persistenceInfo == null || persistenceInfo.lastAccess != lastAccess || !persistenceInfo.markEvicted()) {
+            return false;
+        }
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        closing.put(namespace, closed);
+        persistence.remove(namespace, persistenceInfo);
+        try {
+            close(persistenceInfo);
+        } catch (Exception e) {
+            LOGGER.error("Eviction failed for " + namespace, e);
+        } finally {
+            closing.remove(namespace, closed);
+            closed.complete(null);
+        }
+        return true;
+    }
+
+    private static void close(PersistenceInfo persistenceInfo) {
+        persistenceInfo.persistence.checkpoint();
+        persistenceInfo.fileGlobTypeAccess.shutdown();
+        persistenceInfo.persistence.shutdown();
     }
 
     public void shutdown() {
+        maintenanceExecutor.shutdown();
+        try {
+            maintenanceExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkpoint();
         for (PersistenceInfo persistenceInfo : persistence.values()) {
             persistenceInfo.fileGlobTypeAccess.shutdown();
             persistenceInfo.persistence.shutdown();
         }
+        if (writerPartitions != null) {
+            writerPartitions.shutdown();
+        }
     }
 
     private class PersistenceBuilder implements Function<String, PersistenceInfo> {
@@ -61,23 +290,54 @@ public class PersistenceProviderImpl implements PersistenceProvider {
             createDir(directory);
             File schemaDir = new File(directory, "schema");
             createDir(schemaDir);
-            File tagsDir = new File(directory, "tags");
-            createDir(tagsDir);
-            File dataDir = new File(directory, "data");
-            createDir(dataDir);
-            DefaultFileGlobTypeAccess fileGlobTypeAccess = new DefaultFileGlobTypeAccess(AllAnnotations.MODEL::findType, schemaDir.toPath());
-            GsonBuilder builder = GlobsGson.createBuilder(name -> {
-                GlobType type1 = fileGlobTypeAccess.find(name);
-                if (type1 != null) {
-                    return type1;
-                }
-                else {
-                    return annotations.findType(name);
-                }
-            }, true);
+            // annotations contains AllAnnotations.MODEL: find() resolve and cache every known type with one lookup.
+            DefaultFileGlobTypeAccess fileGlobTypeAccess = new DefaultFileGlobTypeAccess(annotations::findType, schemaDir.toPath());
+            GsonBuilder builder = GlobsGson.createBuilder(fileGlobTypeAccess::find, true);
             JSonConstraintTypeAdapter.register(builder, fileGlobTypeAccess::find);
-            return new PersistenceInfo(new InMemoryPersistence(new FileRWDataAccess(dataDir, fileGlobTypeAccess::find),
-                    new FileRWTagAccess(dataDir.toPath(), fileGlobTypeAccess::find)), fileGlobTypeAccess, builder.create());
+            // with the unified log the stores do not need to be durable by themselves.
+            TagLogDurability durability = unifiedLog ? TagLogDurability.ASYNC : getDurability(type);
+            RWDataAccess dataAccess;
+            RWTagAccess tagAccess;
+            if (storageEngine.equals("sql")) {
+                dataAccess = new SqlRWDataAccess(sqlService, type, fileGlobTypeAccess::find);
+                tagAccess = new SqlRWTagAccess(sqlService, type, fileGlobTypeAccess::find, durability);
+            } else if (storageEngine.equals("lsm")) {
+                File lsmDir = new File(directory, "lsm");
+                createDir(lsmDir);
+                LsmStore store = new LsmStore(lsmDir.toPath(), durability);
+                dataAccess = new LsmRWDataAccess(store, fileGlobTypeAccess::find);
+                tagAccess = new LsmRWTagAccess(store, fileGlobTypeAccess::find);
+            } else if (storageEngine.equals("file")) {
+                File tagsDir = new File(directory, "tags");
+                createDir(tagsDir);
+                File dataDir = new File(directory, "data");
+                createDir(dataDir);
+                FileRWTagAccess.moveTagLogs(dataDir.toPath(), tagsDir.toPath());
+                dataAccess = new FileRWDataAccess(dataDir, fileGlobTypeAccess::find, durability);
+                tagAccess = new FileRWTagAccess(tagsDir.toPath(), fileGlobTypeAccess::find, compactionBytesPerSecond, durability);
+            } else {
+                throw new RuntimeException("Unknown storage engine " + storageEngine);
+            }
+            InMemoryPersistence inMemoryPersistence;
+            if (unifiedLog) {
+                File logDir = new File(directory, "log");
+                createDir(logDir);
+                inMemoryPersistence = new InMemoryPersistence(new UnifiedWriteAheadLog(logDir.toPath(), dataAccess, tagAccess,
+                        fileGlobTypeAccess::find, getDurability(type).mode != TagLogDurability.Mode.ASYNC));
+            } else {
+                inMemoryPersistence = new InMemoryPersistence(dataAccess, tagAccess);
+            }
+            Persistence result = inMemoryPersistence;
+            if (writerPartitions != null) {
+                // the other stores fsync inside the write: the writer thread would wait for each of them.
+                if ((storageEngine.equals("file") && !unifiedLog) || getDurability(type).mode == TagLogDurability.Mode.ASYNC) {
+                    result = new SingleWriterPersistence(inMemoryPersistence, writerPartitions.get(type));
+                } else {
+                    LOGGER.info("No writer thread for " + type + ": its writes wait for the fsync of the " +
+                                (unifiedLog ? "unified log" : storageEngine + " store"));
+                }
+            }
+            return new PersistenceInfo(result, fileGlobTypeAccess, builder.create());
         }
 
         private void createDir(File directory) {
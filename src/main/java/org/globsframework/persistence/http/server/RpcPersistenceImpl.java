@@ -6,66 +6,300 @@ import org.globsframework.model.Glob;
 import org.globsframework.model.MutableGlob;
 import org.globsframework.persistence.FileGlobTypeAccess;
 import org.globsframework.persistence.Persistence;
+import org.globsframework.persistence.http.BinaryGlobs;
 import org.globsframework.persistence.http.DataEvent;
+import org.globsframework.persistence.http.PushBatchResult;
 import org.globsframework.persistence.http.RpcPersistence;
+import org.globsframework.persistence.http.ServerBusyException;
 import org.globsframework.sqlstreams.constraints.Constraint;
 import org.globsframework.utils.Ref;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 
 public class RpcPersistenceImpl implements RpcPersistence {
     static final Logger LOGGER = LoggerFactory.getLogger(RpcPersistenceImpl.class);
+    public static final int DEFAULT_CLIENT_TTL_IN_SECONDS = 300;
     private final PersistenceProvider persistenceProvider;
+    private final boolean validateRawData;
+    private final boolean streamingIngest;
+    private final int eventCapacity;
+    private final ClientEventStream.OverflowPolicy overflowPolicy;
+    private final ExecutorService batchExecutor;
+    private final ListCursors cursors;
+    private final LongPolls longPolls;
+    private final AdmissionControl admission;
+    private final long clientTtlMillis;
     private Map<String, PersistenceHttpServer.PerClientInfo> clientListeners = new ConcurrentHashMap<>();
 
     RpcPersistenceImpl(PersistenceProvider persistenceProvider) {
+        this(persistenceProvider, false, false, ClientEventStream.DEFAULT_CAPACITY, ClientEventStream.OverflowPolicy.RESET,
+                Runtime.getRuntime().availableProcessors(),
+                new ListCursors(TimeUnit.SECONDS.toMillis(ListCursors.DEFAULT_TTL_IN_SECONDS), ListCursors.DEFAULT_MAX_CURSORS),
+                new LongPolls(LongPolls.DEFAULT_MAX_PARKED, TimeUnit.SECONDS.toMillis(LongPolls.DEFAULT_WAIT_IN_SECONDS)),
+                TimeUnit.SECONDS.toMillis(DEFAULT_CLIENT_TTL_IN_SECONDS),
+                new AdmissionControl(AdmissionControl.DEFAULT_MAX_READS, AdmissionControl.DEFAULT_MAX_WRITES,
+                        AdmissionControl.DEFAULT_MAX_QUEUED, AdmissionControl.DEFAULT_QUEUE_MILLIS));
+    }
+
+    // validateRawData: decode the stored data before sending it to check it against the declared types.
+    // streamingIngest: pushData check the data against its type while writing it instead of decoding it.
+    // eventCapacity, overflowPolicy: bound of the events kept for each client.
+    // batchThreads: threads running the items of the batch calls.
+    // cursors: the list results read by pages.
+    // longPolls: bound of the getNextEvents calls waiting for events.
+    // clientTtlMillis: the listeners of a client not polling its events for this time are unregistered.
+    // admission: bound of the reads and writes run at once by namespace.
+    RpcPersistenceImpl(PersistenceProvider persistenceProvider, boolean validateRawData, boolean streamingIngest,
+                       int eventCapacity, ClientEventStream.OverflowPolicy overflowPolicy, int batchThreads,
+                       ListCursors cursors, LongPolls longPolls, long clientTtlMillis, AdmissionControl admission) {
         this.persistenceProvider = persistenceProvider;
+        this.validateRawData = validateRawData;
+        this.streamingIngest = streamingIngest;
+        this.eventCapacity = eventCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.cursors = cursors;
+        this.longPolls = longPolls;
+        this.clientTtlMillis = clientTtlMillis;
+        this.admission = admission;
+        batchExecutor = Executors.newFixedThreadPool(Math.max(1, batchThreads), r -> {
+            Thread thread = new Thread(r, "rpc-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int protocolVersion() {
+        return BINARY_PROTOCOL;
     }
 
     public void declareType(String type, String typesAsJson) {
         LOGGER.info("declareType " + type + "  " + typesAsJson);
-        PersistenceProvider.PersistenceInfo persistenceInfo = persistenceProvider.get(type);
-        FileGlobTypeAccess typeAccess = persistenceInfo.fileGlobTypeAccess;
-        Arrays.stream(persistenceInfo.gson.fromJson(typesAsJson, GlobType[].class))
-                .forEach(typeAccess::declare);
+        on(type, persistenceInfo -> {
+            FileGlobTypeAccess typeAccess = persistenceInfo.fileGlobTypeAccess;
+            Arrays.stream(persistenceInfo.gson.fromJson(typesAsJson, GlobType[].class))
+                    .forEach(typeAccess::declare);
+            return null;
+        });
+    }
+
+    // the namespace is pinned (not evicted) during the call.
+    private <T> T on(String typeName, Function<PersistenceProvider.PersistenceInfo, T> call) {
+        PersistenceProvider.PersistenceInfo persistenceInfo = persistenceProvider.get(typeName);
+        try {
+            return call.apply(persistenceInfo);
+        } finally {
+            persistenceInfo.release();
+        }
     }
 
     public String pushData(String type, String jsonData, String jsonTags) {
-        LOGGER.info("pushData " + type + "  " + jsonData + " " + jsonTags);
-        PersistenceProvider.PersistenceInfo persistenceInfo = persistenceProvider.get(type);
-        Glob data = persistenceInfo.gson.fromJson(jsonData, Glob.class);
+        LOGGER.info("pushData " + type + "  " + (jsonData.length() > 1024 ? jsonData.length() + " chars" : jsonData) + " " + jsonTags);
+        return admission.call(type, AdmissionControl.Kind.WRITE, () -> on(type, persistenceInfo -> push(persistenceInfo, jsonData, jsonTags)));
+    }
+
+    public String pushDataBatch(String type, String[] jsonData, String[] jsonTags) {
+        LOGGER.info("pushDataBatch " + type + " " + jsonData.length + " data");
+        if (jsonData.length != jsonTags.length) {
+            String message = "pushDataBatch on " + type + ": " + jsonData.length + " data for " + jsonTags.length + " tags";
+            LOGGER.error(message);
+            throw new RuntimeException(message);
+        }
+        // a failing (or refused) item does not stop the others: the client gets the uuid or the error of each item
+        // and pushes again only the failed ones.
+        return on(type, persistenceInfo -> {
+            List<Future<String>> pushes = submitAll(type, AdmissionControl.Kind.WRITE, jsonData.length,
+                    i -> push(persistenceInfo, jsonData[i], jsonTags[i]));
+            String[] uuids = new String[jsonData.length];
+            String[] errors = new String[jsonData.length];
+            for (int i = 0; i < jsonData.length; i++) {
+                try {
+                    uuids[i] = pushes.get(i).get();
+                } catch (ExecutionException e) {
+                    errors[i] = String.valueOf(e.getCause().getMessage());
+                    if (!ServerBusyException.isBusy(e.getCause())) {
+                        LOGGER.error("pushDataBatch on " + type + " failed on item " + i + "/" + jsonData.length, e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    errors[i] = "Interrupted while pushing item " + i;
+                }
+            }
+            return persistenceInfo.gson.toJson(new PushBatchResult(uuids, errors));
+        });
+    }
+
+    private String push(PersistenceProvider.PersistenceInfo persistenceInfo, String jsonData, String jsonTags) {
         MutableGlob[] tags = persistenceInfo.gson.fromJson(jsonTags, MutableGlob[].class);
+        if (streamingIngest) {
+            return persistenceInfo.persistence.pushRawData(new StringReader(jsonData), tags);
+        }
+        Glob data = persistenceInfo.gson.fromJson(jsonData, Glob.class);
         return persistenceInfo.persistence.pushData(data, tags);
     }
 
     public String list(String typeName, String name, String constraintAsJson) {
         LOGGER.info("list " + typeName + "  " + name + " " + constraintAsJson);
-        PersistenceProvider.PersistenceInfo persistenceInfo = persistenceProvider.get(typeName);
+        return admission.call(typeName, AdmissionControl.Kind.READ, () -> on(typeName, persistenceInfo -> list(persistenceInfo, name, constraintAsJson)));
+    }
+
+    public String listBatch(String typeName, String[] names, String[] constraintsAsJson) {
+        LOGGER.info("listBatch " + typeName + " " + Arrays.toString(names));
+        if (names.length != constraintsAsJson.length) {
+            String message = "listBatch on " + typeName + ": " + names.length + " types for " + constraintsAsJson.length + " constraints";
+            LOGGER.error(message);
+            throw new RuntimeException(message);
+        }
+        return on(typeName, persistenceInfo -> toJsonArray(runAll("listBatch on " + typeName, typeName, names.length,
+                i -> list(persistenceInfo, names[i], constraintsAsJson[i]))));
+    }
+
+    private String list(PersistenceProvider.PersistenceInfo persistenceInfo, String name, String constraintAsJson) {
         List<Glob> data = persistenceInfo.persistence.list(persistenceInfo.fileGlobTypeAccess.find(name),
                 persistenceInfo.gson.fromJson(constraintAsJson, Constraint.class));
         return persistenceInfo.gson.toJson(data);
     }
 
+    public String pushDataBinary(String type, BinaryGlobs data, BinaryGlobs tags) {
+        LOGGER.info("pushDataBinary " + type + "  " + data.payload.length + " bytes");
+        return admission.call(type, AdmissionControl.Kind.WRITE, () -> on(type, persistenceInfo -> {
+            FileGlobTypeAccess typeAccess = persistenceInfo.fileGlobTypeAccess;
+            return persistenceInfo.persistence.pushData(data.decode(typeAccess::find)[0], tags.decode(typeAccess::find));
+        }));
+    }
+
+    public BinaryGlobs listBinary(String typeName, String name, String constraintAsJson) {
+        LOGGER.info("listBinary " + typeName + "  " + name + " " + constraintAsJson);
+        return admission.call(typeName, AdmissionControl.Kind.READ, () -> on(typeName, persistenceInfo -> {
+            List<Glob> data = persistenceInfo.persistence.list(persistenceInfo.fileGlobTypeAccess.find(name),
+                    persistenceInfo.gson.fromJson(constraintAsJson, Constraint.class));
+            return BinaryGlobs.of(data.toArray(new Glob[0]));
+        }));
+    }
+
+    public BinaryGlobs getDataBinary(String typeName, BinaryGlobs tag) {
+        return admission.call(typeName, AdmissionControl.Kind.READ, () -> on(typeName, persistenceInfo -> {
+            Glob refTag = tag.decode(persistenceInfo.fileGlobTypeAccess::find)[0];
+            LOGGER.info("getDataBinary " + typeName + "  " + refTag);
+            return BinaryGlobs.of(persistenceInfo.persistence.getData(refTag));
+        }));
+    }
+
+    public String updateTagBinary(String typeName, BinaryGlobs refTag, BinaryGlobs tags) {
+        LOGGER.info("updateTagBinary " + typeName);
+        return admission.call(typeName, AdmissionControl.Kind.WRITE, () -> on(typeName, persistenceInfo -> {
+            FileGlobTypeAccess typeAccess = persistenceInfo.fileGlobTypeAccess;
+            return persistenceInfo.persistence.updateTag(refTag.decode(typeAccess::find)[0], tags.decode(typeAccess::find));
+        }));
+    }
+
+    public String openCursor(String typeName, String name, String constraintAsJson) {
+        return admission.call(typeName, AdmissionControl.Kind.READ, () -> {
+            // the namespace stays pinned until the cursor is closed.
+            PersistenceProvider.PersistenceInfo persistenceInfo = persistenceProvider.get(typeName);
+            String cursorId;
+            try {
+                cursorId = cursors.open(persistenceInfo, persistenceInfo.persistence.iterate(persistenceInfo.fileGlobTypeAccess.find(name),
+                        persistenceInfo.gson.fromJson(constraintAsJson, Constraint.class)));
+            } catch (RuntimeException e) {
+                persistenceInfo.release();
+                throw e;
+            }
+            LOGGER.info("openCursor " + typeName + "  " + name + " " + constraintAsJson + ": " + cursorId + " (" + cursors.size() + " open)");
+            return cursorId;
+        });
+    }
+
+    public boolean fetchNext(String cursorId, int count, Ref<String> globs) {
+        ListCursors.Page page = nextPage(cursorId, count);
+        globs.set(page.persistenceInfo.gson.toJson(page.globs));
+        return !page.last;
+    }
+
+    public boolean fetchNextBinary(String cursorId, int count, Ref<BinaryGlobs> globs) {
+        ListCursors.Page page = nextPage(cursorId, count);
+        globs.set(BinaryGlobs.of(page.globs.toArray(new Glob[0])));
+        return !page.last;
+    }
+
+    private ListCursors.Page nextPage(String cursorId, int count) {
+        cursors.expire();
+        ListCursors.Page page = cursors.next(cursorId, count);
+        if (page == null) {
+            String message = "Unknown or expired cursor " + cursorId;
+            LOGGER.error(message);
+            throw new RuntimeException(message);
+        }
+        return page;
+    }
+
+    public void closeCursor(String cursorId) {
+        LOGGER.info("closeCursor " + cursorId);
+        cursors.close(cursorId);
+    }
+
     public String register(String listenerUUID, String typeName, String listenerTypeName, String constraintAsJson, String[] additionalTypes) {
         LOGGER.info("register " + typeName + "  " + listenerTypeName + " " + constraintAsJson);
+        expireClients();
+        // the namespace stays pinned until the listener is unregistered.
         PersistenceProvider.PersistenceInfo persistenceInfo = persistenceProvider.get(typeName);
-        PersistenceHttpServer.PerClientInfo perClientInfo = clientListeners.computeIfAbsent(listenerUUID, s -> new PersistenceHttpServer.PerClientInfo(s, persistenceInfo));
         String uuid = UUID.randomUUID().toString();
-        Persistence.Listener listen = persistenceInfo.persistence.listen(persistenceInfo.fileGlobTypeAccess.find(listenerTypeName),
-                persistenceInfo.gson.fromJson(constraintAsJson, Constraint.class),
-                new Persistence.OnChange() {
-                    public void change(GlobType type, Glob oldValue, Glob newValue, List<Glob> additionalTags) {
-                        perClientInfo.onChange(uuid, type, oldValue, newValue, additionalTags);
-                    }
-                }, Arrays.stream(additionalTypes).map(persistenceInfo.fileGlobTypeAccess::find).toArray(GlobType[]::new));
-        perClientInfo.register(uuid, listen);
-        return uuid;
+        while (true) {
+            PersistenceHttpServer.PerClientInfo perClientInfo = clientListeners.computeIfAbsent(listenerUUID, s -> new PersistenceHttpServer.PerClientInfo(s, persistenceInfo, eventCapacity, overflowPolicy));
+            Persistence.Listener listen;
+            try {
+                listen = persistenceInfo.persistence.listen(persistenceInfo.fileGlobTypeAccess.find(listenerTypeName),
+                        persistenceInfo.gson.fromJson(constraintAsJson, Constraint.class),
+                        new Persistence.OnChange() {
+                            public void change(GlobType type, Glob oldValue, Glob newValue, List<Glob> additionalTags) {
+                                perClientInfo.onChange(uuid, type, oldValue, newValue, additionalTags);
+                            }
+                        }, Arrays.stream(additionalTypes).map(persistenceInfo.fileGlobTypeAccess::find).toArray(GlobType[]::new));
+            } catch (RuntimeException e) {
+                persistenceInfo.release();
+                throw e;
+            }
+            if (perClientInfo.register(uuid, new Persistence.Listener() {
+                public void unregister() {
+                    listen.unregister();
+                    persistenceInfo.release();
+                }
+            })) {
+                return uuid;
+            }
+            // expired meanwhile: registered again on a new one.
+            listen.unregister();
+        }
+    }
+
+    // unregister the listeners of the clients not polling their events anymore, releasing their namespaces.
+    void expireClients() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, PersistenceHttpServer.PerClientInfo> entry : clientListeners.entrySet()) {
+            PersistenceHttpServer.PerClientInfo perClientInfo = entry.getValue();
+            if (now - perClientInfo.lastRpcCall > clientTtlMillis && clientListeners.remove(entry.getKey(), perClientInfo)) {
+                LOGGER.info("Client " + entry.getKey() + " expired");
+                perClientInfo.close();
+            }
+        }
+    }
+
+    int clientCount() {
+        return clientListeners.size();
     }
 
     public void unregister(String listenerUUID, String uuid) {
@@ -78,25 +312,101 @@ public class RpcPersistenceImpl implements RpcPersistence {
 
     public String getData(String typeName, String tag) {
         LOGGER.info("getData " + typeName + "  " + tag);
-        PersistenceProvider.PersistenceInfo persistenceInfo = persistenceProvider.get(typeName);
+        return admission.call(typeName, AdmissionControl.Kind.READ, () -> on(typeName, persistenceInfo -> getData(persistenceInfo, typeName, tag)));
+    }
+
+    public String getDataBatch(String typeName, String[] tags) {
+        LOGGER.info("getDataBatch " + typeName + " " + tags.length + " tags");
+        return on(typeName, persistenceInfo -> toJsonArray(runAll("getDataBatch on " + typeName, typeName, tags.length,
+                i -> getData(persistenceInfo, typeName, tags[i]))));
+    }
+
+    private String getData(PersistenceProvider.PersistenceInfo persistenceInfo, String typeName, String tag) {
         Gson gson = persistenceInfo.gson;
-        return gson.toJson(persistenceInfo.persistence.getData(gson.fromJson(tag, Glob.class)));
+        String data = persistenceInfo.persistence.getRawData(gson.fromJson(tag, Glob.class));
+        if (validateRawData && data != null) {
+            try {
+                gson.fromJson(data, Glob.class);
+            } catch (RuntimeException e) {
+                String message = "Stored data for " + tag + " in " + typeName + " does not match its type";
+                LOGGER.error(message, e);
+                throw new RuntimeException(message, e);
+            }
+        }
+        return data;
     }
 
     public String updateTag(String typeName, String refTag, String tags) {
         LOGGER.info("updateTag " + typeName + "  " + refTag + " " + tags);
-        PersistenceProvider.PersistenceInfo persistenceInfo = persistenceProvider.get(typeName);
-        Gson gson = persistenceInfo.gson;
-        return persistenceInfo.persistence.updateTag(gson.fromJson(refTag, Glob.class),
-                gson.fromJson(tags, MutableGlob[].class));
+        return admission.call(typeName, AdmissionControl.Kind.WRITE, () -> on(typeName, persistenceInfo -> {
+            Gson gson = persistenceInfo.gson;
+            return persistenceInfo.persistence.updateTag(gson.fromJson(refTag, Glob.class),
+                    gson.fromJson(tags, MutableGlob[].class));
+        }));
     }
 
     public long getNextEvents(String listenerUUID, long lastId, Ref<List<DataEvent>> events) {
-        LOGGER.info("getNextEvents " + listenerUUID);
+        expireClients();
         PersistenceHttpServer.PerClientInfo perClientInfo = clientListeners.get(listenerUUID);
-        if (perClientInfo != null) {
-            events.set(perClientInfo.drain());
+        if (perClientInfo == null) {
+            LOGGER.info("getNextEvents " + listenerUUID + " after " + lastId + ": unknown client");
+            // server restarted?: its listeners must reset.
+            return lastId > 0 ? RESET_EVENTS : 0;
+        }
+        LOGGER.debug("getNextEvents " + listenerUUID + " after " + lastId + " (" + perClientInfo.metrics() +
+                    ", " + longPolls.parked() + " parked)");
+        List<DataEvent> dataEvents = new ArrayList<>();
+        long id = longPolls.next(perClientInfo, lastId, dataEvents);
+        events.set(dataEvents);
+        return id;
+    }
+
+    // run the reads on the batch executor, each one with its own read permit on the namespace, the results are in
+    // the order of the items.
+    private <T> List<T> runAll(String name, String namespace, int count, IntFunction<T> item) {
+        List<T> results = new ArrayList<>(count);
+        if (count == 1) {
+            results.add(admission.call(namespace, AdmissionControl.Kind.READ, () -> item.apply(0)));
+            return results;
+        }
+        List<Future<T>> futures = submitAll(namespace, AdmissionControl.Kind.READ, count, item);
+        for (int i = 0; i < count; i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (InterruptedException | ExecutionException e) {
+                futures.forEach(future -> future.cancel(false));
+                String message = name + " failed on item " + i + "/" + count;
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                LOGGER.error(message, cause);
+                throw new RuntimeException(message, cause);
+            }
         }
-        return 0;
+        return results;
+    }
+
+    // each item is run on the batch executor with its own permit on the namespace.
+    private <T> List<Future<T>> submitAll(String namespace, AdmissionControl.Kind kind, int count, IntFunction<T> item) {
+        List<Future<T>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            futures.add(batchExecutor.submit(() -> admission.call(namespace, kind, () -> item.apply(index))));
+        }
+        return futures;
+    }
+
+    // the items are already json (null for a missing data): concatenated without decoding them.
+    private static String toJsonArray(List<String> items) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < items.size(); i++) {
+            if (i != 0) {
+                builder.append(',');
+            }
+            builder.append(items.get(i));
+        }
+        return builder.append(']').toString();
+    }
+
+    void shutdown() {
+        batchExecutor.shutdown();
     }
 }
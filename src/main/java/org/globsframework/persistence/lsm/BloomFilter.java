@@ -0,0 +1,87 @@
+package org.globsframework.persistence.lsm;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ Bloom filter on the keys of a SSTable, k probes derived from one 64 bits hash (double hashing).
+ */
+public class BloomFilter {
+    public static final int BITS_PER_KEY = 10;
+    private final long[] bits;
+    private final int hashCount;
+
+    private BloomFilter(long[] bits, int hashCount) {
+        this.bits = bits;
+        this.hashCount = hashCount;
+    }
+
+    public static BloomFilter create(long[] keyHashes, int count) {
+        long bitCount = Math.max(64, (long) count * BITS_PER_KEY);
+        long[] bits = new long[(int) ((bitCount + 63) / 64)];
+        int hashCount = Math.max(1, Math.min(30, (int) Math.round(BITS_PER_KEY * Math.log(2))));
+        BloomFilter filter = new BloomFilter(bits, hashCount);
+        for (int i = 0; i < count; i++) {
+            filter.add(keyHashes[i]);
+        }
+        return filter;
+    }
+
+    public static long hash(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        long bitCount = bits.length * 64L;
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(long hash) {
+        long bitCount = bits.length * 64L;
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public int serializedSize() {
+        return 2 * Integer.BYTES + bits.length * Long.BYTES;
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(hashCount);
+        buffer.putInt(bits.length);
+        for (long value : bits) {
+            buffer.putLong(value);
+        }
+    }
+
+    public static BloomFilter readFrom(ByteBuffer buffer) {
+        int hashCount = buffer.getInt();
+        long[] bits = new long[buffer.getInt()];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = buffer.getLong();
+        }
+        return new BloomFilter(bits, hashCount);
+    }
+}
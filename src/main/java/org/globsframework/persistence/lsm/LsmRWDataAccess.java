@@ -0,0 +1,96 @@
+package org.globsframework.persistence.lsm;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.globsframework.json.GSonUtils;
+import org.globsframework.json.GlobGSonDeserializer;
+import org.globsframework.metamodel.GlobTypeResolver;
+import org.globsframework.model.Glob;
+import org.globsframework.persistence.RWDataAccess;
+import org.globsframework.persistence.file.StreamingGlobValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/*
+ Data stored in a LsmStore under "d/<uuid>" as json: the store can be shared with a LsmRWTagAccess.
+ */
+public class LsmRWDataAccess implements RWDataAccess {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LsmRWDataAccess.class);
+    public static final String PREFIX = "d/";
+    private final LsmStore store;
+    private final GlobTypeResolver typeAccess;
+    private final StreamingGlobValidator validator;
+
+    public LsmRWDataAccess(LsmStore store, GlobTypeResolver typeAccess) {
+        this.store = store;
+        this.typeAccess = typeAccess;
+        this.validator = new StreamingGlobValidator(typeAccess);
+    }
+
+    public Glob getData(String uuid) {
+        String json = getRawData(uuid);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return GlobGSonDeserializer.read(new JsonReader(new StringReader(json)), typeAccess);
+        } catch (IOException e) {
+            throw new RuntimeException("Fail to read " + uuid, e);
+        }
+    }
+
+    public String getRawData(String uuid) {
+        byte[] value = store.get(PREFIX + uuid);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    public String save(Glob glob) {
+        String uuid = newUUID();
+        store.put(PREFIX + uuid, GSonUtils.encode(glob, true).getBytes(StandardCharsets.UTF_8));
+        return uuid;
+    }
+
+    public String saveRaw(Reader json) {
+        String uuid = newUUID();
+        StringWriter writer = new StringWriter();
+        try {
+            JsonWriter jsonWriter = new JsonWriter(writer);
+            validator.copy(new JsonReader(json), jsonWriter);
+            jsonWriter.flush();
+        } catch (IOException | RuntimeException e) {
+            String message = "Invalid data for " + uuid + " : " + e.getMessage();
+            LOGGER.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+        store.put(PREFIX + uuid, writer.toString().getBytes(StandardCharsets.UTF_8));
+        return uuid;
+    }
+
+    public void put(String uuid, String json) {
+        store.put(PREFIX + uuid, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void sync() {
+        store.sync();
+    }
+
+    private String newUUID() {
+        String uuid;
+        do {
+            uuid = UUID.randomUUID().toString();
+        } while (store.get(PREFIX + uuid) != null);
+        return uuid;
+    }
+
+    // the store can be shared: closing it twice is harmless.
+    public void shutdown() {
+        store.close();
+    }
+}
@@ -0,0 +1,79 @@
+package org.globsframework.persistence.lsm;
+
+import com.google.gson.stream.JsonReader;
+import org.globsframework.json.GSonUtils;
+import org.globsframework.json.GlobGSonDeserializer;
+import org.globsframework.metamodel.GlobTypeResolver;
+import org.globsframework.model.Glob;
+import org.globsframework.persistence.RWTagAccess;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ Tags stored in a LsmStore under "t/<uuid>/<tag type name>": a new tag of a type replaces the previous one,
+ there is no log to replay nor to compact, listAll() scans the latest tags in uuid order.
+ */
+public class LsmRWTagAccess implements RWTagAccess {
+    public static final String PREFIX = "t/";
+    private final LsmStore store;
+    private final GlobTypeResolver typeAccess;
+
+    public LsmRWTagAccess(LsmStore store, GlobTypeResolver typeAccess) {
+        this.store = store;
+        this.typeAccess = typeAccess;
+    }
+
+    public void save(String uuid, Glob[] tags) {
+        Map<String, byte[]> batch = new LinkedHashMap<>();
+        for (Glob tag : tags) {
+            batch.put(PREFIX + uuid + "/" + tag.getType().getName(), GSonUtils.encode(tag, true).getBytes(StandardCharsets.UTF_8));
+        }
+        store.write(batch);
+    }
+
+    public void listAll(TagListener consumer) {
+        List<Glob> tags = new ArrayList<>();
+        String[] current = new String[1];
+        store.scan(PREFIX, (key, value) -> {
+            String uuid = key.substring(PREFIX.length(), key.indexOf('/', PREFIX.length()));
+            if (!uuid.equals(current[0])) {
+                if (current[0] != null) {
+                    consumer.accept(current[0], tags.iterator());
+                    tags.clear();
+                }
+                current[0] = uuid;
+            }
+            tags.add(decode(key, value));
+        });
+        if (current[0] != null) {
+            consumer.accept(current[0], tags.iterator());
+        }
+    }
+
+    private Glob decode(String key, byte[] value) {
+        try {
+            return GlobGSonDeserializer.read(new JsonReader(new StringReader(new String(value, StandardCharsets.UTF_8))), typeAccess);
+        } catch (IOException e) {
+            throw new RuntimeException("Fail to read " + key, e);
+        }
+    }
+
+    public void sync() {
+        store.sync();
+    }
+
+    public void compact() {
+        store.compact();
+    }
+
+    // the store can be shared: closing it twice is harmless.
+    public void shutdown() {
+        store.close();
+    }
+}
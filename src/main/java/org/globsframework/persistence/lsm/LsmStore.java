@@ -0,0 +1,707 @@
+package org.globsframework.persistence.lsm;
+
+import org.globsframework.persistence.file.TagLogDurability;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ Log structured merge tree of String keys to byte[] values.
+ Writes go to the write ahead log then to the memtable. A full memtable is frozen and flushed in background to a
+ level 0 SSTable. Level 0 tables may overlap and are merged into level 1 when there are LEVEL0_FILES of them;
+ tables of level 1 and above do not overlap, a level bigger than its budget (LEVEL1_BYTES * 10^(level-1)) has
+ one table merged into the next level. The list of tables by level is kept in the MANIFEST file.
+ There is no delete: a key is overridden by a later put.
+ A write returns once in the write ahead log (ASYNC), once fsynced (SYNC), or once fsynced by the group commit that
+ runs every groupCommitMillis or after groupCommitRecords writes (GROUP_COMMIT).
+ */
+public class LsmStore implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LsmStore.class);
+    public static final String MANIFEST = "MANIFEST";
+    public static final long MEMTABLE_BYTES = 4 * 1024 * 1024;
+    public static final int LEVEL0_FILES = 4;
+    public static final long LEVEL1_BYTES = 16 * 1024 * 1024;
+    public static final long TABLE_BYTES = 4 * 1024 * 1024;
+    public static final int MAX_LEVEL = 6;
+    private final Path dir;
+    private final TagLogDurability durability;
+    private final long memtableBytes;
+    private final long level1Bytes;
+    private final long tableBytes;
+    // the tables by level: replaced under the write lock, read under the read lock.
+    private final ReadWriteLock versionLock = new ReentrantReadWriteLock();
+    private final List<List<SSTable>> levels = new ArrayList<>();
+    private final String[] compactPointers = new String[MAX_LEVEL];
+    private final Object writeLock = new Object();
+    private final ExecutorService flushExecutor;
+    private final ExecutorService compactionExecutor;
+    private final ScheduledExecutorService commitExecutor;
+    // writes appended to the log and writes made durable by the group commit.
+    private final Object commitLock = new Object();
+    private long appended;
+    private long committed;
+    private volatile Memtable memtable;
+    private volatile Memtable immutable;
+    private WriteAheadLog wal;
+    private long nextSeq = 1;
+    private volatile boolean closed = false;
+    private volatile Exception backgroundError;
+
+    public LsmStore(Path dir, boolean sync) {
+        this(dir, sync ? TagLogDurability.SYNC : TagLogDurability.ASYNC);
+    }
+
+    public LsmStore(Path dir, TagLogDurability durability) {
+        this(dir, durability, MEMTABLE_BYTES, LEVEL1_BYTES, TABLE_BYTES);
+    }
+
+    // sync: fsync the write ahead log on each write.
+    public LsmStore(Path dir, boolean sync, long memtableBytes, long level1Bytes, long tableBytes) {
+        this(dir, sync ? TagLogDurability.SYNC : TagLogDurability.ASYNC, memtableBytes, level1Bytes, tableBytes);
+    }
+
+    public LsmStore(Path dir, TagLogDurability durability, long memtableBytes, long level1Bytes, long tableBytes) {
+        this.dir = dir;
+        this.durability = durability;
+        this.memtableBytes = memtableBytes;
+        this.level1Bytes = level1Bytes;
+        this.tableBytes = tableBytes;
+        for (int i = 0; i < MAX_LEVEL; i++) {
+            levels.add(new ArrayList<>());
+        }
+        flushExecutor = Executors.newSingleThreadExecutor(daemon("lsm-flush " + dir));
+        compactionExecutor = Executors.newSingleThreadExecutor(daemon("lsm-compaction " + dir));
+        if (durability.mode == TagLogDurability.Mode.GROUP_COMMIT) {
+            commitExecutor = Executors.newSingleThreadScheduledExecutor(daemon("lsm-commit " + dir));
+            commitExecutor.scheduleWithFixedDelay(this::groupCommit, durability.groupCommitMillis,
+                    durability.groupCommitMillis, TimeUnit.MILLISECONDS);
+        } else {
+            commitExecutor = null;
+        }
+        try {
+            open();
+        } catch (IOException e) {
+            String s = "Fail to open " + dir;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+        compactionExecutor.submit(this::compactAll);
+    }
+
+    public void put(String key, byte[] value) {
+        write(Collections.singletonMap(key, value));
+    }
+
+    // the batch is written atomically.
+    public void write(Map<String, byte[]> batch) {
+        long position;
+        synchronized (writeLock) {
+            if (closed) {
+                throw new RuntimeException(dir + " is closed");
+            }
+            try {
+                wal.append(batch, durability.mode == TagLogDurability.Mode.SYNC);
+            } catch (IOException e) {
+                String s = "Fail to write in " + wal.getPath();
+                LOGGER.error(s, e);
+                throw new RuntimeException(s, e);
+            }
+            memtable.putAll(batch);
+            if (memtable.bytes() >= memtableBytes) {
+                freezeMemtable();
+            }
+            position = ++appended;
+        }
+        if (commitExecutor != null) {
+            waitCommitted(position);
+        }
+    }
+
+    private void waitCommitted(long position) {
+        synchronized (commitLock) {
+            if (position - committed >= durability.groupCommitRecords) {
+                try {
+                    commitExecutor.execute(this::groupCommit);
+                } catch (RejectedExecutionException e) {
+                    // closing: the log is fsynced by close.
+                }
+            }
+            while (committed < position) {
+                if (backgroundError != null) {
+                    throw new RuntimeException("Group commit failed in " + dir, backgroundError);
+                }
+                try {
+                    commitLock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting group commit of " + dir, e);
+                }
+            }
+        }
+    }
+
+    // one fsync outside the write lock for every write appended before it.
+    private void groupCommit() {
+        WriteAheadLog toSync;
+        long position;
+        synchronized (writeLock) {
+            toSync = wal;
+            position = appended;
+        }
+        synchronized (commitLock) {
+            if (position <= committed) {
+                return;
+            }
+        }
+        try {
+            toSync.sync();
+        } catch (ClosedChannelException e) {
+            // rolled by a freeze or closed: the log was fsynced before.
+        } catch (IOException e) {
+            LOGGER.error("Fail to sync " + toSync.getPath(), e);
+            backgroundError = e;
+        }
+        synchronized (commitLock) {
+            if (backgroundError == null) {
+                committed = Math.max(committed, position);
+            }
+            commitLock.notifyAll();
+        }
+    }
+
+    // fsync the write ahead log: every write done before the call is durable.
+    public void sync() {
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            try {
+                wal.sync();
+            } catch (IOException e) {
+                String s = "Fail to sync " + wal.getPath();
+                LOGGER.error(s, e);
+                throw new RuntimeException(s, e);
+            }
+        }
+    }
+
+    public byte[] get(String key) {
+        byte[] value = memtable.get(key);
+        if (value != null) {
+            return value;
+        }
+        Memtable frozen = immutable;
+        if (frozen != null && (value = frozen.get(key)) != null) {
+            return value;
+        }
+        versionLock.readLock().lock();
+        try {
+            List<SSTable> level0 = levels.get(0);
+            for (int i = level0.size() - 1; i >= 0; i--) {
+                if ((value = level0.get(i).get(key)) != null) {
+                    return value;
+                }
+            }
+            for (int level = 1; level < MAX_LEVEL; level++) {
+                SSTable table = findTable(levels.get(level), key);
+                if (table != null && (value = table.get(key)) != null) {
+                    return value;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            String s = "Fail to read " + key + " in " + dir;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        } finally {
+            versionLock.readLock().unlock();
+        }
+    }
+
+    // every key starting with prefix in key order with its latest value.
+    public void scan(String prefix, BiConsumer<String, byte[]> consumer) {
+        versionLock.readLock().lock();
+        try {
+            List<Iterator<Map.Entry<String, byte[]>>> sources = new ArrayList<>();
+            sources.add(memtable.iterator(prefix));
+            Memtable frozen = immutable;
+            if (frozen != null) {
+                sources.add(frozen.iterator(prefix));
+            }
+            List<SSTable> level0 = levels.get(0);
+            for (int i = level0.size() - 1; i >= 0; i--) {
+                sources.add(level0.get(i).iterator(prefix));
+            }
+            for (int level = 1; level < MAX_LEVEL; level++) {
+                sources.add(concat(levels.get(level), prefix));
+            }
+            MergingIterator iterator = new MergingIterator(sources);
+            while (iterator.hasNext()) {
+                Map.Entry<String, byte[]> entry = iterator.next();
+                if (!entry.getKey().startsWith(prefix)) {
+                    break;
+                }
+                consumer.accept(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            versionLock.readLock().unlock();
+        }
+    }
+
+    // run the pending compactions now.
+    public void compact() {
+        try {
+            compactionExecutor.submit(this::compactAll).get();
+        } catch (Exception e) {
+            String s = "Compaction of " + dir + " failed";
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+    }
+
+    // freeze the memtable and wait for it to be written to a SSTable.
+    public void flush() {
+        synchronized (writeLock) {
+            if (!memtable.isEmpty()) {
+                freezeMemtable();
+            }
+            waitFrozenFlushed();
+        }
+    }
+
+    public int tableCount(int level) {
+        versionLock.readLock().lock();
+        try {
+            return levels.get(level).size();
+        } finally {
+            versionLock.readLock().unlock();
+        }
+    }
+
+    public void close() {
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (commitExecutor != null) {
+            commitExecutor.shutdown();
+        }
+        flushExecutor.shutdown();
+        compactionExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            compactionExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long position;
+        synchronized (writeLock) {
+            position = appended;
+            try {
+                wal.sync();
+                wal.close();
+            } catch (IOException e) {
+                LOGGER.error("Fail to close " + wal.getPath(), e);
+                backgroundError = e;
+            }
+        }
+        synchronized (commitLock) {
+            if (backgroundError == null) {
+                committed = Math.max(committed, position);
+            }
+            commitLock.notifyAll();
+        }
+        versionLock.writeLock().lock();
+        try {
+            for (List<SSTable> level : levels) {
+                for (SSTable table : level) {
+                    closeQuietly(table);
+                }
+            }
+        } finally {
+            versionLock.writeLock().unlock();
+        }
+    }
+
+    // called with writeLock: writers wait for the previous frozen memtable to be flushed.
+    private void freezeMemtable() {
+        waitFrozenFlushed();
+        WriteAheadLog newWal;
+        try {
+            wal.sync();
+            wal.close();
+            newWal = new WriteAheadLog(dir.resolve(nextSeq() + WriteAheadLog.EXTENSION));
+        } catch (IOException e) {
+            String s = "Fail to create a new write ahead log in " + dir;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+        immutable = memtable;
+        memtable = new Memtable(newWal.getPath());
+        wal = newWal;
+        Memtable frozen = immutable;
+        flushExecutor.submit(() -> flushFrozen(frozen));
+    }
+
+    private void waitFrozenFlushed() {
+        while (immutable != null) {
+            if (backgroundError != null) {
+                throw new RuntimeException("Background flush failed in " + dir, backgroundError);
+            }
+            try {
+                writeLock.wait(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting flush of " + dir, e);
+            }
+        }
+    }
+
+    private void flushFrozen(Memtable frozen) {
+        try {
+            SSTable table = writeTable(frozen.iterator(null), Long.MAX_VALUE);
+            versionLock.writeLock().lock();
+            try {
+                if (table != null) {
+                    levels.get(0).add(table);
+                }
+                writeManifest();
+                immutable = null;
+            } finally {
+                versionLock.writeLock().unlock();
+            }
+            Files.deleteIfExists(frozen.walPath());
+            synchronized (writeLock) {
+                writeLock.notifyAll();
+            }
+            if (!closed) {
+                compactionExecutor.execute(this::compactAll);
+            }
+        } catch (RejectedExecutionException e) {
+            // closed meanwhile
+        } catch (Exception e) {
+            LOGGER.error("Fail to flush memtable of " + dir, e);
+            backgroundError = e;
+        }
+    }
+
+    private void compactAll() {
+        try {
+            Compaction compaction;
+            while (!closed && (compaction = pickCompaction()) != null) {
+                run(compaction);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Compaction of " + dir + " failed", e);
+        }
+    }
+
+    private Compaction pickCompaction() {
+        versionLock.readLock().lock();
+        try {
+            List<SSTable> level0 = levels.get(0);
+            if (level0.size() >= LEVEL0_FILES) {
+                List<SSTable> inputs = new ArrayList<>(level0);
+                Collections.reverse(inputs);
+                String min = inputs.stream().map(SSTable::firstKey).min(Comparator.naturalOrder()).orElseThrow();
+                String max = inputs.stream().map(SSTable::lastKey).max(Comparator.naturalOrder()).orElseThrow();
+                inputs.addAll(overlapping(levels.get(1), min, max));
+                return new Compaction(0, inputs);
+            }
+            for (int level = 1; level < MAX_LEVEL - 1; level++) {
+                List<SSTable> tables = levels.get(level);
+                if (bytes(tables) <= maxBytes(level)) {
+                    continue;
+                }
+                // round robin on the key space so every table is eventually pushed down.
+                String pointer = compactPointers[level];
+                SSTable table = tables.stream()
+                        .filter(t -> pointer == null || t.firstKey().compareTo(pointer) > 0)
+                        .findFirst().orElse(tables.get(0));
+                compactPointers[level] = table.lastKey();
+                List<SSTable> inputs = new ArrayList<>();
+                inputs.add(table);
+                inputs.addAll(overlapping(levels.get(level + 1), table.firstKey(), table.lastKey()));
+                return new Compaction(level, inputs);
+            }
+            return null;
+        } finally {
+            versionLock.readLock().unlock();
+        }
+    }
+
+    private void run(Compaction compaction) throws IOException {
+        long start = System.nanoTime();
+        int target = compaction.level + 1;
+        List<Iterator<Map.Entry<String, byte[]>>> sources = compaction.inputs.stream()
+                .map(table -> table.iterator(null)).collect(Collectors.toList());
+        MergingIterator iterator = new MergingIterator(sources);
+        List<SSTable> outputs = new ArrayList<>();
+        try {
+            while (iterator.hasNext()) {
+                SSTable table = writeTable(iterator, tableBytes);
+                if (table != null) {
+                    outputs.add(table);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (SSTable output : outputs) {
+                closeQuietly(output);
+                Files.deleteIfExists(output.getPath());
+            }
+            throw e;
+        }
+        versionLock.writeLock().lock();
+        try {
+            for (List<SSTable> level : levels) {
+                level.removeAll(compaction.inputs);
+            }
+            List<SSTable> targetLevel = levels.get(target);
+            targetLevel.addAll(outputs);
+            targetLevel.sort(Comparator.comparing(SSTable::firstKey));
+            writeManifest();
+        } finally {
+            versionLock.writeLock().unlock();
+        }
+        long inputBytes = bytes(compaction.inputs);
+        for (SSTable input : compaction.inputs) {
+            closeQuietly(input);
+            Files.deleteIfExists(input.getPath());
+        }
+        LOGGER.info("Compacted " + compaction.inputs.size() + " tables (" + inputBytes + " bytes) of level " + compaction.level +
+                    " into " + outputs.size() + " tables (" + bytes(outputs) + " bytes) of level " + target + " in " +
+                    (System.nanoTime() - start) / 1_000_000 + "ms");
+    }
+
+    // write entries up to maxBytes in a new SSTable, null if there is nothing to write.
+    private SSTable writeTable(Iterator<Map.Entry<String, byte[]>> entries, long maxBytes) throws IOException {
+        if (!entries.hasNext()) {
+            return null;
+        }
+        long seq;
+        synchronized (this) {
+            seq = nextSeq++;
+        }
+        Path path = dir.resolve(seq + SSTable.EXTENSION);
+        try (SSTableWriter writer = new SSTableWriter(path)) {
+            while (entries.hasNext() && writer.size() < maxBytes) {
+                Map.Entry<String, byte[]> entry = entries.next();
+                writer.add(entry.getKey(), entry.getValue());
+            }
+            writer.finish();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return new SSTable(path, seq);
+    }
+
+    private synchronized long nextSeq() {
+        return nextSeq++;
+    }
+
+    private long maxBytes(int level) {
+        long max = level1Bytes;
+        for (int i = 1; i < level; i++) {
+            max *= 10;
+        }
+        return max;
+    }
+
+    private static long bytes(List<SSTable> tables) {
+        return tables.stream().mapToLong(SSTable::size).sum();
+    }
+
+    private static List<SSTable> overlapping(List<SSTable> tables, String min, String max) {
+        return tables.stream().filter(table -> table.overlaps(min, max)).collect(Collectors.toList());
+    }
+
+    // tables of a level >= 1 are sorted and do not overlap.
+    private static SSTable findTable(List<SSTable> tables, String key) {
+        int low = 0;
+        int high = tables.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            SSTable table = tables.get(middle);
+            if (table.lastKey().compareTo(key) < 0) {
+                low = middle + 1;
+            } else if (table.firstKey().compareTo(key) > 0) {
+                high = middle - 1;
+            } else {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    // the tables of a level one after the other, each one is opened when the previous one is exhausted.
+    private static Iterator<Map.Entry<String, byte[]>> concat(List<SSTable> tables, String from) {
+        Iterator<SSTable> candidates = tables.stream()
+                .filter(table -> table.lastKey().compareTo(from) >= 0).collect(Collectors.toList()).iterator();
+        return new Iterator<>() {
+            Iterator<Map.Entry<String, byte[]>> current = Collections.emptyIterator();
+
+            public boolean hasNext() {
+                while (!current.hasNext() && candidates.hasNext()) {
+                    current = candidates.next().iterator(from);
+                }
+                return current.hasNext();
+            }
+
+            public Map.Entry<String, byte[]> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    // manifest lines: "next <seq>" then "<level> <seq>" for each table.
+    private void writeManifest() throws IOException {
+        Path tmp = dir.resolve(MANIFEST + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8))) {
+            synchronized (this) {
+                writer.append("next ").append(Long.toString(nextSeq)).append('\n');
+            }
+            for (int level = 0; level < MAX_LEVEL; level++) {
+                for (SSTable table : levels.get(level)) {
+                    writer.append(Integer.toString(level)).append(' ').append(Long.toString(table.seq())).append('\n');
+                }
+            }
+            writer.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+    }
+
+    private void open() throws IOException {
+        Set<Long> live = new HashSet<>();
+        Path manifest = dir.resolve(MANIFEST);
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                String[] split = line.split(" ");
+                if (split.length != 2) {
+                    continue;
+                }
+                if (split[0].equals("next")) {
+                    nextSeq = Math.max(nextSeq, Long.parseLong(split[1]));
+                } else {
+                    long seq = Long.parseLong(split[1]);
+                    levels.get(Integer.parseInt(split[0])).add(new SSTable(dir.resolve(seq + SSTable.EXTENSION), seq));
+                    live.add(seq);
+                }
+            }
+        }
+        levels.get(0).sort(Comparator.comparingLong(SSTable::seq));
+        for (int level = 1; level < MAX_LEVEL; level++) {
+            levels.get(level).sort(Comparator.comparing(SSTable::firstKey));
+        }
+        List<Path> wals = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                String name = file.getFileName().toString();
+                Long seq = seqOf(name);
+                if (seq != null) {
+                    nextSeq = Math.max(nextSeq, seq + 1);
+                }
+                if (name.endsWith(WriteAheadLog.EXTENSION) && seq != null) {
+                    wals.add(file);
+                } else if ((name.endsWith(SSTable.EXTENSION) && !live.contains(seq)) || name.endsWith(".tmp")) {
+                    // output of an interrupted flush or compaction.
+                    Files.delete(file);
+                }
+            }
+        }
+        wals.sort(Comparator.comparing(path -> seqOf(path.getFileName().toString())));
+        Memtable recovered = new Memtable(null);
+        int batches = 0;
+        for (Path path : wals) {
+            batches += WriteAheadLog.replay(path, recovered::putAll);
+        }
+        if (!recovered.isEmpty()) {
+            SSTable table = writeTable(recovered.iterator(null), Long.MAX_VALUE);
+            levels.get(0).add(table);
+            LOGGER.info("Recovered " + batches + " batches (" + recovered.size() + " keys) from " + wals.size() + " logs of " + dir);
+        }
+        writeManifest();
+        for (Path path : wals) {
+            Files.delete(path);
+        }
+        wal = new WriteAheadLog(dir.resolve(nextSeq() + WriteAheadLog.EXTENSION));
+        memtable = new Memtable(wal.getPath());
+    }
+
+    private static Long seqOf(String name) {
+        int dot = name.indexOf('.');
+        try {
+            return dot > 0 ? Long.parseLong(name.substring(0, dot)) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not supported on every platform.
+        }
+    }
+
+    private static void closeQuietly(SSTable table) {
+        try {
+            table.close();
+        } catch (IOException e) {
+            LOGGER.error("Fail to close " + table, e);
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class Compaction {
+        final int level;
+        // newest first
+        final List<SSTable> inputs;
+
+        Compaction(int level, List<SSTable> inputs) {
+            this.level = level;
+            this.inputs = inputs;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.globsframework.persistence.lsm;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ Sorted in memory writes not yet flushed to a SSTable, backed by the write ahead log walPath.
+ */
+public class Memtable {
+    private final ConcurrentSkipListMap<String, byte[]> entries = new ConcurrentSkipListMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final Path walPath;
+
+    public Memtable(Path walPath) {
+        this.walPath = walPath;
+    }
+
+    public Path walPath() {
+        return walPath;
+    }
+
+    public void putAll(Map<String, byte[]> batch) {
+        for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+            byte[] previous = entries.put(entry.getKey(), entry.getValue());
+            bytes.addAndGet(entry.getValue().length + (previous == null ? 2L * entry.getKey().length() : -previous.length));
+        }
+    }
+
+    public byte[] get(String key) {
+        return entries.get(key);
+    }
+
+    public long bytes() {
+        return bytes.get();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Iterator<Map.Entry<String, byte[]>> iterator(String from) {
+        return (from == null ? entries : entries.tailMap(from)).entrySet().iterator();
+    }
+}
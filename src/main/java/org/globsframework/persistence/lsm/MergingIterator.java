@@ -0,0 +1,65 @@
+package org.globsframework.persistence.lsm;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/*
+ Merge sorted sources into one sorted stream. Sources are given newest first: when several sources
+ contain the same key only the value of the newest one is returned.
+ */
+public class MergingIterator implements Iterator<Map.Entry<String, byte[]>> {
+    private final PriorityQueue<Head> heads = new PriorityQueue<>();
+
+    public MergingIterator(List<Iterator<Map.Entry<String, byte[]>>> sources) {
+        for (int i = 0; i < sources.size(); i++) {
+            Iterator<Map.Entry<String, byte[]>> source = sources.get(i);
+            if (source.hasNext()) {
+                heads.add(new Head(source.next(), source, i));
+            }
+        }
+    }
+
+    public boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    public Map.Entry<String, byte[]> next() {
+        Head head = heads.poll();
+        if (head == null) {
+            throw new NoSuchElementException();
+        }
+        Map.Entry<String, byte[]> result = head.entry;
+        advance(head);
+        while (!heads.isEmpty() && heads.peek().entry.getKey().equals(result.getKey())) {
+            advance(heads.poll());
+        }
+        return result;
+    }
+
+    private void advance(Head head) {
+        if (head.source.hasNext()) {
+            head.entry = head.source.next();
+            heads.add(head);
+        }
+    }
+
+    private static class Head implements Comparable<Head> {
+        Map.Entry<String, byte[]> entry;
+        final Iterator<Map.Entry<String, byte[]>> source;
+        final int priority;
+
+        Head(Map.Entry<String, byte[]> entry, Iterator<Map.Entry<String, byte[]>> source, int priority) {
+            this.entry = entry;
+            this.source = source;
+            this.priority = priority;
+        }
+
+        public int compareTo(Head other) {
+            int compare = entry.getKey().compareTo(other.entry.getKey());
+            return compare != 0 ? compare : Integer.compare(priority, other.priority);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.globsframework.persistence.lsm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32C;
+
+/*
+ Immutable sorted table:
+   header : MAGIC (4 bytes) VERSION (int)
+   block* : length (int) crc32c (int) [keyLength (int) key (utf8) valueLength (int) value]*
+   index  : firstKey (int length + utf8) blockCount (int) [lastKey (int length + utf8) offset (long) length (int)]*
+   bloom  : see BloomFilter
+   footer : indexOffset (long) bloomOffset (long) entryCount (long) MAGIC
+ The index and the bloom filter are kept in memory, a point lookup reads at most one block.
+ */
+public class SSTable implements Closeable {
+    public static final String EXTENSION = ".sst";
+    public static final byte[] MAGIC = {'G', 'S', 'S', 'T'};
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = MAGIC.length + Integer.BYTES;
+    public static final int BLOCK_HEADER_SIZE = 2 * Integer.BYTES;
+    public static final int FOOTER_SIZE = 3 * Long.BYTES + MAGIC.length;
+    private final long seq;
+    private final Path path;
+    private final FileChannel channel;
+    private final long size;
+    private final String firstKey;
+    private final String[] lastKeys;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final BloomFilter bloomFilter;
+    private final long entryCount;
+
+    public SSTable(Path path, long seq) throws IOException {
+        this.path = path;
+        this.seq = seq;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            size = channel.size();
+            if (size < HEADER_SIZE + FOOTER_SIZE) {
+                throw new IOException(path + " is too small to be a SSTable");
+            }
+            ByteBuffer footer = read(size - FOOTER_SIZE, FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            long bloomOffset = footer.getLong();
+            entryCount = footer.getLong();
+            byte[] magic = new byte[MAGIC.length];
+            footer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(path + " is not a SSTable");
+            }
+            ByteBuffer index = read(indexOffset, (int) (bloomOffset - indexOffset));
+            firstKey = getString(index);
+            int blockCount = index.getInt();
+            lastKeys = new String[blockCount];
+            offsets = new long[blockCount];
+            lengths = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                lastKeys[i] = getString(index);
+                offsets[i] = index.getLong();
+                lengths[i] = index.getInt();
+            }
+            bloomFilter = BloomFilter.readFrom(read(bloomOffset, (int) (size - FOOTER_SIZE - bloomOffset)));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long seq() {
+        return seq;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long entryCount() {
+        return entryCount;
+    }
+
+    public String firstKey() {
+        return firstKey;
+    }
+
+    public String lastKey() {
+        return lastKeys.length == 0 ? firstKey : lastKeys[lastKeys.length - 1];
+    }
+
+    public boolean overlaps(String min, String max) {
+        return entryCount != 0 && firstKey.compareTo(max) <= 0 && lastKey().compareTo(min) >= 0;
+    }
+
+    public byte[] get(String key) throws IOException {
+        if (entryCount == 0 || key.compareTo(firstKey) < 0 || !bloomFilter.mightContain(key)) {
+            return null;
+        }
+        int block = findBlock(key);
+        if (block < 0) {
+            return null;
+        }
+        ByteBuffer buffer = readBlock(block);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        while (buffer.hasRemaining()) {
+            int keyLength = buffer.getInt();
+            int keyStart = buffer.arrayOffset() + buffer.position();
+            buffer.position(buffer.position() + keyLength);
+            int valueLength = buffer.getInt();
+            if (Arrays.equals(buffer.array(), keyStart, keyStart + keyLength, keyBytes, 0, keyBytes.length)) {
+                byte[] value = new byte[valueLength];
+                buffer.get(value);
+                return value;
+            }
+            buffer.position(buffer.position() + valueLength);
+        }
+        return null;
+    }
+
+    // entries in key order starting at the first key >= from (null for the first key).
+    public Iterator<Map.Entry<String, byte[]>> iterator(String from) {
+        int startBlock = from == null ? 0 : findBlock(from);
+        return new Iterator<>() {
+            int block = startBlock < 0 ? lastKeys.length : startBlock;
+            ByteBuffer buffer;
+            Map.Entry<String, byte[]> next = advance();
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public Map.Entry<String, byte[]> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, byte[]> current = next;
+                next = advance();
+                return current;
+            }
+
+            private Map.Entry<String, byte[]> advance() {
+                while (true) {
+                    if (buffer == null || !buffer.hasRemaining()) {
+                        if (block >= lastKeys.length) {
+                            return null;
+                        }
+                        try {
+                            buffer = readBlock(block++);
+                        } catch (IOException e) {
+                            throw new RuntimeException("Fail to read " + path, e);
+                        }
+                    }
+                    String key = getString(buffer);
+                    byte[] value = new byte[buffer.getInt()];
+                    buffer.get(value);
+                    if (from == null || key.compareTo(from) >= 0) {
+                        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+                    }
+                }
+            }
+        };
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public String toString() {
+        return path.getFileName().toString();
+    }
+
+    static int crc(byte[] data, int offset, int length) {
+        CRC32C crc32C = new CRC32C();
+        crc32C.update(data, offset, length);
+        return (int) crc32C.getValue();
+    }
+
+    // first block whose last key is >= key, -1 if none.
+    private int findBlock(String key) {
+        int low = 0;
+        int high = lastKeys.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (lastKeys[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low < lastKeys.length ? low : -1;
+    }
+
+    private ByteBuffer readBlock(int block) throws IOException {
+        ByteBuffer buffer = read(offsets[block], BLOCK_HEADER_SIZE + lengths[block]);
+        int length = buffer.getInt();
+        int crc = buffer.getInt();
+        if (length != lengths[block] || crc(buffer.array(), BLOCK_HEADER_SIZE, length) != crc) {
+            throw new IOException("Corrupted block " + block + " in " + path);
+        }
+        return ByteBuffer.wrap(buffer.array(), BLOCK_HEADER_SIZE, length).slice();
+    }
+
+    // positional read, safe to call from several threads.
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + path);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,154 @@
+package org.globsframework.persistence.lsm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ Write a SSTable from keys given in ascending order (see SSTable for the layout).
+ */
+public class SSTableWriter implements Closeable {
+    public static final int BLOCK_SIZE = 16 * 1024;
+    private final Path path;
+    private final FileChannel channel;
+    private ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+    private final List<byte[]> blockLastKeys = new ArrayList<>();
+    private final List<Long> blockOffsets = new ArrayList<>();
+    private final List<Integer> blockLengths = new ArrayList<>();
+    private long[] keyHashes = new long[1024];
+    private int count;
+    private byte[] firstKey;
+    private byte[] lastKey;
+    private long position;
+    private boolean finished;
+
+    public SSTableWriter(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(SSTable.HEADER_SIZE);
+        header.put(SSTable.MAGIC);
+        header.putInt(SSTable.VERSION);
+        header.flip();
+        writeFully(header);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public void add(String key, byte[] value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int size = 2 * Integer.BYTES + keyBytes.length + value.length;
+        if (block.position() > 0 && block.position() + size > BLOCK_SIZE) {
+            flushBlock();
+        }
+        if (block.remaining() < size) {
+            ByteBuffer bigger = ByteBuffer.allocate(block.position() + size);
+            block.flip();
+            bigger.put(block);
+            block = bigger;
+        }
+        block.putInt(keyBytes.length);
+        block.put(keyBytes);
+        block.putInt(value.length);
+        block.put(value);
+        if (firstKey == null) {
+            firstKey = keyBytes;
+        }
+        lastKey = keyBytes;
+        if (count == keyHashes.length) {
+            keyHashes = Arrays.copyOf(keyHashes, count * 2);
+        }
+        keyHashes[count++] = BloomFilter.hash(key);
+    }
+
+    public int count() {
+        return count;
+    }
+
+    // bytes written so far.
+    public long size() {
+        return position + block.position();
+    }
+
+    // write the index, the bloom filter and the footer then fsync.
+    public void finish() throws IOException {
+        flushBlock();
+        long indexOffset = position;
+        int indexSize = Integer.BYTES + (firstKey == null ? 0 : firstKey.length) + Integer.BYTES;
+        for (byte[] key : blockLastKeys) {
+            indexSize += Integer.BYTES + key.length + Long.BYTES + Integer.BYTES;
+        }
+        ByteBuffer index = ByteBuffer.allocate(indexSize);
+        putBytes(index, firstKey == null ? new byte[0] : firstKey);
+        index.putInt(blockLastKeys.size());
+        for (int i = 0; i < blockLastKeys.size(); i++) {
+            putBytes(index, blockLastKeys.get(i));
+            index.putLong(blockOffsets.get(i));
+            index.putInt(blockLengths.get(i));
+        }
+        index.flip();
+        writeFully(index);
+
+        long bloomOffset = position;
+        BloomFilter bloomFilter = BloomFilter.create(keyHashes, count);
+        ByteBuffer bloom = ByteBuffer.allocate(bloomFilter.serializedSize());
+        bloomFilter.writeTo(bloom);
+        bloom.flip();
+        writeFully(bloom);
+
+        ByteBuffer footer = ByteBuffer.allocate(SSTable.FOOTER_SIZE);
+        footer.putLong(indexOffset);
+        footer.putLong(bloomOffset);
+        footer.putLong(count);
+        footer.put(SSTable.MAGIC);
+        footer.flip();
+        writeFully(footer);
+        channel.force(true);
+        finished = true;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void flushBlock() throws IOException {
+        if (block.position() == 0) {
+            return;
+        }
+        int length = block.position();
+        ByteBuffer header = ByteBuffer.allocate(SSTable.BLOCK_HEADER_SIZE);
+        header.putInt(length);
+        header.putInt(SSTable.crc(block.array(), 0, length));
+        header.flip();
+        blockLastKeys.add(lastKey);
+        blockOffsets.add(position);
+        blockLengths.add(length);
+        writeFully(header);
+        block.flip();
+        writeFully(block);
+        block = ByteBuffer.allocate(BLOCK_SIZE);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] value) {
+        buffer.putInt(value.length);
+        buffer.put(value);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer);
+        }
+    }
+}
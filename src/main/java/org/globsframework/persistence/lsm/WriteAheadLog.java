@@ -0,0 +1,114 @@
+package org.globsframework.persistence.lsm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/*
+ Log of the writes of the current memtable, one record per batch:
+   record : length (int) crc32c (int) count (int) [keyLength (int) key (utf8) valueLength (int) value]*
+ A batch is applied completely or not at all at replay: the replay stops at the first torn or corrupted record.
+ */
+public class WriteAheadLog implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteAheadLog.class);
+    public static final String EXTENSION = ".wal";
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private final Path path;
+    private final FileChannel channel;
+
+    public WriteAheadLog(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public void append(Map<String, byte[]> batch, boolean sync) throws IOException {
+        ByteBuffer buffer = encode(batch);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    static ByteBuffer encode(Map<String, byte[]> batch) {
+        int size = Integer.BYTES;
+        byte[][] keys = new byte[batch.size()][];
+        int i = 0;
+        for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+            keys[i] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            size += 2 * Integer.BYTES + keys[i].length + entry.getValue().length;
+            i++;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + size);
+        buffer.position(RECORD_HEADER_SIZE);
+        buffer.putInt(batch.size());
+        i = 0;
+        for (byte[] value : batch.values()) {
+            buffer.putInt(keys[i].length);
+            buffer.put(keys[i]);
+            buffer.putInt(value.length);
+            buffer.put(value);
+            i++;
+        }
+        buffer.putInt(0, size);
+        buffer.putInt(Integer.BYTES, SSTable.crc(buffer.array(), RECORD_HEADER_SIZE, size));
+        buffer.flip();
+        return buffer;
+    }
+
+    // give each complete batch of the log, return the number of batches read.
+    public static int replay(Path path, Consumer<Map<String, byte[]>> consumer) throws IOException {
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(path));
+        int count = 0;
+        while (content.remaining() >= RECORD_HEADER_SIZE) {
+            int length = content.getInt();
+            int crc = content.getInt();
+            if (length < 0 || length > content.remaining() ||
+                SSTable.crc(content.array(), content.position(), length) != crc) {
+                LOGGER.warn("Incomplete record in " + path + " after " + count + " batches, ignored.");
+                return count;
+            }
+            int end = content.position() + length;
+            int entries = content.getInt();
+            Map<String, byte[]> batch = new LinkedHashMap<>();
+            for (int i = 0; i < entries; i++) {
+                byte[] key = new byte[content.getInt()];
+                content.get(key);
+                byte[] value = new byte[content.getInt()];
+                content.get(value);
+                batch.put(new String(key, StandardCharsets.UTF_8), value);
+            }
+            content.position(end);
+            consumer.accept(batch);
+            count++;
+        }
+        if (content.hasRemaining()) {
+            LOGGER.warn("Incomplete record header in " + path + " after " + count + " batches, ignored.");
+        }
+        return count;
+    }
+}
@@ -0,0 +1,148 @@
+package org.globsframework.persistence.sql;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.globsframework.json.GSonUtils;
+import org.globsframework.json.GlobGSonDeserializer;
+import org.globsframework.metamodel.GlobTypeResolver;
+import org.globsframework.model.Glob;
+import org.globsframework.persistence.RWDataAccess;
+import org.globsframework.persistence.file.StreamingGlobValidator;
+import org.globsframework.sqlstreams.SqlConnection;
+import org.globsframework.sqlstreams.SqlService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+/*
+ Data of a namespace in the globs_data table. The connection is not thread safe: calls are serialized,
+ the prepared statements are created once.
+ */
+public class SqlRWDataAccess implements RWDataAccess {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SqlRWDataAccess.class);
+    private final String namespace;
+    private final GlobTypeResolver typeAccess;
+    private final StreamingGlobValidator validator;
+    private final SqlConnection sqlConnection;
+    private final Connection connection;
+    private final PreparedStatement select;
+    private final PreparedStatement insert;
+    private final PreparedStatement delete;
+
+    public SqlRWDataAccess(SqlService sqlService, String namespace, GlobTypeResolver typeAccess) {
+        this.namespace = namespace;
+        this.typeAccess = typeAccess;
+        this.validator = new StreamingGlobValidator(typeAccess);
+        sqlConnection = sqlService.getDb();
+        connection = sqlConnection.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            SqlTables.create(connection);
+            select = connection.prepareStatement("SELECT json FROM " + SqlTables.DATA + " WHERE namespace = ? AND uuid = ?");
+            insert = connection.prepareStatement("INSERT INTO " + SqlTables.DATA + " (namespace, uuid, json) VALUES (?, ?, ?)");
+            delete = connection.prepareStatement("DELETE FROM " + SqlTables.DATA + " WHERE namespace = ? AND uuid = ?");
+        } catch (SQLException e) {
+            String s = "Fail to prepare data statements for " + namespace;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+    }
+
+    public Glob getData(String uuid) {
+        String json = getRawData(uuid);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return GlobGSonDeserializer.read(new JsonReader(new StringReader(json)), typeAccess);
+        } catch (IOException e) {
+            throw new RuntimeException("Fail to read " + uuid, e);
+        }
+    }
+
+    public synchronized String getRawData(String uuid) {
+        try {
+            select.setString(1, namespace);
+            select.setString(2, uuid);
+            try (ResultSet resultSet = select.executeQuery()) {
+                String json = resultSet.next() ? resultSet.getString(1) : null;
+                connection.commit();
+                return json;
+            }
+        } catch (SQLException e) {
+            String s = "Fail to read " + uuid + " in " + namespace;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+    }
+
+    public String save(Glob glob) {
+        String uuid = UUID.randomUUID().toString();
+        write(uuid, GSonUtils.encode(glob, true), false);
+        return uuid;
+    }
+
+    public String saveRaw(Reader json) {
+        String uuid = UUID.randomUUID().toString();
+        StringWriter writer = new StringWriter();
+        try {
+            JsonWriter jsonWriter = new JsonWriter(writer);
+            validator.copy(new JsonReader(json), jsonWriter);
+            jsonWriter.flush();
+        } catch (IOException | RuntimeException e) {
+            String message = "Invalid data for " + uuid + " : " + e.getMessage();
+            LOGGER.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+        write(uuid, writer.toString(), false);
+        return uuid;
+    }
+
+    public void put(String uuid, String json) {
+        write(uuid, json, true);
+    }
+
+    private synchronized void write(String uuid, String json, boolean replace) {
+        try {
+            if (replace) {
+                delete.setString(1, namespace);
+                delete.setString(2, uuid);
+                delete.executeUpdate();
+            }
+            insert.setString(1, namespace);
+            insert.setString(2, uuid);
+            insert.setString(3, json);
+            insert.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackException) {
+                e.addSuppressed(rollbackException);
+            }
+            String s = "Fail to write " + uuid + " in " + namespace;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+    }
+
+    public synchronized void shutdown() {
+        try {
+            select.close();
+            insert.close();
+            delete.close();
+        } catch (SQLException e) {
+            LOGGER.error("Fail to close statements of " + namespace, e);
+        }
+        sqlConnection.commitAndClose();
+    }
+}
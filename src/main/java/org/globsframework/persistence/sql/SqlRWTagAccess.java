@@ -0,0 +1,258 @@
+package org.globsframework.persistence.sql;
+
+import com.google.gson.stream.JsonReader;
+import org.globsframework.json.GSonUtils;
+import org.globsframework.json.GlobGSonDeserializer;
+import org.globsframework.metamodel.GlobTypeResolver;
+import org.globsframework.model.Glob;
+import org.globsframework.persistence.RWTagAccess;
+import org.globsframework.persistence.file.TagLogDurability;
+import org.globsframework.sqlstreams.SqlConnection;
+import org.globsframework.sqlstreams.SqlService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Tags of a namespace in the globs_tags table, appended like in a tag log: the row with the highest seq of an uuid and
+ a type is the current tag, compact() deletes the others.
+ Inserts are batched, when save returns depends on the durability mode:
+   ASYNC        : a batch is sent when BATCH_SIZE tags are pending, every FLUSH_PERIOD_MS, or on sync(). A failed batch
+                  is lost: the only mode where a returned save can be lost.
+   GROUP_COMMIT : save waits for the commit of its batch, sent every groupCommitMillis or groupCommitRecords tags.
+   SYNC         : save commits its tags.
+ A failed batch fails every later save (the tags of the namespace are not written anymore).
+ listAll() reads the table with a cursor (fetch size) ordered by uuid: the table is never loaded in memory at once.
+ */
+public class SqlRWTagAccess implements RWTagAccess {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SqlRWTagAccess.class);
+    public static final int BATCH_SIZE = 500;
+    public static final int FETCH_SIZE = 1000;
+    public static final int FLUSH_PERIOD_MS = 200;
+    private final String namespace;
+    private final GlobTypeResolver typeAccess;
+    private final SqlConnection sqlConnection;
+    private final Connection connection;
+    private final PreparedStatement insert;
+    private final ScheduledExecutorService flushExecutor;
+    private final TagLogDurability durability;
+    private final int batchSize;
+    private volatile Exception flushError;
+    private long seq;
+    private long committedSeq;
+    private int pending;
+
+    public SqlRWTagAccess(SqlService sqlService, String namespace, GlobTypeResolver typeAccess) {
+        this(sqlService, namespace, typeAccess, TagLogDurability.ASYNC);
+    }
+
+    public SqlRWTagAccess(SqlService sqlService, String namespace, GlobTypeResolver typeAccess, TagLogDurability durability) {
+        this.namespace = namespace;
+        this.typeAccess = typeAccess;
+        this.durability = durability;
+        batchSize = durability.mode == TagLogDurability.Mode.GROUP_COMMIT ? durability.groupCommitRecords : BATCH_SIZE;
+        sqlConnection = sqlService.getDb();
+        connection = sqlConnection.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            SqlTables.create(connection);
+            try (PreparedStatement maxSeq = connection.prepareStatement("SELECT MAX(seq) FROM " + SqlTables.TAGS + " WHERE namespace = ?")) {
+                maxSeq.setString(1, namespace);
+                try (ResultSet resultSet = maxSeq.executeQuery()) {
+                    seq = resultSet.next() ? resultSet.getLong(1) : 0;
+                }
+            }
+            connection.commit();
+            committedSeq = seq;
+            insert = connection.prepareStatement("INSERT INTO " + SqlTables.TAGS + " (namespace, seq, uuid, type_name, json) VALUES (?, ?, ?, ?, ?)");
+        } catch (SQLException e) {
+            String s = "Fail to prepare tag statements for " + namespace;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sql-tags-flush " + namespace);
+            thread.setDaemon(true);
+            return thread;
+        });
+        int flushPeriod = durability.mode == TagLogDurability.Mode.GROUP_COMMIT ? durability.groupCommitMillis : FLUSH_PERIOD_MS;
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, flushPeriod, flushPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    public void save(String uuid, Glob[] tags) {
+        String[] jsons = new String[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            jsons[i] = GSonUtils.encode(tags[i], true);
+        }
+        synchronized (this) {
+            checkNoFlushError();
+            try {
+                for (int i = 0; i < tags.length; i++) {
+                    insert.setString(1, namespace);
+                    insert.setLong(2, ++seq);
+                    insert.setString(3, uuid);
+                    insert.setString(4, tags[i].getType().getName());
+                    insert.setString(5, jsons[i]);
+                    insert.addBatch();
+                }
+                pending += tags.length;
+                long saved = seq;
+                if (durability.mode == TagLogDurability.Mode.SYNC || pending >= batchSize) {
+                    flush();
+                }
+                if (durability.mode == TagLogDurability.Mode.GROUP_COMMIT) {
+                    while (committedSeq < saved) {
+                        checkNoFlushError();
+                        wait();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                String s = "Interrupted while waiting the commit of the tags of " + uuid + " in " + namespace;
+                LOGGER.error(s, e);
+                throw new RuntimeException(s, e);
+            } catch (SQLException e) {
+                String s = "Fail to save tags of " + uuid + " in " + namespace;
+                LOGGER.error(s, e);
+                throw new RuntimeException(s, e);
+            }
+        }
+    }
+
+    public synchronized void sync() {
+        checkNoFlushError();
+        try {
+            flush();
+        } catch (SQLException e) {
+            String s = "Fail to write tags of " + namespace;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+    }
+
+    private synchronized void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            LOGGER.error("Fail to write tags of " + namespace, e);
+        }
+    }
+
+    private void checkNoFlushError() {
+        if (flushError != null) {
+            throw new RuntimeException("Tags of " + namespace + " are not written since a batch failed", flushError);
+        }
+    }
+
+    // called with the lock; on failure the batch is lost and the error is kept to fail the next saves.
+    private void flush() throws SQLException {
+        if (pending == 0) {
+            return;
+        }
+        int count = pending;
+        pending = 0;
+        try {
+            insert.executeBatch();
+            connection.commit();
+            committedSeq = seq;
+        } catch (SQLException e) {
+            SQLException error = new SQLException("Fail to insert " + count + " tags", e);
+            try {
+                insert.clearBatch();
+                connection.rollback();
+            } catch (SQLException rollbackError) {
+                error.addSuppressed(rollbackError);
+            }
+            flushError = error;
+            throw error;
+        } finally {
+            // saves waiting for the group commit.
+            notifyAll();
+        }
+    }
+
+    public void listAll(TagListener consumer) {
+        flushQuietly();
+        long start = System.nanoTime();
+        long rows = 0;
+        synchronized (this) {
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT uuid, json FROM " + SqlTables.TAGS + " WHERE namespace = ? ORDER BY uuid, seq")) {
+                select.setFetchSize(FETCH_SIZE);
+                select.setString(1, namespace);
+                try (ResultSet resultSet = select.executeQuery()) {
+                    String current = null;
+                    List<Glob> tags = new ArrayList<>();
+                    while (resultSet.next()) {
+                        String uuid = resultSet.getString(1);
+                        if (!uuid.equals(current)) {
+                            if (current != null) {
+                                consumer.accept(current, tags.iterator());
+                                tags = new ArrayList<>();
+                            }
+                            current = uuid;
+                        }
+                        tags.add(GlobGSonDeserializer.read(new JsonReader(new StringReader(resultSet.getString(2))), typeAccess));
+                        rows++;
+                    }
+                    if (current != null) {
+                        consumer.accept(current, tags.iterator());
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | IOException e) {
+                String s = "Fail to read tags of " + namespace;
+                LOGGER.error(s, e);
+                throw new RuntimeException(s, e);
+            }
+        }
+        LOGGER.info(rows + " tags of " + namespace + " read in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+    }
+
+    // delete the tags replaced by a more recent one of the same type.
+    public synchronized void compact() {
+        try (PreparedStatement delete = connection.prepareStatement(
+                "DELETE FROM " + SqlTables.TAGS + " WHERE namespace = ? AND EXISTS (SELECT 1 FROM " + SqlTables.TAGS + " newer" +
+                " WHERE newer.namespace = " + SqlTables.TAGS + ".namespace AND newer.uuid = " + SqlTables.TAGS + ".uuid" +
+                " AND newer.type_name = " + SqlTables.TAGS + ".type_name AND newer.seq > " + SqlTables.TAGS + ".seq)")) {
+            flush();
+            delete.setString(1, namespace);
+            int deleted = delete.executeUpdate();
+            connection.commit();
+            LOGGER.info(deleted + " superseded tags deleted in " + namespace);
+        } catch (SQLException e) {
+            String s = "Fail to compact tags of " + namespace;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+    }
+
+    public void shutdown() {
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            flushQuietly();
+            try {
+                insert.close();
+            } catch (SQLException e) {
+                LOGGER.error("Fail to close statements of " + namespace, e);
+            }
+            sqlConnection.commitAndClose();
+        }
+    }
+}
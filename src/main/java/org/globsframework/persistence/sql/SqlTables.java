@@ -0,0 +1,34 @@
+package org.globsframework.persistence.sql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/*
+ Tables shared by every namespace:
+   globs_data : namespace, uuid, json (one row by data)
+   globs_tags : namespace, seq, uuid, type_name, json (one row by saved tag, the highest seq of an uuid and type wins)
+ */
+public class SqlTables {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SqlTables.class);
+    public static final String DATA = "globs_data";
+    public static final String TAGS = "globs_tags";
+
+    static void create(Connection connection) {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + DATA + " (namespace VARCHAR(255) NOT NULL, uuid VARCHAR(64) NOT NULL, " +
+                              "json TEXT NOT NULL, PRIMARY KEY (namespace, uuid))");
+            statement.execute("CREATE TABLE IF NOT EXISTS " + TAGS + " (namespace VARCHAR(255) NOT NULL, seq BIGINT NOT NULL, " +
+                              "uuid VARCHAR(64) NOT NULL, type_name VARCHAR(255) NOT NULL, json TEXT NOT NULL, PRIMARY KEY (namespace, seq))");
+            statement.execute("CREATE INDEX IF NOT EXISTS " + TAGS + "_uuid ON " + TAGS + " (namespace, uuid, seq)");
+            connection.commit();
+        } catch (SQLException e) {
+            String s = "Fail to create tables";
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+    }
+}
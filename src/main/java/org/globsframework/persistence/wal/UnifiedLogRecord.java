@@ -0,0 +1,102 @@
+package org.globsframework.persistence.wal;
+
+import org.globsframework.json.GSonUtils;
+import org.globsframework.model.Glob;
+import org.globsframework.persistence.file.TagLogFile;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ One write of the persistence: the data (if any) and the tags of an uuid.
+   record : length (int) crc32c (int) seq (long) uuid (short length + utf8) data (int length + utf8, -1 if none)
+            tagCount (int) [typeName (short length + utf8) json (int length + utf8)]*
+ */
+public class UnifiedLogRecord {
+    public static final int HEADER_SIZE = 2 * Integer.BYTES;
+    public final long seq;
+    public final String uuid;
+    public final String data;
+    public final String[] typeNames;
+    public final String[] tags;
+
+    public UnifiedLogRecord(long seq, String uuid, String data, String[] typeNames, String[] tags) {
+        this.seq = seq;
+        this.uuid = uuid;
+        this.data = data;
+        this.typeNames = typeNames;
+        this.tags = tags;
+    }
+
+    public static byte[] encode(long seq, String uuid, String data, Glob[] tags) {
+        byte[] uuidBytes = uuid.getBytes(StandardCharsets.UTF_8);
+        byte[] dataBytes = data == null ? null : data.getBytes(StandardCharsets.UTF_8);
+        byte[][] typeNames = new byte[tags.length][];
+        byte[][] jsons = new byte[tags.length][];
+        int payloadSize = Long.BYTES + Short.BYTES + uuidBytes.length + Integer.BYTES +
+                          (dataBytes == null ? 0 : dataBytes.length) + Integer.BYTES;
+        for (int i = 0; i < tags.length; i++) {
+            typeNames[i] = tags[i].getType().getName().getBytes(StandardCharsets.UTF_8);
+            jsons[i] = GSonUtils.encode(tags[i], true).getBytes(StandardCharsets.UTF_8);
+            payloadSize += Short.BYTES + typeNames[i].length + Integer.BYTES + jsons[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payloadSize);
+        buffer.position(HEADER_SIZE);
+        buffer.putLong(seq);
+        putShortString(buffer, uuidBytes);
+        if (dataBytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(dataBytes.length);
+            buffer.put(dataBytes);
+        }
+        buffer.putInt(tags.length);
+        for (int i = 0; i < tags.length; i++) {
+            putShortString(buffer, typeNames[i]);
+            buffer.putInt(jsons[i].length);
+            buffer.put(jsons[i]);
+        }
+        buffer.putInt(0, payloadSize);
+        buffer.putInt(Integer.BYTES, TagLogFile.crc(buffer.array(), HEADER_SIZE, payloadSize));
+        return buffer.array();
+    }
+
+    // read the record at the buffer position, null if it is torn or corrupted.
+    public static UnifiedLogRecord decode(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        int length = buffer.getInt();
+        int crc = buffer.getInt();
+        if (length < 0 || length > buffer.remaining() ||
+            TagLogFile.crc(buffer.array(), buffer.arrayOffset() + buffer.position(), length) != crc) {
+            return null;
+        }
+        long seq = buffer.getLong();
+        String uuid = getString(buffer, buffer.getShort());
+        int dataLength = buffer.getInt();
+        String data = dataLength < 0 ? null : getString(buffer, dataLength);
+        int count = buffer.getInt();
+        String[] typeNames = new String[count];
+        String[] tags = new String[count];
+        for (int i = 0; i < count; i++) {
+            typeNames[i] = getString(buffer, buffer.getShort());
+            tags[i] = getString(buffer, buffer.getInt());
+        }
+        return new UnifiedLogRecord(seq, uuid, data, typeNames, tags);
+    }
+
+    private static void putShortString(ByteBuffer buffer, byte[] value) {
+        if (value.length > Short.MAX_VALUE) {
+            throw new RuntimeException("String too long for the log " + value.length);
+        }
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer, int length) {
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,398 @@
+package org.globsframework.persistence.wal;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.globsframework.json.GSonUtils;
+import org.globsframework.json.GlobGSonDeserializer;
+import org.globsframework.metamodel.GlobTypeResolver;
+import org.globsframework.model.Glob;
+import org.globsframework.persistence.RWDataAccess;
+import org.globsframework.persistence.RWTagAccess;
+import org.globsframework.persistence.file.LatencyHistogram;
+import org.globsframework.persistence.file.StreamingGlobValidator;
+import org.globsframework.persistence.file.TagLogFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ Data and tags of a write in one log record: the write is atomic and durable with one fsync, it is applied later
+ to the data and tag stores by a single thread, in log order.
+ A segment of the log is deleted once all its records are applied and the stores synced; at startup the remaining
+ segments are applied again (put() and tags save() can be replayed).
+ Until it is applied the data is read from memory.
+ */
+public class UnifiedWriteAheadLog implements RWDataAccess {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UnifiedWriteAheadLog.class);
+    public static final String EXTENSION = ".ulog";
+    public static final long SEGMENT_BYTES = 64 * 1024 * 1024;
+    private final Path dir;
+    private final RWDataAccess data;
+    private final RWTagAccess tags;
+    private final GlobTypeResolver typeAccess;
+    private final StreamingGlobValidator validator;
+    private final boolean sync;
+    private final LatencyHistogram fsyncLatency = new LatencyHistogram("log fsync");
+    private final Map<String, String> pendingData = new ConcurrentHashMap<>();
+    private final ExecutorService applyExecutor;
+    private final Object appendLock = new Object();
+    private final Object syncLock = new Object();
+    private final AtomicLong syncedSeq = new AtomicLong();
+    // accessed under appendLock
+    private FileChannel channel;
+    private long segmentSeq;
+    private long segmentBytes;
+    private long seq;
+    private boolean stopped;
+    // sealed segments with their last record, deleted by the apply thread.
+    private final Deque<Sealed> sealed = new ArrayDeque<>();
+    private volatile Exception applyError;
+
+    public UnifiedWriteAheadLog(Path dir, RWDataAccess data, RWTagAccess tags, GlobTypeResolver typeAccess, boolean sync) {
+        this.dir = dir;
+        this.data = data;
+        this.tags = tags;
+        this.typeAccess = typeAccess;
+        this.validator = new StreamingGlobValidator(typeAccess);
+        this.sync = sync;
+        recover();
+        try {
+            newSegment();
+        } catch (IOException e) {
+            String s = "Fail to create log in " + dir;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+        applyExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "log-apply " + dir);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public String nextUUID() {
+        return UUID.randomUUID().toString();
+    }
+
+    // data may be null; the tags are saved after the data, both are visible (getData) once this call returns.
+    public void save(String uuid, String json, Glob[] tagsToSave) {
+        if (applyError != null) {
+            throw new RuntimeException("Log of " + dir + " can not be applied", applyError);
+        }
+        Glob[] copy = tagsToSave.clone();
+        long recordSeq;
+        FileChannel written;
+        synchronized (appendLock) {
+            if (stopped) {
+                throw new RuntimeException("Log " + dir + " is closed");
+            }
+            recordSeq = ++seq;
+            ByteBuffer buffer = ByteBuffer.wrap(UnifiedLogRecord.encode(recordSeq, uuid, json, copy));
+            try {
+                while (buffer.hasRemaining()) {
+                    segmentBytes += channel.write(buffer);
+                }
+            } catch (IOException e) {
+                String s = "Fail to write in log " + dir;
+                LOGGER.error(s, e);
+                throw new RuntimeException(s, e);
+            }
+            if (json != null) {
+                pendingData.put(uuid, json);
+            }
+            written = channel;
+            // submitted under the lock to apply in the log order.
+            applyExecutor.execute(() -> apply(recordSeq, uuid, json, copy));
+            if (segmentBytes >= SEGMENT_BYTES) {
+                rotate();
+            }
+        }
+        if (sync) {
+            syncTo(recordSeq, written);
+        }
+    }
+
+    // the validated json of a data pushed as a stream.
+    public String validate(Reader json) {
+        StringWriter writer = new StringWriter();
+        try {
+            JsonWriter jsonWriter = new JsonWriter(writer);
+            validator.copy(new JsonReader(json), jsonWriter);
+            jsonWriter.flush();
+        } catch (IOException | RuntimeException e) {
+            String message = "Invalid data : " + e.getMessage();
+            LOGGER.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+        return writer.toString();
+    }
+
+    // group commit: a single fsync covers every record written before it.
+    private void syncTo(long recordSeq, FileChannel written) {
+        synchronized (syncLock) {
+            if (syncedSeq.get() >= recordSeq) {
+                return;
+            }
+            long target;
+            synchronized (appendLock) {
+                if (channel != written) {
+                    // rotated: the segment was synced when sealed.
+                    return;
+                }
+                target = seq;
+            }
+            long start = System.nanoTime();
+            try {
+                written.force(false);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                String s = "Fail to sync log " + dir;
+                LOGGER.error(s, e);
+                throw new RuntimeException(s, e);
+            }
+            fsyncLatency.record(System.nanoTime() - start);
+            syncedSeq.accumulateAndGet(target, Math::max);
+        }
+    }
+
+    public LatencyHistogram getFsyncLatency() {
+        return fsyncLatency;
+    }
+
+    private void apply(long recordSeq, String uuid, String json, Glob[] tagsToSave) {
+        if (applyError != null) {
+            return;
+        }
+        try {
+            if (json != null) {
+                data.put(uuid, json);
+                pendingData.remove(uuid, json);
+            }
+            if (tagsToSave.length != 0) {
+                tags.save(uuid, tagsToSave);
+            }
+            deleteApplied(recordSeq);
+        } catch (Exception e) {
+            LOGGER.error("Fail to apply " + uuid + " from log " + dir + ", the log is kept for the next start.", e);
+            applyError = e;
+        }
+    }
+
+    private void deleteApplied(long appliedSeq) throws IOException {
+        List<Sealed> toDelete = new ArrayList<>();
+        synchronized (appendLock) {
+            while (!sealed.isEmpty() && sealed.peekFirst().lastSeq <= appliedSeq) {
+                toDelete.add(sealed.pollFirst());
+            }
+        }
+        if (!toDelete.isEmpty()) {
+            data.sync();
+            tags.sync();
+            for (Sealed segment : toDelete) {
+                Files.deleteIfExists(segment.path);
+            }
+        }
+    }
+
+    // called with appendLock.
+    private void rotate() {
+        try {
+            channel.force(false);
+            channel.close();
+            syncedSeq.accumulateAndGet(seq, Math::max);
+            sealed.addLast(new Sealed(segmentPath(segmentSeq), seq));
+            newSegment();
+        } catch (IOException e) {
+            String s = "Fail to rotate log " + dir;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+    }
+
+    private void newSegment() throws IOException {
+        segmentSeq++;
+        segmentBytes = 0;
+        channel = FileChannel.open(segmentPath(segmentSeq), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        TagLogFile.syncDirectory(dir);
+    }
+
+    private Path segmentPath(long seq) {
+        return dir.resolve(seq + EXTENSION);
+    }
+
+    private void recover() {
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(dir)) {
+            segments = files.filter(path -> path.getFileName().toString().endsWith(EXTENSION))
+                    .sorted(Comparator.comparingLong(UnifiedWriteAheadLog::segmentSeqOf))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            String s = "Fail to list " + dir;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+        if (segments.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        int count = 0;
+        try {
+            for (Path segment : segments) {
+                segmentSeq = Math.max(segmentSeq, segmentSeqOf(segment));
+                ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(segment));
+                UnifiedLogRecord record;
+                while ((record = UnifiedLogRecord.decode(content)) != null) {
+                    if (record.data != null) {
+                        data.put(record.uuid, record.data);
+                    }
+                    if (record.tags.length != 0) {
+                        tags.save(record.uuid, decodeTags(record));
+                    }
+                    count++;
+                }
+                if (content.hasRemaining()) {
+                    LOGGER.warn("Incomplete record in " + segment + " after " + count + " records, ignored.");
+                }
+            }
+            data.sync();
+            tags.sync();
+            for (Path segment : segments) {
+                Files.delete(segment);
+            }
+        } catch (IOException e) {
+            String s = "Fail to replay log " + dir;
+            LOGGER.error(s, e);
+            throw new RuntimeException(s, e);
+        }
+        LOGGER.info("Replayed " + count + " records from " + segments.size() + " segments of " + dir + " in " +
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+    }
+
+    private Glob[] decodeTags(UnifiedLogRecord record) throws IOException {
+        Glob[] result = new Glob[record.tags.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = GlobGSonDeserializer.read(new JsonReader(new StringReader(record.tags[i])), typeAccess);
+        }
+        return result;
+    }
+
+    private static long segmentSeqOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - EXTENSION.length()));
+    }
+
+    public Glob getData(String uuid) {
+        String json = pendingData.get(uuid);
+        if (json == null) {
+            return data.getData(uuid);
+        }
+        try {
+            return GlobGSonDeserializer.read(new JsonReader(new StringReader(json)), typeAccess);
+        } catch (IOException e) {
+            throw new RuntimeException("Fail to read " + uuid, e);
+        }
+    }
+
+    public String getRawData(String uuid) {
+        String json = pendingData.get(uuid);
+        return json != null ? json : data.getRawData(uuid);
+    }
+
+    public String save(Glob glob) {
+        String uuid = nextUUID();
+        save(uuid, GSonUtils.encode(glob, true), new Glob[0]);
+        return uuid;
+    }
+
+    public String saveRaw(Reader json) {
+        String uuid = nextUUID();
+        save(uuid, validate(json), new Glob[0]);
+        return uuid;
+    }
+
+    // the tags written through the log, read from the tag store.
+    public RWTagAccess tagAccess() {
+        return new RWTagAccess() {
+            public void save(String uuid, Glob[] tagsToSave) {
+                UnifiedWriteAheadLog.this.save(uuid, null, tagsToSave);
+            }
+
+            public void listAll(TagListener consumer) {
+                tags.listAll(consumer);
+            }
+
+            public Checkpoint checkpoint() {
+                return tags.checkpoint();
+            }
+
+            public void compact() {
+                tags.compact();
+            }
+
+            public void shutdown() {
+                tags.shutdown();
+            }
+        };
+    }
+
+    // apply the pending records, then shutdown the data store: the tag store is shutdown by tagAccess().
+    public void shutdown() {
+        synchronized (appendLock) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+        }
+        applyExecutor.shutdown();
+        try {
+            applyExecutor.awaitTermination(10, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (appendLock) {
+            try {
+                channel.force(false);
+                channel.close();
+                sealed.addLast(new Sealed(segmentPath(segmentSeq), seq));
+                if (applyError == null) {
+                    deleteApplied(seq);
+                }
+            } catch (IOException e) {
+                LOGGER.error("Fail to close log " + dir, e);
+            }
+        }
+        if (fsyncLatency.count() != 0) {
+            LOGGER.info(fsyncLatency.toString());
+        }
+        data.shutdown();
+    }
+
+    private static class Sealed {
+        final Path path;
+        final long lastSeq;
+
+        Sealed(Path path, long lastSeq) {
+            this.path = path;
+            this.lastSeq = lastSeq;
+        }
+    }
+}
@@ -20,10 +20,13 @@ import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
@@ -128,6 +131,35 @@ public class PersistenceTest {
 
     }
 
+    @Test
+    public void tagsAreVisibleOnceSaved() {
+        DeferredRWTagAccess tagAccess = new DeferredRWTagAccess();
+        InMemoryPersistence persistence = new InMemoryPersistence(new InMemoryRWDataAccess(), tagAccess);
+        List<Glob> changes = new ArrayList<>();
+        persistence.listen(OwnerTagInfo.TYPE, null, new Persistence.OnChange() {
+            public void change(GlobType type, Glob oldValue, Glob newValue, List<Glob> additionalTags) {
+                changes.add(newValue);
+            }
+        }, null);
+
+        CompletableFuture<String> failed = persistence.pushDataAsync(PriceRule.TYPE.instantiate().set(PriceRule.name, "rule"),
+                new MutableGlob[]{OwnerTagInfo.TYPE.instantiate().set(OwnerTagInfo.NAME, "Pablo")});
+        Assert.assertTrue(persistence.list(OwnerTagInfo.TYPE, null).isEmpty());
+        tagAccess.pending.remove(0).completeExceptionally(new IOException("disk full"));
+        Assert.assertTrue(failed.isCompletedExceptionally());
+        Assert.assertTrue(persistence.list(OwnerTagInfo.TYPE, null).isEmpty());
+        Assert.assertEquals(0, persistence.loadedCount());
+        Assert.assertTrue(changes.isEmpty());
+
+        CompletableFuture<String> saved = persistence.pushDataAsync(PriceRule.TYPE.instantiate().set(PriceRule.name, "rule"),
+                new MutableGlob[]{OwnerTagInfo.TYPE.instantiate().set(OwnerTagInfo.NAME, "Pablo")});
+        Assert.assertTrue(changes.isEmpty());
+        tagAccess.pending.remove(0).complete(null);
+        Assert.assertNotNull(saved.join());
+        Assert.assertEquals(1, persistence.list(OwnerTagInfo.TYPE, null).size());
+        Assert.assertEquals(1, changes.size());
+    }
+
     static public class OwnerTagInfo {
         public static GlobType TYPE;
 
@@ -242,4 +274,27 @@ public class PersistenceTest {
 
         }
     }
-}
\ No newline at end of file
+
+    // the tags are saved when the test completes the future.
+    private static class DeferredRWTagAccess implements RWTagAccess {
+        final List<CompletableFuture<Void>> pending = new ArrayList<>();
+
+        public CompletableFuture<Void> append(String uuid, Glob[] tags) {
+            CompletableFuture<Void> saved = new CompletableFuture<>();
+            pending.add(saved);
+            return saved;
+        }
+
+        public void save(String uuid, Glob[] tags) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void listAll(TagListener consumer) {
+
+        }
+
+        public void shutdown() {
+
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.globsframework.persistence;
+
+import org.globsframework.metamodel.GlobType;
+import org.globsframework.model.Glob;
+import org.globsframework.model.MutableGlob;
+import org.globsframework.sqlstreams.constraints.Constraint;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class SingleWriterPersistenceTest {
+
+    @Test
+    public void writesAreAppliedInOrderByTheWriter() {
+        WriterPartitions partitions = new WriterPartitions(2);
+        DeferredPersistence deferred = new DeferredPersistence();
+        SingleWriterPersistence persistence = new SingleWriterPersistence(deferred, partitions.get("namespace"));
+        List<MutableGlob[]> pushed = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            MutableGlob[] tags = new MutableGlob[0];
+            pushed.add(tags);
+            persistence.pushDataAsync(null, tags);
+        }
+        Assert.assertEquals(pushed, deferred.applied);
+        Assert.assertEquals(Collections.singleton(partitions.get("namespace").call(Thread::currentThread)), deferred.threads);
+        partitions.shutdown();
+    }
+
+    @Test
+    public void durableWritesAreCommittedTogether() throws Exception {
+        WriterPartitions partitions = new WriterPartitions(1);
+        DeferredPersistence deferred = new DeferredPersistence();
+        SingleWriterPersistence persistence = new SingleWriterPersistence(deferred, partitions.get("namespace"));
+        // another namespace on the same writer thread.
+        DeferredPersistence otherDeferred = new DeferredPersistence();
+        SingleWriterPersistence other = new SingleWriterPersistence(otherDeferred, partitions.get("other"));
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        List<Future<String>> pushes = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            pushes.add(clients.submit(() -> persistence.pushData(null, new MutableGlob[0])));
+        }
+        // every push is applied while none is durable: the writer does not wait for the fsync.
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (deferred.appliedCount() < 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(8, deferred.appliedCount());
+        Assert.assertEquals(0, pushes.stream().filter(Future::isDone).count());
+        // nor is the other namespace.
+        other.pushDataAsync(null, new MutableGlob[0]);
+        Assert.assertEquals(1, otherDeferred.appliedCount());
+
+        // one fsync for all of them.
+        deferred.commit();
+        HashSet<String> keys = new HashSet<>();
+        for (Future<String> push : pushes) {
+            keys.add(push.get(10, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(8, keys.size());
+        clients.shutdown();
+        partitions.shutdown();
+    }
+
+    // the writes are durable once commit is called.
+    private static class DeferredPersistence implements Persistence {
+        final List<MutableGlob[]> applied = new ArrayList<>();
+        final Set<Thread> threads = new HashSet<>();
+        private final List<CompletableFuture<String>> pending = new ArrayList<>();
+
+        public synchronized CompletableFuture<String> pushDataAsync(Glob data, MutableGlob[] tags) {
+            applied.add(tags);
+            threads.add(Thread.currentThread());
+            CompletableFuture<String> durable = new CompletableFuture<>();
+            pending.add(durable);
+            return durable.thenApply(v -> "uuid " + applied.indexOf(tags));
+        }
+
+        synchronized int appliedCount() {
+            return applied.size();
+        }
+
+        synchronized void commit() {
+            pending.forEach(future -> future.complete(null));
+            pending.clear();
+        }
+
+        public String pushData(Glob data, MutableGlob[] tags) {
+            throw new UnsupportedOperationException();
+        }
+
+        public String pushRawData(Reader data, MutableGlob[] tags) {
+            throw new UnsupportedOperationException();
+        }
+
+        public List<Glob> list(GlobType type, Constraint constraint) {
+            return Collections.emptyList();
+        }
+
+        public Glob getData(Glob tag) {
+            return null;
+        }
+
+        public String getRawData(Glob tag) {
+            return null;
+        }
+
+        public Listener listen(GlobType type, Constraint constraint, OnChange consumer, GlobType[] additionalWantedTags) {
+            throw new UnsupportedOperationException();
+        }
+
+        public String updateTag(Glob tag, MutableGlob[] globs) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void shutdown() {
+        }
+    }
+}
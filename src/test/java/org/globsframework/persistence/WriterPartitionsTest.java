@@ -0,0 +1,34 @@
+package org.globsframework.persistence;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WriterPartitionsTest {
+
+    @Test
+    public void sameKeySameThread() {
+        WriterPartitions partitions = new WriterPartitions(4);
+        WriterPartitions.Partition partition = partitions.get("namespace");
+        Assert.assertSame(partition, partitions.get("namespace"));
+        Thread writer = partition.call(Thread::currentThread);
+        Assert.assertNotSame(Thread.currentThread(), writer);
+        Assert.assertSame(writer, partition.call(Thread::currentThread));
+        // a write done while writing runs at once instead of waiting for itself.
+        Assert.assertSame(writer, partition.call(() -> partition.call(Thread::currentThread)));
+        partitions.shutdown();
+    }
+
+    @Test
+    public void exceptionIsRethrown() {
+        WriterPartitions partitions = new WriterPartitions(1);
+        try {
+            partitions.get("a").call(() -> {
+                throw new IllegalStateException("write failed");
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("write failed", e.getMessage());
+        }
+        partitions.shutdown();
+    }
+}
@@ -1,6 +1,7 @@
 package org.globsframework.persistence.file;
 
 import junit.framework.Assert;
+import org.globsframework.json.GlobsGson;
 import org.globsframework.metamodel.GlobType;
 import org.globsframework.metamodel.GlobTypeLoaderFactory;
 import org.globsframework.metamodel.annotations.AllAnnotations;
@@ -12,6 +13,7 @@ import org.globsframework.persistence.PersistenceTest;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -28,7 +30,9 @@ public class DefaultFileGlobTypeAccessTest {
             typeAccess.declare(PersistenceTest.PriceRuleTagInfo.TYPE);
             typeAccess.declare(Type1.TYPE);
             Assert.assertNotNull(typeAccess.find(PersistenceTest.OwnerTagInfo.TYPE.getName()));
+            typeAccess.shutdown();
         }
+        Assert.assertTrue(Files.exists(tempFile.resolve(DefaultFileGlobTypeAccess.MANIFEST)));
         {
             FileGlobTypeAccess typeAccess = new DefaultFileGlobTypeAccess(AllAnnotations.MODEL::findType, tempFile);
             Assert.assertNotNull(typeAccess.find(PersistenceTest.OwnerTagInfo.TYPE.getName()));
@@ -38,6 +42,25 @@ public class DefaultFileGlobTypeAccessTest {
         org.globsframework.utils.Files.deleteWithSubtree(tempFile.toFile());
     }
 
+    @Test
+    public void convertOneFilePerType() throws IOException {
+        Path tempFile = Files.createTempDirectory("testFileGobTypeLegacy");
+        Files.write(tempFile.resolve(Type2.TYPE.getName() + ".json"),
+                GlobsGson.create(null).toJson(Type2.TYPE).getBytes(StandardCharsets.UTF_8));
+        {
+            FileGlobTypeAccess typeAccess = new DefaultFileGlobTypeAccess(AllAnnotations.MODEL::findType, tempFile);
+            Assert.assertNotNull(typeAccess.find(Type2.TYPE.getName()));
+            typeAccess.shutdown();
+        }
+        Assert.assertFalse(Files.exists(tempFile.resolve(Type2.TYPE.getName() + ".json")));
+        {
+            FileGlobTypeAccess typeAccess = new DefaultFileGlobTypeAccess(AllAnnotations.MODEL::findType, tempFile);
+            Assert.assertNotNull(typeAccess.find(Type2.TYPE.getName()));
+            typeAccess.shutdown();
+        }
+        org.globsframework.utils.Files.deleteWithSubtree(tempFile.toFile());
+    }
+
     public static class Type1{
         public static GlobType TYPE;
 
@@ -1,15 +1,20 @@
 package org.globsframework.persistence.file;
 
+import org.globsframework.json.GSonUtils;
 import org.globsframework.model.Glob;
 import org.globsframework.persistence.PersistenceTest;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 public class FileRWDataAccessTest {
 
@@ -31,7 +36,76 @@ public class FileRWDataAccessTest {
             Glob data = fileRWDataAccess.getData(s.getKey());
             Assert.assertNotNull(data);
             Assert.assertEquals(data.get(PersistenceTest.PriceRule.name), "VP " + s.getValue());
+            Assert.assertEquals(GSonUtils.encode(data, true), fileRWDataAccess.getRawData(s.getKey()));
         }
         org.globsframework.utils.Files.deleteWithSubtree(tempFile.toFile());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void durableSave() throws IOException {
+        Path tempFile = Files.createTempDirectory("testRWAccessDurable");
+        FileRWDataAccess fileRWDataAccess = new FileRWDataAccess(tempFile.toFile(), PersistenceTest.globTypes::getType, TagLogDurability.SYNC);
+        Glob glob = PersistenceTest.PriceRule.TYPE.instantiate().set(PersistenceTest.PriceRule.name, "VP");
+        String uuid = fileRWDataAccess.save(glob);
+        String rawUuid = fileRWDataAccess.saveRaw(new StringReader(GSonUtils.encode(glob, true)));
+        Assert.assertEquals("VP", fileRWDataAccess.getData(uuid).get(PersistenceTest.PriceRule.name));
+        Assert.assertEquals("VP", fileRWDataAccess.getData(rawUuid).get(PersistenceTest.PriceRule.name));
+        fileRWDataAccess.shutdown();
+        org.globsframework.utils.Files.deleteWithSubtree(tempFile.toFile());
+    }
+
+    @Test
+    public void saveRaw() throws IOException {
+        Path tempFile = Files.createTempDirectory("testRWAccessRaw");
+        FileRWDataAccess fileRWDataAccess = new FileRWDataAccess(tempFile.toFile(), PersistenceTest.globTypes::getType);
+        Glob glob = PersistenceTest.PriceRule.TYPE.instantiate().set(PersistenceTest.PriceRule.name, "VP")
+                .set(PersistenceTest.PriceRule.price, new Glob[]{PersistenceTest.PriceBySku.TYPE.instantiate().set(PersistenceTest.PriceBySku.sku, "sku")
+                        .set(PersistenceTest.PriceBySku.value, 3.1415)});
+        String uuid = fileRWDataAccess.saveRaw(new StringReader(GSonUtils.encode(glob, true)));
+        Glob data = fileRWDataAccess.getData(uuid);
+        Assert.assertEquals("VP", data.get(PersistenceTest.PriceRule.name));
+        Assert.assertEquals(3.1415, data.get(PersistenceTest.PriceRule.price)[0].get(PersistenceTest.PriceBySku.value), 0.);
+
+        try {
+            fileRWDataAccess.saveRaw(new StringReader("{\"_kind\":\"" + PersistenceTest.PriceRule.TYPE.getName() + "\",\"name\":12}"));
+            Assert.fail("a number is not a string");
+        } catch (RuntimeException e) {
+        }
+        try (Stream<Path> files = Files.walk(tempFile)) {
+            Assert.assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+        org.globsframework.utils.Files.deleteWithSubtree(tempFile.toFile());
+    }
+
+    @Test
+    public void migrateLegacyLayout() throws Exception {
+        Path tempFile = Files.createTempDirectory("testRWAccessLegacy");
+        FileRWDataAccess fileRWDataAccess = new FileRWDataAccess(tempFile.toFile(), PersistenceTest.globTypes::getType);
+        List<String> uuids = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String uuid = fileRWDataAccess.save(PersistenceTest.PriceRule.TYPE.instantiate().set(PersistenceTest.PriceRule.name, "VP " + i));
+            Path sharded = tempFile.resolve(uuid.substring(0, 2)).resolve(uuid.substring(2, 4)).resolve(uuid + ".json");
+            Assert.assertTrue(Files.exists(sharded));
+            Files.move(sharded, tempFile.resolve(uuid + ".json"));
+            uuids.add(uuid);
+        }
+        fileRWDataAccess.shutdown();
+        Path other = Files.createFile(tempFile.resolve("2020-01-01T00:00:00.tlog"));
+
+        fileRWDataAccess = new FileRWDataAccess(tempFile.toFile(), PersistenceTest.globTypes::getType);
+        for (int i = 0; i < uuids.size(); i++) {
+            Assert.assertEquals("VP " + i, fileRWDataAccess.getData(uuids.get(i)).get(PersistenceTest.PriceRule.name));
+        }
+        long end = System.currentTimeMillis() + 10000;
+        while (uuids.stream().anyMatch(uuid -> Files.exists(tempFile.resolve(uuid + ".json"))) && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        for (int i = 0; i < uuids.size(); i++) {
+            Assert.assertFalse(Files.exists(tempFile.resolve(uuids.get(i) + ".json")));
+            Assert.assertEquals("VP " + i, fileRWDataAccess.getData(uuids.get(i)).get(PersistenceTest.PriceRule.name));
+        }
+        Assert.assertTrue(Files.exists(other));
+        fileRWDataAccess.shutdown();
+        org.globsframework.utils.Files.deleteWithSubtree(tempFile.toFile());
+    }
+}
@@ -8,9 +8,21 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class FileRWTagAccessTest {
 
@@ -52,4 +64,380 @@ public class FileRWTagAccessTest {
         }
         org.globsframework.utils.Files.deleteWithSubtree(tempFile.toFile());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void tornTailIsTruncated() throws IOException {
+        Path tempFile = Files.createTempDirectory("testRWAccessTagTorn");
+        Set<String> uuids = new HashSet<>();
+        {
+            FileRWTagAccess fileRWTagAccess =
+                    new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+            for (int i = 0; i < 100; i++) {
+                String uuid = UUID.randomUUID().toString();
+                fileRWTagAccess.save(uuid, new Glob[]{
+                        PersistenceTest.OwnerTagInfo.TYPE.instantiate().set(PersistenceTest.OwnerTagInfo.UUID, uuid).set(PersistenceTest.OwnerTagInfo.NAME, "name " + i)});
+                uuids.add(uuid);
+            }
+            fileRWTagAccess.shutdown();
+        }
+        List<Path> logs = Files.list(tempFile).filter(TagLogFile::isTagLog).collect(Collectors.toList());
+        Assert.assertEquals(1, logs.size());
+        Path log = logs.get(0);
+        long validSize = Files.size(log);
+        byte[] partialFrame = Arrays.copyOf(TagLogFile.encode(UUID.randomUUID().toString(), new Glob[]{
+                PersistenceTest.OwnerTagInfo.TYPE.instantiate().set(PersistenceTest.OwnerTagInfo.NAME, "torn")}), 20);
+        Files.write(log, partialFrame, StandardOpenOption.APPEND);
+        {
+            FileRWTagAccess fileRWTagAccess =
+                    new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+            Set<String> read = new HashSet<>();
+            fileRWTagAccess.listAll((uuid, t) -> {
+                read.add(uuid);
+                Assert.assertTrue(t.hasNext());
+                Assert.assertEquals(uuid, t.next().get(PersistenceTest.OwnerTagInfo.UUID));
+            });
+            Assert.assertEquals(uuids, read);
+            Assert.assertEquals(validSize, Files.size(log));
+            fileRWTagAccess.shutdown();
+        }
+        org.globsframework.utils.Files.deleteWithSubtree(tempFile.toFile());
+    }
+
+    @Test
+    public void corruptedLengthIsNotTruncated() throws IOException {
+        Path tempFile = Files.createTempDirectory("testRWAccessTagCorrupted");
+        List<String> uuids = new ArrayList<>();
+        {
+            FileRWTagAccess fileRWTagAccess =
+                    new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+            for (int i = 0; i < 100; i++) {
+                String uuid = UUID.randomUUID().toString();
+                fileRWTagAccess.save(uuid, new Glob[]{
+                        PersistenceTest.OwnerTagInfo.TYPE.instantiate().set(PersistenceTest.OwnerTagInfo.UUID, uuid).set(PersistenceTest.OwnerTagInfo.NAME, "name " + i)});
+                uuids.add(uuid);
+            }
+            fileRWTagAccess.shutdown();
+        }
+        Path log = Files.list(tempFile).filter(TagLogFile::isTagLog).findFirst().get();
+        long middleFrame;
+        try (TagLogReader reader = new TagLogReader(log)) {
+            for (int i = 0; i < 50; i++) {
+                Assert.assertTrue(reader.skip());
+            }
+            middleFrame = reader.validPosition();
+        }
+        long size = Files.size(log);
+        // the length of the 51th frame now goes past the end of the file.
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, (int) size), middleFrame);
+        }
+        try (TagLogReader reader = new TagLogReader(log)) {
+            while (reader.next()) {
+            }
+            Assert.assertEquals(50, reader.recordCount());
+            Assert.assertTrue(reader.isCorrupted());
+            Assert.assertFalse(reader.isTorn());
+        }
+        // nor with the largest length, which is found past the end of the file before the frame is read.
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, TagLogFile.MAX_FRAME_SIZE), middleFrame);
+        }
+        try (TagLogReader reader = new TagLogReader(log)) {
+            while (reader.next()) {
+            }
+            Assert.assertEquals(50, reader.recordCount());
+            Assert.assertTrue(reader.isCorrupted());
+        }
+        {
+            FileRWTagAccess fileRWTagAccess =
+                    new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+            Set<String> read = new HashSet<>();
+            fileRWTagAccess.listAll((uuid, t) -> read.add(uuid));
+            Assert.assertEquals(new HashSet<>(uuids.subList(0, 50)), read);
+            Assert.assertEquals(size, Files.size(log));
+            fileRWTagAccess.shutdown();
+        }
+        org.globsframework.utils.Files.deleteWithSubtree(tempFile.toFile());
+    }
+
+    @Test
+    public void supersededTagsAreNotDecoded() throws IOException {
+        Path tempFile = Files.createTempDirectory("testRWAccessTagLazy");
+        String uuid = UUID.randomUUID().toString();
+        Map<String, Glob> state = new HashMap<>();
+        {
+            FileRWTagAccess fileRWTagAccess = new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+            save(fileRWTagAccess, state, UUID.randomUUID().toString(), "other");
+            fileRWTagAccess.shutdown();
+        }
+        Path log = Files.list(tempFile).filter(TagLogFile::isTagLog).findFirst().get();
+        // an old version that can not be decoded, replaced by the next record.
+        Files.write(log, TagLogFile.encode(uuid, new String[]{PersistenceTest.OwnerTagInfo.TYPE.getName()},
+                new byte[][]{"{not json".getBytes()}), StandardOpenOption.APPEND);
+        Glob latest = PersistenceTest.OwnerTagInfo.TYPE.instantiate().set(PersistenceTest.OwnerTagInfo.UUID, uuid).set(PersistenceTest.OwnerTagInfo.NAME, "latest");
+        Files.write(log, TagLogFile.encode(uuid, new Glob[]{latest}), StandardOpenOption.APPEND);
+        state.put(uuid, latest);
+        {
+            FileRWTagAccess fileRWTagAccess = new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+            Map<String, Glob> read = new HashMap<>();
+            fileRWTagAccess.listAll((id, t) -> t.forEachRemaining(glob -> read.put(id, glob)));
+            Assert.assertEquals(state, read);
+            fileRWTagAccess.shutdown();
+        }
+        org.globsframework.utils.Files.deleteWithSubtree(tempFile.toFile());
+    }
+
+    @Test
+    public void startFromSnapshot() throws IOException {
+        Path tempFile = Files.createTempDirectory("testRWAccessTagSnapshot");
+        Map<String, Glob> state = new HashMap<>();
+        {
+            FileRWTagAccess fileRWTagAccess =
+                    new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+            for (int i = 0; i < 100; i++) {
+                save(fileRWTagAccess, state, UUID.randomUUID().toString(), "before " + i);
+            }
+            RWTagAccess.Checkpoint checkpoint = fileRWTagAccess.checkpoint();
+            save(fileRWTagAccess, state, UUID.randomUUID().toString(), "after");
+            checkpoint.write(listener -> state.forEach((uuid, tag) -> listener.accept(uuid, Collections.singletonList(tag).iterator())));
+            fileRWTagAccess.shutdown();
+        }
+        List<Path> files = Files.list(tempFile).collect(Collectors.toList());
+        Assert.assertEquals(1, files.stream().filter(TagLogFile::isSnapshot).count());
+        // the log sealed by the checkpoint is deleted once the snapshot is written, the active one is kept.
+        Assert.assertEquals(1, files.stream().filter(TagLogFile::isTagLog).count());
+        Assert.assertEquals(1, new TagLogManifest(tempFile).logs().size());
+        {
+            FileRWTagAccess fileRWTagAccess =
+                    new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+            Map<String, Glob> read = new HashMap<>();
+            fileRWTagAccess.listAll((uuid, t) -> t.forEachRemaining(glob -> read.put(uuid, glob)));
+            Assert.assertEquals(state, read);
+            fileRWTagAccess.shutdown();
+        }
+        org.globsframework.utils.Files.deleteWithSubtree(tempFile.toFile());
+    }
+
+    @Test
+    public void damagedSnapshotFailsTheReplay() throws IOException {
+        Path tempFile = Files.createTempDirectory("testRWAccessTagDamagedSnapshot");
+        Map<String, Glob> state = new HashMap<>();
+        {
+            FileRWTagAccess fileRWTagAccess =
+                    new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+            for (int i = 0; i < 100; i++) {
+                save(fileRWTagAccess, state, UUID.randomUUID().toString(), "before " + i);
+            }
+            fileRWTagAccess.checkpoint()
+                    .write(listener -> state.forEach((uuid, tag) -> listener.accept(uuid, Collections.singletonList(tag).iterator())));
+            fileRWTagAccess.shutdown();
+        }
+        Path snapshot = Files.list(tempFile).filter(TagLogFile::isSnapshot).findFirst().get();
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'x', 'x', 'x', 'x'}), channel.size() / 2);
+        }
+        FileRWTagAccess fileRWTagAccess = new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+        try {
+            fileRWTagAccess.listAll((uuid, t) -> {
+            });
+            Assert.fail();
+        } catch (RuntimeException e) {
+        }
+        fileRWTagAccess.shutdown();
+        org.globsframework.utils.Files.deleteWithSubtree(tempFile.toFile());
+    }
+
+    @Test
+    public void compactionKeepsLatestTags() throws IOException {
+        Path tempFile = Files.createTempDirectory("testRWAccessTagCompaction");
+        Map<String, Glob> state = new HashMap<>();
+        {
+            FileRWTagAccess fileRWTagAccess =
+                    new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+            List<String> uuids = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                uuids.add(UUID.randomUUID().toString());
+            }
+            for (int version = 0; version < 3; version++) {
+                for (String uuid : uuids) {
+                    save(fileRWTagAccess, state, uuid, "version " + version);
+                }
+                fileRWTagAccess.checkpoint(); // seal the current log without writing a snapshot
+            }
+            Assert.assertEquals(4, Files.list(tempFile).filter(TagLogFile::isTagLog).count());
+            fileRWTagAccess.compact();
+            Assert.assertEquals(2, Files.list(tempFile).filter(TagLogFile::isTagLog).count());
+            fileRWTagAccess.shutdown();
+        }
+        {
+            FileRWTagAccess fileRWTagAccess =
+                    new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+            Map<String, Glob> read = new HashMap<>();
+            fileRWTagAccess.listAll((uuid, t) -> t.forEachRemaining(glob -> read.put(uuid, glob)));
+            Assert.assertEquals(state, read);
+            fileRWTagAccess.shutdown();
+        }
+        org.globsframework.utils.Files.deleteWithSubtree(tempFile.toFile());
+    }
+
+    @Test
+    public void parallelReplayKeepsLatestTags() throws IOException {
+        Path tempFile = Files.createTempDirectory("testRWAccessTagParallelReplay");
+        Map<String, Glob> state = new HashMap<>();
+        int logs = FileRWTagAccess.REPLAY_THREADS * 2 + 3;
+        {
+            FileRWTagAccess fileRWTagAccess =
+                    new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+            List<String> uuids = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                uuids.add(UUID.randomUUID().toString());
+            }
+            for (int version = 0; version < logs; version++) {
+                // the first logs are the largest: read last while the later ones are already read.
+                for (int i = 0; i < (version == 0 ? 2000 : 1); i++) {
+                    save(fileRWTagAccess, state, UUID.randomUUID().toString(), "filler " + version);
+                }
+                for (String uuid : uuids.subList(0, uuids.size() - version % uuids.size())) {
+                    save(fileRWTagAccess, state, uuid, "version " + version);
+                }
+                fileRWTagAccess.checkpoint(); // seal the current log without writing a snapshot
+            }
+            Assert.assertEquals(logs + 1, Files.list(tempFile).filter(TagLogFile::isTagLog).count());
+            fileRWTagAccess.shutdown();
+        }
+        {
+            FileRWTagAccess fileRWTagAccess =
+                    new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+            Map<String, Glob> read = new HashMap<>();
+            fileRWTagAccess.listAll((uuid, t) -> t.forEachRemaining(glob -> read.put(uuid, glob)));
+            Assert.assertEquals(state, read);
+            fileRWTagAccess.shutdown();
+        }
+        org.globsframework.utils.Files.deleteWithSubtree(tempFile.toFile());
+    }
+
+    @Test
+    public void groupCommit() throws Exception {
+        Path tempFile = Files.createTempDirectory("testRWAccessTagGroupCommit");
+        Map<String, Glob> state = new ConcurrentHashMap<>();
+        FileRWTagAccess fileRWTagAccess = new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType,
+                FileRWTagAccess.DEFAULT_COMPACTION_BYTES_PER_SECOND, TagLogDurability.groupCommit(5, 100));
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            int index = i;
+            futures.add(executorService.submit(() -> save(fileRWTagAccess, state, UUID.randomUUID().toString(), "name " + index)));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+        long fsyncCount = fileRWTagAccess.getFsyncLatency().count();
+        Assert.assertTrue(fsyncCount > 0);
+        Assert.assertTrue(fsyncCount < 1000);
+        fileRWTagAccess.shutdown();
+
+        FileRWTagAccess reader = new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+        Map<String, Glob> read = new HashMap<>();
+        reader.listAll((uuid, t) -> t.forEachRemaining(glob -> read.put(uuid, glob)));
+        Assert.assertEquals(state, read);
+        reader.shutdown();
+        org.globsframework.utils.Files.deleteWithSubtree(tempFile.toFile());
+    }
+
+    @Test
+    public void everyAppendCompletes() throws Exception {
+        Path tempFile = Files.createTempDirectory("testRWAccessTagComplete");
+        Map<String, Glob> state = new HashMap<>();
+        FileRWTagAccess fileRWTagAccess = new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+        // a record that can not be written fails, the next ones are written.
+        CompletableFuture<Void> failed = fileRWTagAccess.publish(new FileRWTagAccess.Append(null, 0, null));
+        try {
+            failed.get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+        }
+        save(fileRWTagAccess, state, UUID.randomUUID().toString(), "written");
+
+        // records drained with the shutdown: the ones before are written, the ones after fail.
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        fileRWTagAccess.publish(new FileRWTagAccess.Append(null, 0, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+            }
+        }));
+        started.await();
+        String uuid = UUID.randomUUID().toString();
+        Glob before = PersistenceTest.OwnerTagInfo.TYPE.instantiate().set(PersistenceTest.OwnerTagInfo.UUID, uuid).set(PersistenceTest.OwnerTagInfo.NAME, "before");
+        CompletableFuture<Void> written = fileRWTagAccess.append(uuid, new Glob[]{before});
+        state.put(uuid, before);
+        Thread shutdown = new Thread(fileRWTagAccess::shutdown);
+        shutdown.start();
+        while (shutdown.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        String afterUuid = UUID.randomUUID().toString();
+        Glob after = PersistenceTest.OwnerTagInfo.TYPE.instantiate().set(PersistenceTest.OwnerTagInfo.UUID, afterUuid).set(PersistenceTest.OwnerTagInfo.NAME, "after");
+        CompletableFuture<Void> closed = fileRWTagAccess.publish(new FileRWTagAccess.Append(TagLogFile.encode(afterUuid, new Glob[]{after}), 1, null));
+        release.countDown();
+        shutdown.join();
+        written.get(10, TimeUnit.SECONDS);
+        try {
+            closed.get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+        }
+
+        FileRWTagAccess reader = new FileRWTagAccess(tempFile, PersistenceTest.globTypes::getType);
+        Map<String, Glob> read = new HashMap<>();
+        reader.listAll((id, t) -> t.forEachRemaining(glob -> read.put(id, glob)));
+        Assert.assertEquals(state, read);
+        reader.shutdown();
+        org.globsframework.utils.Files.deleteWithSubtree(tempFile.toFile());
+    }
+
+    @Test
+    public void moveTagLogsOutOfDataDir() throws IOException {
+        Path dataDir = Files.createTempDirectory("testRWAccessTagData");
+        Path tagsDir = Files.createTempDirectory("testRWAccessTagTags");
+        Map<String, Glob> state = new HashMap<>();
+        {
+            FileRWTagAccess fileRWTagAccess = new FileRWTagAccess(dataDir, PersistenceTest.globTypes::getType);
+            for (int i = 0; i < 10; i++) {
+                save(fileRWTagAccess, state, UUID.randomUUID().toString(), "name " + i);
+            }
+            fileRWTagAccess.shutdown();
+        }
+        Path dataFile = Files.write(dataDir.resolve(UUID.randomUUID() + ".json"), "{}".getBytes());
+        FileRWTagAccess.moveTagLogs(dataDir, tagsDir);
+        Assert.assertTrue(Files.exists(dataFile));
+        Assert.assertEquals(0, Files.list(dataDir).filter(TagLogFile::isTagLog).count());
+        {
+            FileRWTagAccess fileRWTagAccess = new FileRWTagAccess(tagsDir, PersistenceTest.globTypes::getType);
+            Map<String, Glob> read = new HashMap<>();
+            fileRWTagAccess.listAll((uuid, t) -> t.forEachRemaining(glob -> read.put(uuid, glob)));
+            Assert.assertEquals(state, read);
+            fileRWTagAccess.shutdown();
+        }
+        // a file that is not in the manifest is not replayed
+        Files.copy(Files.list(tagsDir).filter(TagLogFile::isTagLog).max(Comparator.comparingLong(path -> path.toFile().length())).get(), tagsDir.resolve("2000-01-01T00:00:00.tlog"));
+        {
+            FileRWTagAccess fileRWTagAccess = new FileRWTagAccess(tagsDir, PersistenceTest.globTypes::getType);
+            int[] count = new int[1];
+            fileRWTagAccess.listAll((uuid, t) -> count[0]++);
+            Assert.assertEquals(state.size(), count[0]);
+            fileRWTagAccess.shutdown();
+        }
+        org.globsframework.utils.Files.deleteWithSubtree(dataDir.toFile());
+        org.globsframework.utils.Files.deleteWithSubtree(tagsDir.toFile());
+    }
+
+    private static void save(FileRWTagAccess fileRWTagAccess, Map<String, Glob> state, String uuid, String name) {
+        Glob tag = PersistenceTest.OwnerTagInfo.TYPE.instantiate().set(PersistenceTest.OwnerTagInfo.UUID, uuid).set(PersistenceTest.OwnerTagInfo.NAME, name);
+        fileRWTagAccess.save(uuid, new Glob[]{tag});
+        state.put(uuid, tag);
+    }
+}
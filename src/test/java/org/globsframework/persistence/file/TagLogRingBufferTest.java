@@ -0,0 +1,43 @@
+package org.globsframework.persistence.file;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TagLogRingBufferTest {
+
+    @Test
+    public void keepOrderOfEachProducer() throws InterruptedException {
+        TagLogRingBuffer<long[]> ring = new TagLogRingBuffer<>(64);
+        int producerCount = 8;
+        int count = 100_000;
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < producerCount; p++) {
+            int id = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < count; i++) {
+                    ring.publish(new long[]{id, i});
+                }
+            });
+            thread.start();
+            producers.add(thread);
+        }
+        long[] expected = new long[producerCount];
+        List<long[]> batch = new ArrayList<>();
+        int total = 0;
+        while (total < producerCount * count) {
+            batch.clear();
+            ring.drainTo(batch, 100, 1_000_000);
+            for (long[] value : batch) {
+                Assert.assertEquals(expected[(int) value[0]]++, value[1]);
+                total++;
+            }
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        Assert.assertEquals(64, ring.capacity());
+    }
+}
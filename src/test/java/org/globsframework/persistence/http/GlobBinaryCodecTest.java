@@ -0,0 +1,170 @@
+package org.globsframework.persistence.http;
+
+import com.google.gson.Gson;
+import org.globsframework.json.GSonUtils;
+import org.globsframework.json.GlobsGson;
+import org.globsframework.metamodel.GlobType;
+import org.globsframework.metamodel.GlobTypeLoaderFactory;
+import org.globsframework.metamodel.GlobTypeResolver;
+import org.globsframework.metamodel.annotations.KeyField;
+import org.globsframework.metamodel.annotations.Target;
+import org.globsframework.metamodel.fields.*;
+import org.globsframework.model.Glob;
+import org.globsframework.model.MutableGlob;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class GlobBinaryCodecTest {
+    private static final GlobTypeResolver RESOLVER = name -> name.equals(Data.TYPE.getName()) ? Data.TYPE :
+            name.equals(Child.TYPE.getName()) ? Child.TYPE : null;
+
+    @Test
+    public void encodeDecode() {
+        MutableGlob data = data(1);
+        MutableGlob[] globs = GlobBinaryCodec.decode(GlobBinaryCodec.encode(data, null, data(2)), RESOLVER);
+        Assert.assertEquals(3, globs.length);
+        Assert.assertNull(globs[1]);
+        check(globs[0], 1);
+        check(globs[2], 2);
+    }
+
+    @Test
+    public void unsetAndNullValues() {
+        MutableGlob data = Data.TYPE.instantiate().set(Data.UUID, "u").set(Data.name, null);
+        Glob glob = GlobBinaryCodec.decode(GlobBinaryCodec.encode(data), RESOLVER)[0];
+        Assert.assertEquals("u", glob.get(Data.UUID));
+        Assert.assertTrue(glob.isSet(Data.name));
+        Assert.assertNull(glob.get(Data.name));
+        Assert.assertFalse(glob.isSet(Data.count));
+    }
+
+    @Test
+    public void unknownFieldsAreSkipped() {
+        GlobTypeResolver olderTypes = name -> name.equals(Data.TYPE.getName()) ? DataV1.TYPE : Child.TYPE;
+        Glob glob = GlobBinaryCodec.decode(GlobBinaryCodec.encode(data(3)), olderTypes)[0];
+        Assert.assertEquals("uuid-3", glob.get(DataV1.UUID));
+        Assert.assertEquals(Long.valueOf(-3000000000L), glob.get(DataV1.total));
+    }
+
+    @Test
+    @Ignore
+    public void compareWithJson() {
+        int count = 100_000;
+        Glob[] globs = new Glob[count];
+        for (int i = 0; i < count; i++) {
+            globs[i] = data(i);
+        }
+        Gson gson = GlobsGson.create(RESOLVER);
+        for (int loop = 0; loop < 5; loop++) {
+            long jsonSize = 0;
+            long start = System.nanoTime();
+            String[] jsons = new String[count];
+            for (int i = 0; i < count; i++) {
+                jsons[i] = GSonUtils.encode(globs[i], true);
+                jsonSize += jsons[i].getBytes(StandardCharsets.UTF_8).length;
+            }
+            long jsonEncode = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (String json : jsons) {
+                gson.fromJson(json, Glob.class);
+            }
+            long jsonDecode = System.nanoTime() - start;
+
+            long binarySize = 0;
+            start = System.nanoTime();
+            byte[][] payloads = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                payloads[i] = GlobBinaryCodec.encode(globs[i]);
+                binarySize += payloads[i].length;
+            }
+            long binaryEncode = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (byte[] payload : payloads) {
+                GlobBinaryCodec.decode(payload, RESOLVER);
+            }
+            long binaryDecode = System.nanoTime() - start;
+            System.out.println("json   : " + jsonSize / count + " bytes, encode " + jsonEncode / count +
+                               " ns, decode " + jsonDecode / count + " ns");
+            System.out.println("binary : " + binarySize / count + " bytes, encode " + binaryEncode / count +
+                               " ns, decode " + binaryDecode / count + " ns");
+        }
+    }
+
+    private static MutableGlob data(int i) {
+        return Data.TYPE.instantiate()
+                .set(Data.UUID, "uuid-" + i)
+                .set(Data.name, "name é " + i)
+                .set(Data.count, -i)
+                .set(Data.total, -1000000000L * i)
+                .set(Data.price, i / 3.)
+                .set(Data.active, i % 2 == 0)
+                .set(Data.child, Child.TYPE.instantiate().set(Child.name, "child " + i))
+                .set(Data.children, new Glob[]{Child.TYPE.instantiate().set(Child.name, "a"),
+                        Child.TYPE.instantiate().set(Child.name, "b")});
+    }
+
+    private static void check(Glob glob, int i) {
+        Assert.assertEquals("uuid-" + i, glob.get(Data.UUID));
+        Assert.assertEquals("name é " + i, glob.get(Data.name));
+        Assert.assertEquals(Integer.valueOf(-i), glob.get(Data.count));
+        Assert.assertEquals(Long.valueOf(-1000000000L * i), glob.get(Data.total));
+        Assert.assertEquals(i / 3., glob.get(Data.price), 0.);
+        Assert.assertEquals(i % 2 == 0, glob.get(Data.active));
+        Assert.assertEquals("child " + i, glob.get(Data.child).get(Child.name));
+        Assert.assertEquals(2, glob.get(Data.children).length);
+        Assert.assertEquals("b", glob.get(Data.children)[1].get(Child.name));
+    }
+
+    public static class Data {
+        public static GlobType TYPE;
+
+        @KeyField
+        public static StringField UUID;
+
+        public static StringField name;
+
+        public static IntegerField count;
+
+        public static LongField total;
+
+        public static DoubleField price;
+
+        public static BooleanField active;
+
+        @Target(Child.class)
+        public static GlobField child;
+
+        @Target(Child.class)
+        public static GlobArrayField children;
+
+        static {
+            GlobTypeLoaderFactory.create(Data.class).load();
+        }
+    }
+
+    public static class DataV1 {
+        public static GlobType TYPE;
+
+        @KeyField
+        public static StringField UUID;
+
+        public static LongField total;
+
+        static {
+            GlobTypeLoaderFactory.create(DataV1.class).load();
+        }
+    }
+
+    public static class Child {
+        public static GlobType TYPE;
+
+        public static StringField name;
+
+        static {
+            GlobTypeLoaderFactory.create(Child.class).load();
+        }
+    }
+}
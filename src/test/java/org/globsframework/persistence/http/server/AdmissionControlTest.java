@@ -0,0 +1,42 @@
+package org.globsframework.persistence.http.server;
+
+import org.globsframework.persistence.http.ServerBusyException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AdmissionControlTest {
+
+    @Test
+    public void refuseOverLimitButNotReads() throws InterruptedException {
+        AdmissionControl admission = new AdmissionControl(10, 1, 0, 10);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread thread = new Thread(() -> admission.call("ns", AdmissionControl.Kind.WRITE, () -> {
+            writing.countDown();
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }));
+        thread.start();
+        Assert.assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+        try {
+            admission.call("ns", AdmissionControl.Kind.WRITE, () -> "second write");
+            Assert.fail();
+        } catch (ServerBusyException e) {
+            Assert.assertTrue(ServerBusyException.isBusy(new RuntimeException(e.getMessage())));
+        }
+        Assert.assertEquals("read", admission.call("ns", AdmissionControl.Kind.READ, () -> "read"));
+        Assert.assertEquals("other", admission.call("other", AdmissionControl.Kind.WRITE, () -> "other"));
+        Assert.assertTrue(admission.metrics("ns").contains("writes in flight 1, queued 0, rejected 1"));
+
+        release.countDown();
+        thread.join();
+        Assert.assertEquals("third write", admission.call("ns", AdmissionControl.Kind.WRITE, () -> "third write"));
+    }
+}
@@ -0,0 +1,128 @@
+package org.globsframework.persistence.http.server;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+import org.globsframework.metamodel.GlobType;
+import org.globsframework.metamodel.GlobTypeLoaderFactory;
+import org.globsframework.metamodel.annotations.KeyField;
+import org.globsframework.metamodel.fields.StringField;
+import org.globsframework.model.Glob;
+import org.globsframework.model.MutableGlob;
+import org.globsframework.persistence.InMemoryPersistence;
+import org.globsframework.persistence.Persistence;
+import org.globsframework.persistence.RWDataAccess;
+import org.globsframework.persistence.RWTagAccess;
+import org.globsframework.persistence.http.DataEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ChangeEncoderTest {
+
+    @Test
+    public void aChangeIsEncodedOnceForAllTheListeners() {
+        AtomicInteger encoded = new AtomicInteger();
+        Gson gson = new GsonBuilder().registerTypeHierarchyAdapter(Glob.class, (JsonSerializer<Glob>) (glob, type, context) -> {
+            encoded.incrementAndGet();
+            return new JsonPrimitive(glob.getType() == SomeTag.TYPE ? glob.get(SomeTag.name) : glob.getType().getName());
+        }).create();
+        InMemoryPersistence persistence = new InMemoryPersistence(new NullRWDataAccess(), new NullRWTagAccess());
+        PersistenceProvider.PersistenceInfo persistenceInfo = new PersistenceProvider.PersistenceInfo(persistence, null, gson);
+        List<PersistenceHttpServer.PerClientInfo> clients = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            PersistenceHttpServer.PerClientInfo client = new PersistenceHttpServer.PerClientInfo("client" + i, persistenceInfo);
+            persistence.listen(SomeTag.TYPE, null, new Persistence.OnChange() {
+                public void change(GlobType type, Glob oldValue, Glob newValue, List<Glob> additionalTags) {
+                    client.onChange("listener", type, oldValue, newValue, additionalTags);
+                }
+            }, new GlobType[]{OtherTag.TYPE});
+            clients.add(client);
+        }
+
+        persistence.pushData(SomeData.TYPE.instantiate(), new MutableGlob[]{SomeTag.TYPE.instantiate().set(SomeTag.name, "n1"),
+                OtherTag.TYPE.instantiate()});
+
+        // the new value and the additional tag.
+        Assert.assertEquals(2, encoded.get());
+        List<DataEvent> events = new ArrayList<>();
+        for (PersistenceHttpServer.PerClientInfo client : clients) {
+            client.next(0, events, 0);
+        }
+        Assert.assertEquals(3, events.size());
+        for (DataEvent event : events) {
+            Assert.assertEquals("\"n1\"", event.newValue);
+            Assert.assertSame(events.get(0).newValue, event.newValue);
+            Assert.assertSame(events.get(0).additional[0], event.additional[0]);
+        }
+
+        // not kept after the dispatch.
+        persistence.pushData(SomeData.TYPE.instantiate(), new MutableGlob[]{SomeTag.TYPE.instantiate().set(SomeTag.name, "n2"),
+                OtherTag.TYPE.instantiate()});
+        Assert.assertEquals(4, encoded.get());
+    }
+
+    static public class SomeData {
+        public static GlobType TYPE;
+
+        @KeyField
+        public static StringField UUID;
+
+        static {
+            GlobTypeLoaderFactory.create(SomeData.class).load();
+        }
+    }
+
+    static public class SomeTag {
+        public static GlobType TYPE;
+
+        @KeyField
+        public static StringField UUID;
+
+        public static StringField name;
+
+        static {
+            GlobTypeLoaderFactory.create(SomeTag.class).load();
+        }
+    }
+
+    static public class OtherTag {
+        public static GlobType TYPE;
+
+        @KeyField
+        public static StringField UUID;
+
+        static {
+            GlobTypeLoaderFactory.create(OtherTag.class).load();
+        }
+    }
+
+    private static class NullRWDataAccess implements RWDataAccess {
+        public Glob getData(String uuid) {
+            return null;
+        }
+
+        public String save(Glob glob) {
+            return UUID.randomUUID().toString();
+        }
+
+        public void shutdown() {
+        }
+    }
+
+    private static class NullRWTagAccess implements RWTagAccess {
+        public void save(String uuid, Glob[] tags) {
+        }
+
+        public void listAll(TagListener consumer) {
+        }
+
+        public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.globsframework.persistence.http.server;
+
+import org.globsframework.persistence.http.DataEvent;
+import org.globsframework.persistence.http.RpcPersistence;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ClientEventStreamTest {
+
+    @Test
+    public void resumeFromLastAcknowledged() throws InterruptedException {
+        ClientEventStream stream = new ClientEventStream(10);
+        stream.add("a", event(null, "1"));
+        stream.add("b", event(null, "2"));
+        List<DataEvent> events = new ArrayList<>();
+        Assert.assertEquals(2, stream.next(0, events, 0));
+        Assert.assertEquals(2, events.size());
+
+        // the response was lost: the same events are sent again.
+        events.clear();
+        Assert.assertEquals(2, stream.next(0, events, 0));
+        Assert.assertEquals(2, events.size());
+
+        stream.add("c", event(null, "3"));
+        events.clear();
+        Assert.assertEquals(3, stream.next(2, events, 0));
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals("3", events.get(0).newValue);
+
+        events.clear();
+        Assert.assertEquals(3, stream.next(3, events, 0));
+        Assert.assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void coalesceUnsentEvents() throws InterruptedException {
+        ClientEventStream stream = new ClientEventStream(10);
+        stream.add("a", event(null, "1"));
+        stream.add("a", event("1", "2"));
+        stream.add("b", event(null, "x"));
+        stream.add("a", event("2", "3"));
+        List<DataEvent> events = new ArrayList<>();
+        Assert.assertEquals(2, stream.next(0, events, 0));
+        Assert.assertEquals(2, events.size());
+        Assert.assertNull(events.get(0).oldValue);
+        Assert.assertEquals("3", events.get(0).newValue);
+        Assert.assertEquals(2, stream.coalesced());
+
+        // already sent: not merged anymore.
+        stream.add("a", event("3", "4"));
+        events.clear();
+        Assert.assertEquals(3, stream.next(2, events, 0));
+        Assert.assertEquals("3", events.get(0).oldValue);
+        Assert.assertEquals("4", events.get(0).newValue);
+    }
+
+    @Test
+    public void resetOnOverflow() throws InterruptedException {
+        ClientEventStream stream = new ClientEventStream(10);
+        for (int i = 0; i < 15; i++) {
+            stream.add(Integer.toString(i), event(null, Integer.toString(i)));
+        }
+        Assert.assertEquals(4, stream.depth());
+        Assert.assertEquals(11, stream.dropped());
+        List<DataEvent> events = new ArrayList<>();
+        Assert.assertEquals(RpcPersistence.RESET_EVENTS, stream.next(0, events, 0));
+        Assert.assertTrue(events.isEmpty());
+
+        stream.add("after", event(null, "after reset"));
+        Assert.assertEquals(16, stream.next(RpcPersistence.RESET_EVENTS, events, 0));
+        Assert.assertEquals(1, events.size());
+
+        // an id never given by this stream.
+        Assert.assertEquals(RpcPersistence.RESET_EVENTS, stream.next(100, new ArrayList<>(), 0));
+    }
+
+    @Test
+    public void dropOldestOnOverflow() throws InterruptedException {
+        ClientEventStream stream = new ClientEventStream(10, ClientEventStream.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 15; i++) {
+            stream.add(Integer.toString(i), event(null, Integer.toString(i)));
+        }
+        Assert.assertEquals(10, stream.depth());
+        Assert.assertEquals(5, stream.dropped());
+        List<DataEvent> events = new ArrayList<>();
+        Assert.assertEquals(RpcPersistence.RESET_EVENTS, stream.next(0, events, 0));
+        Assert.assertTrue(events.isEmpty());
+        Assert.assertEquals(10, stream.depth());
+
+        // the gap is signalled once, then the retained events are delivered.
+        Assert.assertEquals(15, stream.next(RpcPersistence.RESET_EVENTS, events, 0));
+        Assert.assertEquals(10, events.size());
+        Assert.assertEquals("5", events.get(0).newValue);
+        Assert.assertEquals("14", events.get(9).newValue);
+
+        events.clear();
+        Assert.assertEquals(15, stream.next(15, events, 0));
+        Assert.assertTrue(events.isEmpty());
+        Assert.assertEquals(0, stream.depth());
+        Assert.assertEquals(1, stream.resets());
+    }
+
+    private static DataEvent event(String oldValue, String newValue) {
+        return new DataEvent("listener", oldValue, newValue, new String[0]);
+    }
+}
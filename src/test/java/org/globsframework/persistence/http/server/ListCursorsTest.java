@@ -0,0 +1,85 @@
+package org.globsframework.persistence.http.server;
+
+import org.globsframework.model.Glob;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ListCursorsTest {
+
+    @Test
+    public void readByPages() {
+        ListCursors cursors = new ListCursors(60_000, 10);
+        String cursorId = cursors.open(null, globs(5).iterator());
+
+        ListCursors.Page page = cursors.next(cursorId, 2);
+        Assert.assertEquals(2, page.globs.size());
+        Assert.assertFalse(page.last);
+        Assert.assertEquals(2, cursors.next(cursorId, 2).globs.size());
+        page = cursors.next(cursorId, 2);
+        Assert.assertEquals(1, page.globs.size());
+        Assert.assertTrue(page.last);
+        Assert.assertNull(cursors.next(cursorId, 2));
+        Assert.assertEquals(0, cursors.size());
+    }
+
+    @Test
+    public void exactLastPage() {
+        ListCursors cursors = new ListCursors(60_000, 10);
+        String cursorId = cursors.open(null, globs(2).iterator());
+        Assert.assertTrue(cursors.next(cursorId, 2).last);
+        Assert.assertTrue(cursors.next(cursors.open(null, Collections.emptyIterator()), 2).last);
+    }
+
+    @Test
+    public void expireAndLimit() throws InterruptedException {
+        ListCursors cursors = new ListCursors(50, 2);
+        String first = cursors.open(null, globs(5).iterator());
+        cursors.open(null, globs(5).iterator());
+        try {
+            cursors.open(null, globs(5).iterator());
+            Assert.fail();
+        } catch (RuntimeException e) {
+        }
+        Thread.sleep(100);
+        cursors.open(null, globs(5).iterator());
+        Assert.assertEquals(1, cursors.size());
+        Assert.assertNull(cursors.next(first, 1));
+    }
+
+    @Test
+    public void cursorPinsItsNamespace() throws InterruptedException {
+        ListCursors cursors = new ListCursors(50, 10);
+        PersistenceProvider.PersistenceInfo persistenceInfo = new PersistenceProvider.PersistenceInfo(null, null, null);
+        Assert.assertTrue(persistenceInfo.pin());
+        String read = cursors.open(persistenceInfo, globs(2).iterator());
+        Assert.assertTrue(persistenceInfo.pin());
+        String closed = cursors.open(persistenceInfo, globs(2).iterator());
+        Assert.assertTrue(persistenceInfo.pin());
+        cursors.open(persistenceInfo, globs(2).iterator());
+        Assert.assertFalse(persistenceInfo.markEvicted());
+        Assert.assertEquals(3, persistenceInfo.pinCount());
+
+        Assert.assertTrue(cursors.next(read, 10).last);
+        cursors.close(closed);
+        cursors.close(closed);
+        Assert.assertEquals(1, persistenceInfo.pinCount());
+        Thread.sleep(100);
+        cursors.expire();
+        Assert.assertEquals(0, persistenceInfo.pinCount());
+
+        Assert.assertTrue(persistenceInfo.markEvicted());
+        Assert.assertFalse(persistenceInfo.pin());
+    }
+
+    private static List<Glob> globs(int count) {
+        List<Glob> globs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            globs.add(null);
+        }
+        return globs;
+    }
+}
@@ -0,0 +1,39 @@
+package org.globsframework.persistence.http.server;
+
+import org.globsframework.persistence.http.DataEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class LongPollsTest {
+
+    @Test
+    public void overMaxParkedReturnsAtOnce() throws InterruptedException {
+        LongPolls longPolls = new LongPolls(1, TimeUnit.SECONDS.toMillis(10));
+        PersistenceHttpServer.PerClientInfo waiting = new PersistenceHttpServer.PerClientInfo("c1", null);
+        CountDownLatch returned = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            longPolls.next(waiting, 0, new ArrayList<>());
+            returned.countDown();
+        });
+        thread.start();
+        while (longPolls.parked() == 0) {
+            Thread.sleep(1);
+        }
+
+        PersistenceHttpServer.PerClientInfo other = new PersistenceHttpServer.PerClientInfo("c2", null);
+        long start = System.currentTimeMillis();
+        List<DataEvent> events = new ArrayList<>();
+        Assert.assertEquals(0, longPolls.next(other, 0, events));
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        Assert.assertTrue(events.isEmpty());
+
+        thread.interrupt();
+        Assert.assertTrue(returned.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, longPolls.parked());
+    }
+}
@@ -22,6 +22,8 @@ import org.junit.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingDeque;
@@ -82,6 +84,22 @@ public class PersistenceHttpServerTest {
         Assert.assertNotNull(poll2);
         Assert.assertEquals("TTT2", poll2.additionalTags.get(Tag2.TYPE).get(Tag2.data));
 
+        MutableGlob b1 = Tag1.TYPE.instantiate().set(Tag1.data, "B1");
+        MutableGlob b2 = Tag1.TYPE.instantiate().set(Tag1.data, "B2");
+        clientPersistence.pushDataBatch(List.of(SomeData.TYPE.instantiate().set(SomeData.data, "BBB1"),
+                        SomeData.TYPE.instantiate().set(SomeData.data, "BBB2")),
+                List.of(new MutableGlob[]{b1}, new MutableGlob[]{b2}));
+        Assert.assertNotNull(b1.get(Tag1.UUID));
+        Assert.assertNotEquals(b1.get(Tag1.UUID), b2.get(Tag1.UUID));
+
+        List<Glob> data = clientPersistence.getDataBatch(List.of(b2, b1));
+        Assert.assertEquals("BBB2", data.get(0).get(SomeData.data));
+        Assert.assertEquals("BBB1", data.get(1).get(SomeData.data));
+
+        List<List<Glob>> lists = clientPersistence.listBatch(List.of(Tag1.TYPE, Tag2.TYPE), Arrays.asList(null, null));
+        Assert.assertEquals(2, lists.size());
+        Assert.assertEquals(1, lists.get(1).size());
+
         clientPersistence.stop();
         persistenceHttpServer.shutDown();
         serverSharedData.stop();
@@ -0,0 +1,128 @@
+package org.globsframework.persistence.http.server;
+
+import org.globsframework.metamodel.GlobType;
+import org.globsframework.metamodel.GlobTypeLoaderFactory;
+import org.globsframework.metamodel.annotations.KeyField;
+import org.globsframework.metamodel.fields.StringField;
+import org.globsframework.model.MutableGlob;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+public class PersistenceProviderImplTest {
+
+    @Test
+    public void idleNamespacesAreEvictedAndLoadedAgain() throws IOException {
+        Path rootDir = Files.createTempDirectory("providerIdle");
+        PersistenceProviderImpl provider = new PersistenceProviderImpl(rootDir, options()
+                .set(PersistenceHttpServer.Options.idleEvictionMinutes, 1));
+        try {
+            PersistenceProvider.PersistenceInfo idle = push(provider, "idle", "i1");
+            PersistenceProvider.PersistenceInfo recent = push(provider, "recent", "r1");
+            PersistenceProvider.PersistenceInfo pinned = push(provider, "pinned", "p1");
+            Assert.assertSame(pinned, provider.get("pinned"));
+            age(idle, 2);
+            age(pinned, 2);
+
+            provider.evict();
+
+            Assert.assertSame(recent, get(provider, "recent"));
+            Assert.assertSame(pinned, get(provider, "pinned"));
+            PersistenceProvider.PersistenceInfo loaded = get(provider, "idle");
+            Assert.assertNotSame(idle, loaded);
+            Assert.assertEquals(1, loaded.persistence.list(SomeTag.TYPE, null).size());
+            Assert.assertEquals("i1", loaded.persistence.list(SomeTag.TYPE, null).get(0).get(SomeTag.name));
+            pinned.release();
+        } finally {
+            provider.shutdown();
+            org.globsframework.utils.Files.deleteWithSubtree(rootDir.toFile());
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedNamespacesAreEvictedOverTheBudget() throws IOException {
+        Path rootDir = Files.createTempDirectory("providerBudget");
+        PersistenceProviderImpl provider = new PersistenceProviderImpl(rootDir, options()
+                .set(PersistenceHttpServer.Options.maxLoadedData, 1));
+        try {
+            PersistenceProvider.PersistenceInfo oldest = push(provider, "oldest", "o1");
+            PersistenceProvider.PersistenceInfo older = push(provider, "older", "o2");
+            PersistenceProvider.PersistenceInfo old = push(provider, "old", "o3");
+            age(oldest, 5);
+            age(older, 4);
+            age(old, 3);
+
+            provider.evict();
+
+            Assert.assertSame(old, get(provider, "old"));
+            PersistenceProvider.PersistenceInfo loaded = get(provider, "oldest");
+            Assert.assertNotSame(oldest, loaded);
+            Assert.assertEquals("o1", loaded.persistence.list(SomeTag.TYPE, null).get(0).get(SomeTag.name));
+            Assert.assertNotSame(older, get(provider, "older"));
+        } finally {
+            provider.shutdown();
+            org.globsframework.utils.Files.deleteWithSubtree(rootDir.toFile());
+        }
+    }
+
+    private static MutableGlob options() {
+        return PersistenceHttpServer.Options.TYPE.instantiate()
+                .set(PersistenceHttpServer.Options.checkpointPeriodInMinutes, 0)
+                .set(PersistenceHttpServer.Options.compactionPeriodInMinutes, 0);
+    }
+
+    // one data pushed in the namespace, which is left unpinned.
+    private static PersistenceProvider.PersistenceInfo push(PersistenceProviderImpl provider, String namespace, String name) {
+        PersistenceProvider.PersistenceInfo persistenceInfo = provider.get(namespace);
+        try {
+            persistenceInfo.fileGlobTypeAccess.declare(SomeData.TYPE);
+            persistenceInfo.fileGlobTypeAccess.declare(SomeTag.TYPE);
+            persistenceInfo.persistence.pushData(SomeData.TYPE.instantiate().set(SomeData.data, name),
+                    new MutableGlob[]{SomeTag.TYPE.instantiate().set(SomeTag.name, name)});
+        } finally {
+            persistenceInfo.release();
+        }
+        return persistenceInfo;
+    }
+
+    private static PersistenceProvider.PersistenceInfo get(PersistenceProviderImpl provider, String namespace) {
+        PersistenceProvider.PersistenceInfo persistenceInfo = provider.get(namespace);
+        persistenceInfo.release();
+        return persistenceInfo;
+    }
+
+    // as if not used for the last minutes.
+    private static void age(PersistenceProvider.PersistenceInfo persistenceInfo, int minutes) {
+        persistenceInfo.lastAccess = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(minutes);
+    }
+
+    static public class SomeData {
+        public static GlobType TYPE;
+
+        @KeyField
+        public static StringField UUID;
+
+        public static StringField data;
+
+        static {
+            GlobTypeLoaderFactory.create(SomeData.class).load();
+        }
+    }
+
+    static public class SomeTag {
+        public static GlobType TYPE;
+
+        @KeyField
+        public static StringField UUID;
+
+        public static StringField name;
+
+        static {
+            GlobTypeLoaderFactory.create(SomeTag.class).load();
+        }
+    }
+}
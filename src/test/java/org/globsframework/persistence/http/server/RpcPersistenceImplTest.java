@@ -0,0 +1,185 @@
+package org.globsframework.persistence.http.server;
+
+import com.google.gson.Gson;
+import org.globsframework.metamodel.GlobType;
+import org.globsframework.model.Glob;
+import org.globsframework.model.MutableGlob;
+import org.globsframework.persistence.FileGlobTypeAccess;
+import org.globsframework.persistence.Persistence;
+import org.globsframework.persistence.http.PushBatchResult;
+import org.globsframework.persistence.http.RpcPersistence;
+import org.globsframework.persistence.http.ServerBusyException;
+import org.globsframework.sqlstreams.constraints.Constraint;
+import org.globsframework.utils.Ref;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RpcPersistenceImplTest {
+
+    @Test
+    public void aFailingPushDoesNotFailTheOtherItems() {
+        PushingPersistence persistence = new PushingPersistence(null);
+        RpcPersistenceImpl rpcPersistence = create(new PersistenceProvider.PersistenceInfo(persistence, null, new Gson()),
+                new AdmissionControl(10, 10, 10, 1000), TimeUnit.SECONDS.toMillis(RpcPersistenceImpl.DEFAULT_CLIENT_TTL_IN_SECONDS));
+        try {
+            PushBatchResult result = new Gson().fromJson(rpcPersistence.pushDataBatch("ns",
+                    new String[]{"d1", "fail", "d3"}, new String[]{"[]", "[]", "[]"}), PushBatchResult.class);
+            Assert.assertEquals("uuid-d1", result.uuids[0]);
+            Assert.assertNull(result.uuids[1]);
+            Assert.assertEquals("uuid-d3", result.uuids[2]);
+            Assert.assertNull(result.errors[0]);
+            Assert.assertTrue(result.errors[1], result.errors[1].contains("bad data"));
+            Assert.assertNull(result.errors[2]);
+        } finally {
+            rpcPersistence.shutdown();
+        }
+    }
+
+    @Test
+    public void aRefusedItemIsReportedBusy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PushingPersistence persistence = new PushingPersistence(release);
+        AdmissionControl admission = new AdmissionControl(10, 1, 0, 10);
+        RpcPersistenceImpl rpcPersistence = create(new PersistenceProvider.PersistenceInfo(persistence, null, new Gson()),
+                admission, TimeUnit.SECONDS.toMillis(RpcPersistenceImpl.DEFAULT_CLIENT_TTL_IN_SECONDS));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> call = executor.submit(() -> rpcPersistence.pushDataBatch("ns",
+                    new String[]{"d1", "d2"}, new String[]{"[]", "[]"}));
+            long end = System.currentTimeMillis() + 10_000;
+            while (!admission.metrics("ns").contains("rejected 1") && System.currentTimeMillis() < end) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            PushBatchResult result = new Gson().fromJson(call.get(10, TimeUnit.SECONDS), PushBatchResult.class);
+            int pushed = result.uuids[0] != null ? 0 : 1;
+            int refused = 1 - pushed;
+            Assert.assertNotNull(result.uuids[pushed]);
+            Assert.assertNull(result.uuids[refused]);
+            Assert.assertTrue(result.errors[refused], result.errors[refused].contains(ServerBusyException.BUSY));
+            Assert.assertEquals(1, persistence.pushed);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            rpcPersistence.shutdown();
+        }
+    }
+
+    @Test
+    public void aClientNotPollingReleasesItsListeners() throws InterruptedException {
+        PushingPersistence persistence = new PushingPersistence(null);
+        PersistenceProvider.PersistenceInfo persistenceInfo = new PersistenceProvider.PersistenceInfo(persistence, new FileGlobTypeAccess() {
+            public GlobType find(String name) {
+                return null;
+            }
+
+            public void declare(GlobType globType) {
+            }
+
+            public void shutdown() {
+            }
+        }, new Gson());
+        RpcPersistenceImpl rpcPersistence = create(persistenceInfo, new AdmissionControl(10, 10, 10, 1000), 100);
+        try {
+            rpcPersistence.register("gone", "ns", "SomeTag", "null", new String[0]);
+            rpcPersistence.register("polling", "ns", "SomeTag", "null", new String[0]);
+            Assert.assertEquals(2, persistenceInfo.pinCount());
+
+            long end = System.currentTimeMillis() + 300;
+            while (System.currentTimeMillis() < end) {
+                rpcPersistence.getNextEvents("polling", 0, new Ref<>());
+                Thread.sleep(20);
+            }
+            Assert.assertEquals(1, rpcPersistence.clientCount());
+            Assert.assertEquals(1, persistenceInfo.pinCount());
+            Assert.assertEquals(1, persistence.unregistered.get());
+            Assert.assertEquals(RpcPersistence.RESET_EVENTS, rpcPersistence.getNextEvents("gone", 10, new Ref<>()));
+        } finally {
+            rpcPersistence.shutdown();
+        }
+    }
+
+    private static RpcPersistenceImpl create(PersistenceProvider.PersistenceInfo persistenceInfo, AdmissionControl admission,
+                                             long clientTtlMillis) {
+        PersistenceProvider provider = typeName -> {
+            persistenceInfo.pin();
+            return persistenceInfo;
+        };
+        return new RpcPersistenceImpl(provider, false, true, ClientEventStream.DEFAULT_CAPACITY,
+                ClientEventStream.OverflowPolicy.RESET, 2,
+                new ListCursors(TimeUnit.SECONDS.toMillis(ListCursors.DEFAULT_TTL_IN_SECONDS), ListCursors.DEFAULT_MAX_CURSORS),
+                new LongPolls(LongPolls.DEFAULT_MAX_PARKED, 0), clientTtlMillis, admission);
+    }
+
+    // the uuid of a raw push is built from its data, "fail" is refused.
+    private static class PushingPersistence implements Persistence {
+        private final CountDownLatch release;
+        private volatile int pushed;
+        private final AtomicInteger unregistered = new AtomicInteger();
+
+        PushingPersistence(CountDownLatch release) {
+            this.release = release;
+        }
+
+        public String pushData(Glob data, MutableGlob[] tags) {
+            throw new UnsupportedOperationException();
+        }
+
+        public synchronized String pushRawData(Reader data, MutableGlob[] tags) {
+            String content;
+            try {
+                content = new BufferedReader(data).readLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (content.equals("fail")) {
+                throw new RuntimeException("bad data");
+            }
+            if (release != null) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            pushed++;
+            return "uuid-" + content;
+        }
+
+        public List<Glob> list(GlobType type, Constraint constraint) {
+            return Collections.emptyList();
+        }
+
+        public Glob getData(Glob tag) {
+            return null;
+        }
+
+        public String getRawData(Glob tag) {
+            return null;
+        }
+
+        public Listener listen(GlobType type, Constraint constraint, OnChange consumer, GlobType[] additionalWantedTags) {
+            return unregistered::incrementAndGet;
+        }
+
+        public String updateTag(Glob tag, MutableGlob[] globs) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.globsframework.persistence.lsm;
+
+import org.globsframework.persistence.file.TagLogDurability;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class LsmStoreTest {
+
+    @Test
+    public void flushCompactAndReopen() throws IOException {
+        Path dir = Files.createTempDirectory("testLsmStore");
+        // small memtable and levels: force flushes and compactions down to level 2.
+        LsmStore store = new LsmStore(dir, false, 16 * 1024, 64 * 1024, 16 * 1024);
+        TreeMap<String, String> expected = new TreeMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 50000; i++) {
+            String key = String.format("k/%05d", random.nextInt(20000));
+            String value = "value " + i;
+            store.put(key, value.getBytes(StandardCharsets.UTF_8));
+            expected.put(key, value);
+        }
+        store.flush();
+        store.compact();
+        Assert.assertTrue(store.tableCount(0) < LsmStore.LEVEL0_FILES);
+        Assert.assertTrue(store.tableCount(2) > 0);
+        check(store, expected);
+
+        // not flushed: recovered from the write ahead log.
+        store.write(Map.of("k/last", "last".getBytes(StandardCharsets.UTF_8), "k/00000", "first".getBytes(StandardCharsets.UTF_8)));
+        expected.put("k/last", "last");
+        expected.put("k/00000", "first");
+        store.close();
+
+        store = new LsmStore(dir, false, 16 * 1024, 64 * 1024, 16 * 1024);
+        check(store, expected);
+        Assert.assertNull(store.get("k/unknown"));
+        store.close();
+    }
+
+    @Test
+    public void groupCommit() throws Exception {
+        Path dir = Files.createTempDirectory("testLsmStoreGroupCommit");
+        LsmStore store = new LsmStore(dir, TagLogDurability.groupCommit(5, 100));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> writes = new ArrayList<>();
+        TreeMap<String, String> expected = new TreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            String key = String.format("k/%05d", i);
+            expected.put(key, "value " + i);
+            writes.add(executor.submit(() -> store.put(key, expected.get(key).getBytes(StandardCharsets.UTF_8))));
+        }
+        for (Future<?> write : writes) {
+            write.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        store.close();
+
+        LsmStore reopened = new LsmStore(dir, TagLogDurability.ASYNC);
+        check(reopened, expected);
+        reopened.close();
+    }
+
+    private static void check(LsmStore store, TreeMap<String, String> expected) {
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            Assert.assertEquals(entry.getValue(), new String(store.get(entry.getKey()), StandardCharsets.UTF_8));
+        }
+        List<String> keys = new ArrayList<>();
+        store.scan("k/", (key, value) -> {
+            Assert.assertEquals(expected.get(key), new String(value, StandardCharsets.UTF_8));
+            keys.add(key);
+        });
+        Assert.assertEquals(new ArrayList<>(expected.keySet()), keys);
+    }
+}
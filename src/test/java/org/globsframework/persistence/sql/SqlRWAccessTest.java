@@ -0,0 +1,97 @@
+package org.globsframework.persistence.sql;
+
+import org.globsframework.model.Glob;
+import org.globsframework.persistence.PersistenceTest;
+import org.globsframework.persistence.file.TagLogDurability;
+import org.globsframework.sqlstreams.SqlService;
+import org.globsframework.sqlstreams.drivers.jdbc.JdbcSqlService;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// run against an in process H2 database.
+public class SqlRWAccessTest {
+    private SqlService sqlService;
+
+    @Before
+    public void setUp() {
+        sqlService = new JdbcSqlService("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+    }
+
+    @Test
+    public void data() {
+        SqlRWDataAccess dataAccess = new SqlRWDataAccess(sqlService, "test", PersistenceTest.globTypes::getType);
+        String uuid = dataAccess.save(PersistenceTest.PriceRule.TYPE.instantiate().set(PersistenceTest.PriceRule.name, "rule"));
+        Assert.assertEquals("rule", dataAccess.getData(uuid).get(PersistenceTest.PriceRule.name));
+        dataAccess.put(uuid, "{\"_kind\":\"" + PersistenceTest.PriceRule.TYPE.getName() + "\",\"name\":\"other\"}");
+        Assert.assertEquals("other", dataAccess.getData(uuid).get(PersistenceTest.PriceRule.name));
+        Assert.assertNull(dataAccess.getRawData(UUID.randomUUID().toString()));
+        dataAccess.shutdown();
+    }
+
+    @Test
+    public void tags() {
+        SqlRWTagAccess tagAccess = new SqlRWTagAccess(sqlService, "test", PersistenceTest.globTypes::getType);
+        List<String> uuids = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String uuid = UUID.randomUUID().toString();
+            uuids.add(uuid);
+            tagAccess.save(uuid, new Glob[]{owner(uuid, "name " + i)});
+        }
+        tagAccess.save(uuids.get(0), new Glob[]{owner(uuids.get(0), "renamed")});
+        tagAccess.shutdown();
+
+        // another namespace in the same tables is not seen.
+        SqlRWTagAccess other = new SqlRWTagAccess(sqlService, "other", PersistenceTest.globTypes::getType);
+        other.save(uuids.get(1), new Glob[]{owner(uuids.get(1), "other")});
+        other.shutdown();
+
+        for (int i = 0; i < 2; i++) {
+            SqlRWTagAccess reopened = new SqlRWTagAccess(sqlService, "test", PersistenceTest.globTypes::getType);
+            Map<String, String> names = new HashMap<>();
+            reopened.listAll((uuid, tags) -> tags.forEachRemaining(tag -> names.put(uuid, tag.get(PersistenceTest.OwnerTagInfo.NAME))));
+            Assert.assertEquals(2000, names.size());
+            Assert.assertEquals("renamed", names.get(uuids.get(0)));
+            Assert.assertEquals("name 1", names.get(uuids.get(1)));
+            // the second pass reads the compacted table.
+            reopened.compact();
+            reopened.shutdown();
+        }
+    }
+
+    @Test
+    public void committedWhenSaveReturns() throws Exception {
+        for (TagLogDurability durability : new TagLogDurability[]{TagLogDurability.SYNC, TagLogDurability.groupCommit(5, 100)}) {
+            String namespace = durability.mode.name();
+            SqlRWTagAccess tagAccess = new SqlRWTagAccess(sqlService, namespace, PersistenceTest.globTypes::getType, durability);
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<?>> saves = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String uuid = UUID.randomUUID().toString();
+                saves.add(executor.submit(() -> tagAccess.save(uuid, new Glob[]{owner(uuid, namespace)})));
+            }
+            for (Future<?> save : saves) {
+                save.get();
+            }
+            executor.shutdown();
+
+            // read by another connection while the first one is still open.
+            SqlRWTagAccess reader = new SqlRWTagAccess(sqlService, namespace, PersistenceTest.globTypes::getType);
+            Set<String> uuids = new HashSet<>();
+            reader.listAll((uuid, tags) -> uuids.add(uuid));
+            Assert.assertEquals(200, uuids.size());
+            reader.shutdown();
+            tagAccess.shutdown();
+        }
+    }
+
+    private static Glob owner(String uuid, String name) {
+        return PersistenceTest.OwnerTagInfo.TYPE.instantiate()
+                .set(PersistenceTest.OwnerTagInfo.UUID, uuid).set(PersistenceTest.OwnerTagInfo.NAME, name);
+    }
+}
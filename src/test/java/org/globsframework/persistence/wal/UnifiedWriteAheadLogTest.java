@@ -0,0 +1,83 @@
+package org.globsframework.persistence.wal;
+
+import org.globsframework.json.GSonUtils;
+import org.globsframework.model.Glob;
+import org.globsframework.model.MutableGlob;
+import org.globsframework.persistence.InMemoryPersistence;
+import org.globsframework.persistence.PersistenceTest;
+import org.globsframework.persistence.file.FileRWDataAccess;
+import org.globsframework.persistence.file.FileRWTagAccess;
+import org.globsframework.sqlstreams.constraints.Constraints;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class UnifiedWriteAheadLogTest {
+
+    @Test
+    public void pushThenRestart() throws IOException {
+        Path dir = Files.createTempDirectory("testUnifiedLog");
+        List<String> uuids = new ArrayList<>();
+        {
+            InMemoryPersistence persistence = create(dir);
+            for (int i = 0; i < 1000; i++) {
+                String uuid = persistence.pushData(data("rule " + i), new MutableGlob[]{
+                        PersistenceTest.OwnerTagInfo.TYPE.instantiate().set(PersistenceTest.OwnerTagInfo.NAME, "owner " + i)});
+                uuids.add(uuid);
+                // readable before being applied to the data store.
+                Assert.assertEquals("rule " + i, persistence.getData(tag(uuid)).get(PersistenceTest.PriceRule.name));
+            }
+            persistence.shutdown();
+            Assert.assertEquals(0, Files.list(dir.resolve("log")).filter(path -> path.toString().endsWith(UnifiedWriteAheadLog.EXTENSION)).count());
+        }
+        InMemoryPersistence persistence = create(dir);
+        List<Glob> owners = persistence.list(PersistenceTest.OwnerTagInfo.TYPE, Constraints.equal(PersistenceTest.OwnerTagInfo.NAME, "owner 10"));
+        Assert.assertEquals(1, owners.size());
+        Assert.assertEquals(uuids.get(10), owners.get(0).get(PersistenceTest.OwnerTagInfo.UUID));
+        Assert.assertEquals("rule 10", persistence.getData(tag(uuids.get(10))).get(PersistenceTest.PriceRule.name));
+        persistence.shutdown();
+    }
+
+    @Test
+    public void replayNotAppliedRecords() throws IOException {
+        Path dir = Files.createTempDirectory("testUnifiedLog");
+        Path logDir = Files.createDirectories(dir.resolve("log"));
+        String uuid = UUID.randomUUID().toString();
+        Glob owner = PersistenceTest.OwnerTagInfo.TYPE.instantiate()
+                .set(PersistenceTest.OwnerTagInfo.UUID, uuid).set(PersistenceTest.OwnerTagInfo.NAME, "crashed");
+        byte[] record = UnifiedLogRecord.encode(1, uuid, GSonUtils.encode(data("crashed"), true), new Glob[]{owner});
+        byte[] torn = UnifiedLogRecord.encode(2, UUID.randomUUID().toString(), null, new Glob[]{owner});
+        byte[] content = Arrays.copyOf(record, record.length + torn.length / 2);
+        System.arraycopy(torn, 0, content, record.length, torn.length / 2);
+        Files.write(logDir.resolve("1" + UnifiedWriteAheadLog.EXTENSION), content);
+
+        InMemoryPersistence persistence = create(dir);
+        List<Glob> owners = persistence.list(PersistenceTest.OwnerTagInfo.TYPE, Constraints.equal(PersistenceTest.OwnerTagInfo.NAME, "crashed"));
+        Assert.assertEquals(1, owners.size());
+        Assert.assertEquals("crashed", persistence.getData(owners.get(0)).get(PersistenceTest.PriceRule.name));
+        Assert.assertFalse(Files.exists(logDir.resolve("1" + UnifiedWriteAheadLog.EXTENSION)));
+        persistence.shutdown();
+    }
+
+    private static InMemoryPersistence create(Path dir) throws IOException {
+        Path data = Files.createDirectories(dir.resolve("data"));
+        Path tags = Files.createDirectories(dir.resolve("tags"));
+        Path log = Files.createDirectories(dir.resolve("log"));
+        return new InMemoryPersistence(new UnifiedWriteAheadLog(log,
+                new FileRWDataAccess(data.toFile(), PersistenceTest.globTypes::getType),
+                new FileRWTagAccess(tags, PersistenceTest.globTypes::getType),
+                PersistenceTest.globTypes::getType, true));
+    }
+
+    private static Glob data(String name) {
+        return PersistenceTest.PriceRule.TYPE.instantiate().set(PersistenceTest.PriceRule.name, name);
+    }
+
+    private static Glob tag(String uuid) {
+        return PersistenceTest.OwnerTagInfo.TYPE.instantiate().set(PersistenceTest.OwnerTagInfo.UUID, uuid);
+    }
+}